@@ -64,6 +64,9 @@ public final class JavaTimer extends ComponentDefinition {
         this.javaTimer = new java.util.Timer("JavaTimer@"
                 + Integer.toHexString(this.hashCode()), true);
         timerComponent = this;
+        if (config().getValueOrDefault("timer.dedicatedThread", false)) {
+            dedicatedThread();
+        }
 
         subscribe(handleST, timer);
         subscribe(handleSPT, timer);
@@ -27,7 +27,6 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import org.slf4j.MDC;
 import se.sics.kompics.network.Address;
 import se.sics.kompics.network.NetworkException;
 import se.sics.kompics.network.Transport;
@@ -54,7 +53,7 @@ public abstract class BaseHandler<M> extends SimpleChannelInboundHandler<M> {
         try {
             component.extLog.trace("Channel connected: {} {} => {} ({})", new Object[]{protocol, ctx.channel().localAddress(), ctx.channel().remoteAddress(), ctx.channel()});
         } finally {
-            MDC.clear();
+            component.clearCustomMDC();
         }
     }
 
@@ -77,7 +76,7 @@ public abstract class BaseHandler<M> extends SimpleChannelInboundHandler<M> {
             component.extLog.error("Closing channel {} due to error.", channel);
             channel.close();
         } finally {
-            MDC.clear();
+            component.clearCustomMDC();
         }
     }
 }
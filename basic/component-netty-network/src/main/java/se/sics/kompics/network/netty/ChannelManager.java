@@ -43,7 +43,6 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import org.slf4j.MDC;
 import se.sics.kompics.network.Address;
 import se.sics.kompics.network.ConnectionStatus;
 import se.sics.kompics.network.MessageNotify;
@@ -116,7 +115,7 @@ class ChannelManager {
                         component.trigger(new SendDelayed(msg.getSource(), Transport.UDT));
                     }
                 } finally {
-                    MDC.clear();
+                    component.clearCustomMDC();
                 }
             }
         }
@@ -158,7 +157,7 @@ class ChannelManager {
                     }
                 }
             } finally {
-                MDC.clear();
+                component.clearCustomMDC();
             }
         }
     }
@@ -219,7 +218,7 @@ class ChannelManager {
                     }
                 }
             } finally {
-                MDC.clear();
+                component.clearCustomMDC();
             }
         }
     }
@@ -252,7 +251,7 @@ class ChannelManager {
 
                     }
                 } finally {
-                    MDC.clear();
+                    component.clearCustomMDC();
                 }
             }
             component.trigger(new SendDelayed(msg.getSource(), Transport.TCP));
@@ -288,7 +287,7 @@ class ChannelManager {
 
                     }
                 } finally {
-                    MDC.clear();
+                    component.clearCustomMDC();
                 }
             }
             component.trigger(new SendDelayed(msg.getSource(), Transport.UDT));
@@ -377,7 +376,7 @@ class ChannelManager {
                                 component.trigger(new DropDelayed(destination, Transport.TCP));
                             }
                         } finally {
-                            MDC.clear();
+                            component.clearCustomMDC();
                         }
                     }
                 }
@@ -452,7 +451,7 @@ class ChannelManager {
                                 component.trigger(new DropDelayed(destination, Transport.UDT));
                             }
                         } finally {
-                            MDC.clear();
+                            component.clearCustomMDC();
                         }
                     }
                 }
@@ -547,7 +546,7 @@ class ChannelManager {
                     }
                 }
             } finally {
-                MDC.clear();
+                component.clearCustomMDC();
             }
         }
 
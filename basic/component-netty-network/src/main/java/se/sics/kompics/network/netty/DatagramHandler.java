@@ -25,7 +25,6 @@ import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
-import org.slf4j.MDC;
 import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.Transport;
 import se.sics.kompics.network.netty.serialization.Serializers;
@@ -67,7 +66,7 @@ public class DatagramHandler extends BaseHandler<DatagramPacket> {
             component.extLog.warn("Got weird Datagram message, ignoring it: {}", ByteBufUtil.hexDump(msg.content()));
             component.extLog.trace("Exception was: \n{}", e);
         } finally {
-            MDC.clear();
+            component.clearCustomMDC();
         }
     }
 
@@ -24,7 +24,6 @@ import com.google.common.base.Optional;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import org.slf4j.MDC;
 import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.netty.serialization.Serializers;
 
@@ -65,7 +64,7 @@ public class MessageDecoder extends LengthFieldBasedFrameDecoder {
             }
             return o;
         } finally {
-            MDC.clear();
+            component.clearCustomMDC();
         }
     }
 
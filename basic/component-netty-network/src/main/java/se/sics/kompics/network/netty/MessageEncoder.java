@@ -24,7 +24,6 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import java.util.List;
-import org.slf4j.MDC;
 import se.sics.kompics.network.MessageNotify;
 import se.sics.kompics.network.Msg;
 import se.sics.kompics.network.netty.serialization.Serializers;
@@ -96,7 +95,7 @@ public class MessageEncoder extends MessageToMessageEncoder<MessageWrapper> {
             msgw.injectSize(diff, startTS);
             outL.add(out);
         } finally {
-            MDC.clear();
+            component.clearCustomMDC();
         }
     }
 
@@ -29,7 +29,6 @@ import java.util.LinkedList;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import org.slf4j.MDC;
 import se.sics.kompics.network.Address;
 import se.sics.kompics.network.MessageNotify;
 import se.sics.kompics.network.Msg;
@@ -260,7 +259,7 @@ class MessageQueueManager {
                 }
                 component.notify(notify);
             } finally {
-                MDC.clear();
+                component.clearCustomMDC();
             }
 
         }
@@ -52,7 +52,9 @@ import org.slf4j.Logger;
 import org.slf4j.MDC;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
+import se.sics.kompics.Kompics;
 import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.MDCMode;
 import se.sics.kompics.Negative;
 import se.sics.kompics.Start;
 import se.sics.kompics.Stop;
@@ -112,8 +114,18 @@ public class NettyNetwork extends ComponentDefinition {
     final Logger extLog = this.logger;
     private final Map<String, String> customLogCtx = new HashMap<>();
 
+    private final boolean eagerMDC = Kompics.getMDCMode() == MDCMode.EAGER;
+
     void setCustomMDC() {
-        MDC.setContextMap(customLogCtx);
+        if (eagerMDC) {
+            MDC.setContextMap(customLogCtx);
+        }
+    }
+
+    void clearCustomMDC() {
+        if (eagerMDC) {
+            MDC.clear();
+        }
     }
 
     private void initLoggingCtx() {
@@ -133,6 +145,9 @@ public class NettyNetwork extends ComponentDefinition {
         boundPort = self.getPort();
 
         // CONFIG
+        if (config().getValueOrDefault("netty.dedicatedThread", false)) {
+            dedicatedThread();
+        }
         Optional<InetAddress> abiO = config().readValue("netty.bindInterface", InetAddress.class);
         if (abiO.isPresent()) {
             alternativeBindIf = abiO.get();
@@ -189,7 +204,7 @@ public class NettyNetwork extends ComponentDefinition {
                     try {
                         channels.monitor();
                     } finally {
-                        MDC.clear();
+                        clearCustomMDC();
                     }
                 }
             }, monitoringInterval, monitoringInterval, TimeUnit.MILLISECONDS
@@ -371,7 +386,7 @@ public class NettyNetwork extends ComponentDefinition {
                     try {
                         channels.monitor();
                     } finally {
-                        MDC.clear();
+                        clearCustomMDC();
                     }
                 }
             }, monitoringInterval, monitoringInterval, TimeUnit.MILLISECONDS);
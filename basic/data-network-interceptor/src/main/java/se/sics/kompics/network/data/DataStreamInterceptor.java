@@ -130,9 +130,9 @@ public class DataStreamInterceptor extends ComponentDefinition {
         @Override
         public void handle(MessageNotify.Resp event) {
             if (!event.isSuccess()) {
-                System.out.println("Could not send message: " + event.msgId);
+                System.out.println("Could not send message: " + event.getMsgId());
             }
-            TrackedMessage tm = outstanding.get(event.msgId);
+            TrackedMessage tm = outstanding.get(event.getMsgId());
             ConnectionTracker ct = tm.connection;
             if (tm != null) {
                 switch (event.getState()) {
@@ -146,7 +146,7 @@ public class DataStreamInterceptor extends ComponentDefinition {
                             or.prepareResponse(event.getTime(), event.isSuccess(), event.getSendTime());
                             answer(or);
                         }
-                        ct.sent(event.msgId);
+                        ct.sent(event.getMsgId());
                         tryToSend(ct);
                     }
                     break;
@@ -161,7 +161,7 @@ public class DataStreamInterceptor extends ComponentDefinition {
                                 answer(or, or.deliveryResponse(event.getTime(), event.isSuccess(), event.getDeliveryTime()));
                             }
                         }
-                        outstanding.remove(event.msgId);
+                        outstanding.remove(event.getMsgId());
                     }
                     break;
                     default: {
@@ -174,8 +174,8 @@ public class DataStreamInterceptor extends ComponentDefinition {
                             or.prepareResponse(event.getTime(), event.isSuccess(), event.getSendTime());
                             answer(or);
                         }
-                        outstanding.remove(event.msgId);
-                        ct.sent(event.msgId);
+                        outstanding.remove(event.getMsgId());
+                        ct.sent(event.getMsgId());
                         tryToSend(ct);
                     }
                 }
@@ -155,7 +155,7 @@ public class Sender {
 
             @Override
             public void handle(MessageNotify.Resp event) {
-                Data dm = outstanding.get(event.msgId);
+                Data dm = outstanding.get(event.getMsgId());
                 if (dm != null) {
                     switch (event.getState()) {
                         case SENT: {
@@ -164,12 +164,12 @@ public class Sender {
                         break;
                         case DELIVERED: {
                             System.out.println("Message #" + dm.pos + " was delivered.");
-                            outstanding.remove(event.msgId);
+                            outstanding.remove(event.getMsgId());
                         }
                         break;
                         default: {
                             System.out.println("Message #" + dm.pos + " encountered a problem!");
-                            outstanding.remove(event.msgId);
+                            outstanding.remove(event.getMsgId());
                         }
                         break;
                     }
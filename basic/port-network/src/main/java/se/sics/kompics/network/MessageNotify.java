@@ -6,7 +6,9 @@
 package se.sics.kompics.network;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import se.sics.kompics.Direct;
+import se.sics.kompics.util.Identifiers;
 
 /**
  *
@@ -22,6 +24,13 @@ public class MessageNotify {
         FAILED;
     }
 
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    /**
+     * Upper half of every {@link Resp#getMsgId()} created by this JVM, so that
+     * ids from different JVMs don't collide.
+     */
+    private static final long MSG_ID_PREFIX = Identifiers.uuid().getMostSignificantBits();
+
     public static Req create(Msg msg) {
         Req req = new Req(msg);
         return req;
@@ -31,23 +40,77 @@ public class MessageNotify {
         return new Req(msg, true);
     }
 
+    /**
+     * Creates a request that reports on the caller-supplied response.
+     * <p>
+     * The response is reset and gets a new {@link Resp#getId()}, and with it a
+     * new {@link Resp#getMsgId()}. It may only be passed to another request after
+     * this one has completed, that is after the response was delivered to the
+     * caller; transports keep track of in-flight requests by their response.
+     * <p>
+     * @param msg the message to send
+     * @param resp a pre-allocated response that is not in flight
+     * @return the request
+     */
+    public static Req create(Msg msg, Resp resp) {
+        return new Req(msg, false, resp, null);
+    }
+
+    /**
+     * Like {@link #create(Msg, Resp)}, but also requests a delivery
+     * notification, which is written into {@code deliveryResp} instead of a
+     * clone of {@code resp}.
+     * <p>
+     * Neither response may be reused before the delivery notification (or a
+     * failure) was received, since the delivery notification is computed
+     * from {@code resp}.
+     * <p>
+     * @param msg the message to send
+     * @param resp a pre-allocated response for the send notification
+     * @param deliveryResp a pre-allocated response for the delivery
+     * notification
+     * @return the request
+     */
+    public static Req createWithDeliveryNotification(Msg msg, Resp resp, Resp deliveryResp) {
+        return new Req(msg, true, resp, deliveryResp);
+    }
+
     public static class Req extends Direct.Request<Resp> {
 
         public final Msg msg;
         public final boolean notifyOfDelivery;
+        private final Resp deliveryResp;
 
         public Req(Msg msg) {
             this(msg, false);
         }
 
         public Req(Msg msg, boolean notifyOfDelivery) {
+            this(msg, notifyOfDelivery, new Resp(), null);
+        }
+
+        public Req(Msg msg, boolean notifyOfDelivery, Resp resp, Resp deliveryResp) {
             this.msg = msg;
             this.notifyOfDelivery = notifyOfDelivery;
-            this.setResponse(new Resp());
+            this.deliveryResp = deliveryResp;
+            long id = NEXT_ID.incrementAndGet();
+            resp.reset(id);
+            if (deliveryResp != null) {
+                deliveryResp.reset(id);
+            }
+            this.setResponse(resp);
         }
 
         public UUID getMsgId() {
-            return this.getResponse().msgId;
+            return this.getResponse().getMsgId();
+        }
+
+        /**
+         * @return the compact correlation id shared by all responses to this
+         * request
+         */
+        public long getId() {
+            return this.getResponse().getId();
         }
 
         public void prepareResponse(long time, boolean success, long nanoEnd) {
@@ -63,15 +126,20 @@ public class MessageNotify {
         }
 
         public Resp deliveryResponse(long time, boolean success, long nanoEnd) {
-            try {
-                Resp resp = this.getResponse().clone();
-                resp.setTime(time);
-                resp.setState(success ? State.DELIVERED : State.FAILED);
-                resp.setDeliveryTime(nanoEnd - resp.getDeliveryTime());
-                return resp;
-            } catch (CloneNotSupportedException ex) {
-                throw new RuntimeException(ex); // shouldn't be thrown in the first place
+            Resp resp;
+            if (deliveryResp != null) {
+                resp = deliveryResp.copyFrom(this.getResponse());
+            } else {
+                try {
+                    resp = this.getResponse().clone();
+                } catch (CloneNotSupportedException ex) {
+                    throw new RuntimeException(ex); // shouldn't be thrown in the first place
+                }
             }
+            resp.setTime(time);
+            resp.setState(success ? State.DELIVERED : State.FAILED);
+            resp.setDeliveryTime(nanoEnd - resp.getDeliveryTime());
+            return resp;
         }
         
         @Override
@@ -95,11 +163,56 @@ public class MessageNotify {
         private long sendTime;
         private long deliveryTime;
         private int size;
-        public final UUID msgId;
+        private long id;
+        // derived from id when first asked for
+        private UUID msgId;
         private State state = State.IN_PROGRESS;
 
-        public Resp() {
-            msgId = UUID.randomUUID();
+        // prepares this response for a new request
+        void reset(long id) {
+            this.id = id;
+            this.msgId = null;
+            this.time = 0;
+            this.sendTime = 0;
+            this.deliveryTime = 0;
+            this.size = 0;
+            this.state = State.IN_PROGRESS;
+        }
+
+        Resp copyFrom(Resp that) {
+            this.msgId = that.msgId;
+            this.id = that.id;
+            this.time = that.time;
+            this.sendTime = that.sendTime;
+            this.deliveryTime = that.deliveryTime;
+            this.size = that.size;
+            this.state = that.state;
+            return this;
+        }
+
+        /**
+         * @return the compact correlation id of the request this responds to
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Identifies the request on the wire.
+         * <p>
+         * Derived from {@link #getId()} when first asked for, so it changes
+         * whenever the response is reused for another request, but costs
+         * nothing for transports that don't need it.
+         * <p>
+         * @return the globally unique id of the request this responds to
+         */
+        public UUID getMsgId() {
+            UUID mid = msgId;
+            if (mid == null) {
+                mid = new UUID(MSG_ID_PREFIX, id);
+                msgId = mid;
+            }
+            return mid;
         }
 
         void setTime(long time) {
@@ -160,6 +273,7 @@ public class MessageNotify {
             that.sendTime = this.sendTime;
             that.deliveryTime = this.deliveryTime;
             that.size = this.size;
+            that.id = this.id;
             that.state = this.state;
             return that;
         }
@@ -167,7 +281,9 @@ public class MessageNotify {
         private void appendTo(StringBuilder sb) {
             sb.append("MessageNotify.Resp(");
             sb.append("id=");
-            sb.append(this.msgId);
+            sb.append(this.getMsgId());
+            sb.append(", correlationId=");
+            sb.append(this.id);
             sb.append(", time=");
             sb.append(this.time);
             sb.append("ms, sendTime=");
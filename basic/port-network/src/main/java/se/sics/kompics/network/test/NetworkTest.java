@@ -358,7 +358,7 @@ public class NetworkTest {
 
                 @Override
                 public void handle(MessageNotify.Resp event) {
-                    Integer msgId = pending.remove(event.msgId);
+                    Integer msgId = pending.remove(event.getMsgId());
                     assertNotNull(msgId);
                     messageStatus.replace(msgId, SENDING, SENT);
                     LOG.debug("Message {} was sent.", msgId);
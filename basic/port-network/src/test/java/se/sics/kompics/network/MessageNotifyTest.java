@@ -0,0 +1,76 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.network;
+
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MessageNotifyTest {
+
+    @Test
+    public void reuseRenewsIds() {
+        MessageNotify.Resp resp = new MessageNotify.Resp();
+        MessageNotify.Req first = MessageNotify.create(null, resp);
+        UUID firstMsgId = first.getMsgId();
+        long firstId = first.getId();
+        Assert.assertSame(firstMsgId, first.getMsgId());
+        Assert.assertEquals(firstId, firstMsgId.getLeastSignificantBits());
+        first.prepareResponse(1, true, 0);
+
+        MessageNotify.Req second = MessageNotify.create(null, resp);
+        Assert.assertSame(resp, second.getResponse());
+        Assert.assertFalse(firstMsgId.equals(second.getMsgId()));
+        Assert.assertTrue(firstId != second.getId());
+        Assert.assertEquals(firstMsgId.getMostSignificantBits(), second.getMsgId().getMostSignificantBits());
+        Assert.assertEquals(MessageNotify.State.IN_PROGRESS, resp.getState());
+    }
+
+    @Test
+    public void reuseWithDeliveryNotification() {
+        MessageNotify.Resp resp = new MessageNotify.Resp();
+        MessageNotify.Resp deliveryResp = new MessageNotify.Resp();
+        UUID lastMsgId = null;
+        for (int i = 0; i < 3; i++) {
+            MessageNotify.Req req = MessageNotify.createWithDeliveryNotification(null, resp, deliveryResp);
+            Assert.assertFalse(req.getMsgId().equals(lastMsgId));
+            lastMsgId = req.getMsgId();
+
+            req.injectSize(100 + i, 1000);
+            req.prepareResponse(10, true, 1500);
+            Assert.assertEquals(MessageNotify.State.SENT, resp.getState());
+            Assert.assertEquals(500, resp.getSendTime());
+
+            MessageNotify.Resp delivered = req.deliveryResponse(20, true, 3000);
+            Assert.assertSame(deliveryResp, delivered);
+            Assert.assertEquals(MessageNotify.State.DELIVERED, delivered.getState());
+            Assert.assertEquals(2000, delivered.getDeliveryTime());
+            Assert.assertEquals(100 + i, delivered.getSize());
+            Assert.assertEquals(req.getMsgId(), delivered.getMsgId());
+            Assert.assertEquals(req.getId(), delivered.getId());
+            // the send notification is left as it was
+            Assert.assertEquals(MessageNotify.State.SENT, resp.getState());
+        }
+    }
+}
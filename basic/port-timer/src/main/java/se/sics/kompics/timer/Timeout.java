@@ -23,6 +23,7 @@ package se.sics.kompics.timer;
 import java.util.UUID;
 
 import se.sics.kompics.Response;
+import se.sics.kompics.util.Identifiers;
 
 /**
  * The <code>Timeout</code> class.
@@ -43,7 +44,7 @@ public abstract class Timeout extends Response implements Cloneable {
 	 */
 	protected Timeout(ScheduleTimeout request) {
 		super(request);
-		timeoutId = UUID.randomUUID();
+		timeoutId = Identifiers.uuid();
 	}
 
 	/**
@@ -54,7 +55,7 @@ public abstract class Timeout extends Response implements Cloneable {
 	 */
 	protected Timeout(SchedulePeriodicTimeout request) {
 		super(request);
-		timeoutId = UUID.randomUUID();
+		timeoutId = Identifiers.uuid();
 	}
 
 	/**
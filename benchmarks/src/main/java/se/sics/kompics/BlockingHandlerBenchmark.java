@@ -0,0 +1,138 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many components whose handlers block, under the ForkJoin and the virtual
+ * thread scheduler.
+ * <p>
+ * One operation sends a request to each of {@link #components} components,
+ * whose handler sleeps for {@link #blockMicros} before answering, and waits
+ * for all answers. On a pool of {@link #workers} platform threads this takes
+ * about {@code components * blockMicros / workers}, with virtual threads
+ * close to a single {@code blockMicros}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockingHandlerBenchmark {
+
+    @Param({"forkjoin", "virtual"})
+    public String scheduler;
+    @Param({"4"})
+    public int workers;
+    @Param({"1000"})
+    public int components;
+    @Param({"1000"})
+    public int blockMicros;
+
+    static volatile int numComponents;
+    static volatile long blockNanos;
+    static final List<Component> blockers = new ArrayList<Component>();
+    static final Semaphore done = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        numComponents = components;
+        blockNanos = TimeUnit.MICROSECONDS.toNanos(blockMicros);
+        blockers.clear();
+        Kompics.setScheduler(PingPongBenchmark.createScheduler(scheduler, workers));
+        Kompics.createAndStart(Parent.class, workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void fanOut() throws InterruptedException {
+        for (Component c : blockers) {
+            ((PortCore<WorkPort>) c.getPositive(WorkPort.class)).doTrigger(Work.EVENT, 0, (ComponentCore) null);
+        }
+        done.acquire(blockers.size());
+    }
+
+    public static class Work implements KompicsEvent {
+
+        static final Work EVENT = new Work();
+    }
+
+    public static class WorkPort extends PortType {
+
+        {
+            request(Work.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            for (int i = 0; i < numComponents; i++) {
+                blockers.add(create(Blocker.class, Init.NONE));
+            }
+        }
+    }
+
+    public static class Blocker extends ComponentDefinition {
+
+        Negative<WorkPort> work = provides(WorkPort.class);
+
+        Handler<Work> workHandler = new Handler<Work>() {
+
+            @Override
+            public void handle(Work event) {
+                // stands in for a JDBC call or file read
+                try {
+                    TimeUnit.NANOSECONDS.sleep(blockNanos);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                done.release();
+            }
+        };
+
+        {
+            subscribe(workHandler, work);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selecting the channels for an event out of a port's selector channels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ChannelSelectorSetBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int channels;
+
+    ChannelSelectorSet set;
+    Keyed hit;
+    SubKeyed inheritedHit;
+    Keyed miss;
+
+    @Setup
+    public void setup() {
+        set = new ChannelSelectorSet();
+        for (int i = 0; i < channels; i++) {
+            set.addChannelSelector(new DummyChannel(), new KeySelector(i));
+        }
+        hit = new Keyed(channels / 2);
+        inheritedHit = new SubKeyed(channels / 2);
+        miss = new Keyed(-1);
+    }
+
+    @Benchmark
+    public Object select() {
+        return set.select(hit);
+    }
+
+    @Benchmark
+    public Object selectInherited() {
+        return set.select(inheritedHit);
+    }
+
+    @Benchmark
+    public Object selectMiss() {
+        return set.select(miss);
+    }
+
+    public static class Keyed implements KompicsEvent {
+
+        final int key;
+
+        public Keyed(int key) {
+            this.key = key;
+        }
+    }
+
+    public static class SubKeyed extends Keyed {
+
+        public SubKeyed(int key) {
+            super(key);
+        }
+    }
+
+    public static class KeyPort extends PortType {
+
+        {
+            indication(Keyed.class);
+        }
+    }
+
+    static class KeySelector extends ChannelSelector<Keyed, Integer> {
+
+        KeySelector(int key) {
+            super(Keyed.class, key, true);
+        }
+
+        @Override
+        public Integer getValue(Keyed event) {
+            return event.key;
+        }
+    }
+
+    static class DummyChannel implements ChannelCore<KeyPort> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<KeyPort> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<KeyPort> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public KeyPort getPortType() {
+            return null;
+        }
+    }
+}
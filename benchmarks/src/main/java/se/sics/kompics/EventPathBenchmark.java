@@ -0,0 +1,232 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.config.TypesafeConfig;
+
+/**
+ * Throughput of the full trigger, deliver and execute path between
+ * components.
+ * <p>
+ * One operation is one event handled by one receiver. Every invocation
+ * delivers {@link #EVENTS} events, split over the senders and receivers of
+ * the topology.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EventPathBenchmark {
+
+    static final int EVENTS = 1 << 14;
+    static final int FAN = 4;
+
+    public enum Topology {
+
+        ONE_TO_ONE(1, 1), ONE_TO_MANY(1, FAN), MANY_TO_ONE(FAN, 1);
+
+        final int senders;
+        final int receivers;
+
+        Topology(int senders, int receivers) {
+            this.senders = senders;
+            this.receivers = receivers;
+        }
+    }
+
+    @Param({"ONE_TO_ONE", "ONE_TO_MANY", "MANY_TO_ONE"})
+    public Topology topology;
+    @Param({"1", "64"})
+    public int batchSize;
+    @Param({"eager", "lazy", "off"})
+    public String mdc;
+
+    static volatile Topology current;
+    static volatile List<Component> senders;
+    static final Semaphore done = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        current = topology;
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                ComponentDefinition.MDC_MODE_KEY + " = " + mdc).withFallback(ConfigFactory.load())));
+        Kompics.createAndStart(Driver.class, Runtime.getRuntime().availableProcessors(), batchSize);
+        // Driver releases once all components are started
+        done.acquire();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void deliver() throws InterruptedException {
+        for (Component sender : senders) {
+            ((PortCore<GoPort>) sender.getPositive(GoPort.class)).doTrigger(Go.EVENT, 0, (ComponentCore) null);
+        }
+        done.acquire(current.receivers);
+    }
+
+    public static class Go implements KompicsEvent {
+
+        static final Go EVENT = new Go();
+    }
+
+    public static class Msg implements KompicsEvent {
+
+        static final Msg EVENT = new Msg();
+    }
+
+    public static class GoPort extends PortType {
+
+        {
+            request(Go.class);
+        }
+    }
+
+    public static class MsgPort extends PortType {
+
+        {
+            request(Msg.class);
+        }
+    }
+
+    public static class Driver extends ComponentDefinition {
+
+        {
+            Topology t = current;
+            List<Component> s = new ArrayList<Component>();
+            List<Component> r = new ArrayList<Component>();
+            for (int i = 0; i < t.senders; i++) {
+                s.add(create(Sender.class, new SenderInit(EVENTS / (t.senders * t.receivers))));
+            }
+            for (int i = 0; i < t.receivers; i++) {
+                r.add(create(Receiver.class, new ReceiverInit(EVENTS / t.receivers)));
+            }
+            for (Component sender : s) {
+                for (Component receiver : r) {
+                    connect(sender.getNegative(MsgPort.class), receiver.getPositive(MsgPort.class), Channel.TWO_WAY);
+                }
+            }
+            senders = s;
+        }
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                done.release();
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class SenderInit extends Init<Sender> {
+
+        final int burst;
+
+        public SenderInit(int burst) {
+            this.burst = burst;
+        }
+    }
+
+    public static class Sender extends ComponentDefinition {
+
+        Negative<GoPort> go = provides(GoPort.class);
+        Positive<MsgPort> out = requires(MsgPort.class);
+        final int burst;
+
+        public Sender(SenderInit init) {
+            burst = init.burst;
+            subscribe(goHandler, go);
+        }
+
+        Handler<Go> goHandler = new Handler<Go>() {
+
+            @Override
+            public void handle(Go event) {
+                for (int i = 0; i < burst; i++) {
+                    trigger(Msg.EVENT, out);
+                }
+            }
+        };
+    }
+
+    public static class ReceiverInit extends Init<Receiver> {
+
+        final int expected;
+
+        public ReceiverInit(int expected) {
+            this.expected = expected;
+        }
+    }
+
+    public static class Receiver extends ComponentDefinition {
+
+        Negative<MsgPort> in = provides(MsgPort.class);
+        final int expected;
+        int received = 0;
+
+        public Receiver(ReceiverInit init) {
+            expected = init.expected;
+            subscribe(msgHandler, in);
+        }
+
+        Handler<Msg> msgHandler = new Handler<Msg>() {
+
+            @Override
+            public void handle(Msg event) {
+                received++;
+                if (received == expected) {
+                    received = 0;
+                    done.release();
+                }
+            }
+        };
+    }
+}
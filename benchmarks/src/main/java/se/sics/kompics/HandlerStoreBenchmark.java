@@ -0,0 +1,128 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handler lookup at a single port for different numbers of subscribed event
+ * types and handlers per type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HandlerStoreBenchmark {
+
+    @SuppressWarnings("unchecked")
+    static final Class<? extends KompicsEvent>[] TYPES = new Class[]{
+        E0.class, E1.class, E2.class, E3.class, E4.class, E5.class, E6.class, E7.class
+    };
+
+    @Param({"1", "4", "8"})
+    public int types;
+    @Param({"1", "4"})
+    public int handlersPerType;
+
+    HandlerStore store;
+    KompicsEvent hit;
+    KompicsEvent miss;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws ReflectiveOperationException {
+        store = new HandlerStore();
+        for (int i = 0; i < types; i++) {
+            for (int j = 0; j < handlersPerType; j++) {
+                store.subscribe(new Noop((Class<KompicsEvent>) TYPES[i]));
+            }
+        }
+        // the last subscribed type is the worst case for a linear scan
+        hit = TYPES[types - 1].newInstance();
+        miss = new Unsubscribed();
+    }
+
+    @Benchmark
+    public Object getSubscriptions() {
+        return store.getSubscriptions(hit);
+    }
+
+    @Benchmark
+    public boolean hasSubscription() {
+        return store.hasSubscription(hit);
+    }
+
+    @Benchmark
+    public boolean hasNoSubscription() {
+        return store.hasSubscription(miss);
+    }
+
+    static class Noop extends Handler<KompicsEvent> {
+
+        Noop(Class<KompicsEvent> eventType) {
+            super(eventType);
+        }
+
+        @Override
+        public void handle(KompicsEvent event) {
+        }
+    }
+
+    public static class E0 implements KompicsEvent {
+    }
+
+    public static class E1 implements KompicsEvent {
+    }
+
+    public static class E2 implements KompicsEvent {
+    }
+
+    public static class E3 implements KompicsEvent {
+    }
+
+    public static class E4 implements KompicsEvent {
+    }
+
+    public static class E5 implements KompicsEvent {
+    }
+
+    public static class E6 implements KompicsEvent {
+    }
+
+    public static class E7 implements KompicsEvent {
+    }
+
+    public static class Unsubscribed implements KompicsEvent {
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.scheduler.AffinityScheduler;
+import se.sics.kompics.scheduler.ForkJoinScheduler;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
+import se.sics.kompics.scheduler.VirtualThreadScheduler;
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
+/**
+ * Round trip latency between two components under each scheduler.
+ * <p>
+ * One operation is one ping answered by one pong, with a single exchange in
+ * flight at any time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PingPongBenchmark {
+
+    static final int ROUNDS = 1000;
+
+    @Param({"forkjoin", "threadpool", "workstealing", "affinity", "virtual"})
+    public String scheduler;
+    @Param({"2"})
+    public int workers;
+
+    static volatile Component pinger;
+    static final Semaphore done = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Kompics.setScheduler(createScheduler(scheduler, workers));
+        Kompics.createAndStart(Parent.class, workers);
+    }
+
+    static Scheduler createScheduler(String name, int workers) {
+        switch (name) {
+            case "forkjoin":
+                return new ForkJoinScheduler(workers);
+            case "threadpool":
+                return new ThreadPoolScheduler(workers);
+            case "workstealing":
+                return new WorkStealingScheduler(workers);
+            case "affinity":
+                return new AffinityScheduler(workers);
+            case "virtual":
+                return new VirtualThreadScheduler();
+            default:
+                throw new IllegalArgumentException("Unknown scheduler: " + name);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public void roundTrip() throws InterruptedException {
+        ((PortCore<GoPort>) pinger.getPositive(GoPort.class)).doTrigger(Go.EVENT, 0, (ComponentCore) null);
+        done.acquire();
+    }
+
+    public static class Go implements KompicsEvent {
+
+        static final Go EVENT = new Go();
+    }
+
+    public static class Ping implements KompicsEvent {
+
+        static final Ping EVENT = new Ping();
+    }
+
+    public static class Pong implements KompicsEvent {
+
+        static final Pong EVENT = new Pong();
+    }
+
+    public static class GoPort extends PortType {
+
+        {
+            request(Go.class);
+        }
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component pi = create(Pinger.class, Init.NONE);
+            Component po = create(Ponger.class, Init.NONE);
+            connect(pi.getNegative(PingPongPort.class), po.getPositive(PingPongPort.class), Channel.TWO_WAY);
+            pinger = pi;
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Negative<GoPort> go = provides(GoPort.class);
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int remaining = 0;
+
+        Handler<Go> goHandler = new Handler<Go>() {
+
+            @Override
+            public void handle(Go event) {
+                remaining = ROUNDS;
+                trigger(Ping.EVENT, ppp);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                remaining--;
+                if (remaining == 0) {
+                    done.release();
+                } else {
+                    trigger(Ping.EVENT, ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(goHandler, go);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(Pong.EVENT, ppp);
+            }
+        };
+
+        {
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
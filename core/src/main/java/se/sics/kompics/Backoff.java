@@ -0,0 +1,84 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import se.sics.kompics.config.Config;
+
+/**
+ * How a dedicated component thread waits for work.
+ * <p>
+ * An idle thread first busy spins for {@link #spins} checks, then calls
+ * {@link Thread#yield()} for {@link #yields} checks and finally parks until
+ * the component is scheduled again. Spinning gives the lowest hand-off
+ * latency but keeps a core busy; parking frees the core but a wake up costs
+ * a few microseconds.
+ * <p>
+ * @see ComponentDefinition#dedicatedThread(Backoff)
+ */
+public final class Backoff {
+
+    public static final String SPINS_KEY = "kompics.dedicated.spins";
+    public static final String YIELDS_KEY = "kompics.dedicated.yields";
+    public static final int DEFAULT_SPINS = 10000;
+    public static final int DEFAULT_YIELDS = 100;
+    /**
+     * Never parks, for components that must react immediately and can afford
+     * a core of their own.
+     */
+    public static final Backoff SPIN = new Backoff(Integer.MAX_VALUE, 0);
+    /**
+     * Parks as soon as there is no work.
+     */
+    public static final Backoff PARK = new Backoff(0, 0);
+
+    public final int spins;
+    public final int yields;
+
+    public Backoff(int spins, int yields) {
+        if ((spins < 0) || (yields < 0)) {
+            throw new IllegalArgumentException("Back-off steps must not be negative");
+        }
+        this.spins = spins;
+        this.yields = yields;
+    }
+
+    /**
+     * @param conf the config
+     * @return the back-off set with {@value #SPINS_KEY} and
+     * {@value #YIELDS_KEY}
+     */
+    public static Backoff fromConfig(Config conf) {
+        int spins = conf.getValueOrDefault(SPINS_KEY, DEFAULT_SPINS);
+        int yields = conf.getValueOrDefault(YIELDS_KEY, DEFAULT_YIELDS);
+        if (spins < 0) {
+            throw new ConfigurationException("Invalid value for " + SPINS_KEY + ": " + spins);
+        }
+        if (yields < 0) {
+            throw new ConfigurationException("Invalid value for " + YIELDS_KEY + ": " + yields);
+        }
+        return new Backoff(spins, yields);
+    }
+
+    @Override
+    public String toString() {
+        return "Backoff(spins=" + spins + ", yields=" + yields + ")";
+    }
+}
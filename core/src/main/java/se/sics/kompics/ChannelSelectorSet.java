@@ -21,72 +21,72 @@
 package se.sics.kompics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The channels of a port that only forward events a selector accepts.
+ * <p>
+ * {@link #select(KompicsEvent)} and iteration are safe to use concurrently
+ * with changes, but changes must be serialised by the caller, as ports do
+ * with their write lock.
+ * <p>
+ * Each selector type keeps an index from selector value to a duplicate free
+ * array of channels. A change only replaces the array of the value it
+ * affects, so connecting or disconnecting a channel only depends on how many
+ * other channels share its selector value. Selection goes through a dispatch table that
+ * is compiled once per concrete event class and only recompiled when a
+ * selector type is added or removed.
+ */
 public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
 
-    private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>> filterTypesByEventType;
-    private HashMap<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>> filtersByFilterType;
-    private HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>> channelsByFilterType;
+    private static final ChannelCore<?>[] NO_CHANNELS = new ChannelCore<?>[0];
+    private static final TypeIndex[] NO_TYPES = new TypeIndex[0];
+    // stands in for null selector values, which the index can't hold
+    private static final Object NULL_VALUE = new Object();
 
+    private final ConcurrentHashMap<Class<? extends KompicsEvent>, TypeIndex[]> typesByEventType;
+    private final ConcurrentHashMap<Class<? extends ChannelSelector<?, ?>>, TypeIndex> typesBySelectorType;
     // for removal
-    private HashMap<ChannelCore<?>, ChannelSelector<?, ?>> filtersByChannel;
-    private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>> inheritedFilters;
+    private final ConcurrentHashMap<ChannelCore<?>, ChannelSelector<?, ?>> filtersByChannel;
+    // compiled lazily, valid while the version matches
+    private final ConcurrentHashMap<Class<? extends KompicsEvent>, Dispatch> dispatch;
+    // bumped after every change to the selector types
+    private volatile int version = 0;
 
     public ChannelSelectorSet() {
-        filterTypesByEventType = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>>();
-        filtersByFilterType = new HashMap<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>>();
-        channelsByFilterType = new HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>>();
+        typesByEventType = new ConcurrentHashMap<Class<? extends KompicsEvent>, TypeIndex[]>();
+        typesBySelectorType = new ConcurrentHashMap<Class<? extends ChannelSelector<?, ?>>, TypeIndex>();
+        filtersByChannel = new ConcurrentHashMap<ChannelCore<?>, ChannelSelector<?, ?>>();
+        dispatch = new ConcurrentHashMap<Class<? extends KompicsEvent>, Dispatch>();
+    }
 
-        filtersByChannel = new HashMap<ChannelCore<?>, ChannelSelector<?, ?>>();
-        inheritedFilters = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>>();
+    public boolean contains(ChannelCore<?> channel) {
+        return filtersByChannel.containsKey(channel);
     }
 
-	// public boolean containsChannel(ChannelCore<?> channel) {
-    // return filtersByChannel.containsKey(channel);
-    // }
     @SuppressWarnings("unchecked")
     public void addChannelSelector(ChannelCore<?> channel, ChannelSelector<?, ?> filter) {
-        Class<? extends KompicsEvent> eventType = filter.getEventType();
         Class<? extends ChannelSelector<?, ?>> filterType = (Class<? extends ChannelSelector<?, ?>>) filter
                 .getClass();
 
-        // add filter type if not already there
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
-        if (filterTypes == null) {
-            filterTypes = new ArrayList<Class<? extends ChannelSelector<?, ?>>>();
-            filterTypesByEventType.put(eventType, filterTypes);
-        }
-        if (!filterTypes.contains(filterType)) {
-            filterTypes.add(filterType);
-        }
-
-        // add filter
-        ArrayList<ChannelSelector<?, ?>> filters = filtersByFilterType
-                .get(filterType);
-        if (filters == null) {
-            filters = new ArrayList<ChannelSelector<?, ?>>();
-            filtersByFilterType.put(filterType, filters);
-        }
-        filters.add(filter);
-
-        // add filter value
-        HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                .get(filterType);
-        if (channelsByValue == null) {
-            channelsByValue = new HashMap<Object, ArrayList<ChannelCore<?>>>();
-            channelsByFilterType.put(filterType, channelsByValue);
-        }
-        // add channel
-        ArrayList<ChannelCore<?>> channels = channelsByValue.get(filter
-                .getValue());
-        if (channels == null) {
-            channels = new ArrayList<ChannelCore<?>>();
-            channelsByValue.put(filter.getValue(), channels);
+        TypeIndex index = typesBySelectorType.get(filterType);
+        if (index == null) {
+            index = new TypeIndex(filter);
+            typesBySelectorType.put(filterType, index);
+            Class<? extends KompicsEvent> eventType = filter.getEventType();
+            TypeIndex[] types = typesByEventType.get(eventType);
+            if (types == null) {
+                types = NO_TYPES;
+            }
+            types = Arrays.copyOf(types, types.length + 1);
+            types[types.length - 1] = index;
+            typesByEventType.put(eventType, types);
+            version++;
         }
-        channels.add(channel);
+        index.add(valueKey(filter), channel);
 
         // keep it in filtersByChannel for removal
         filtersByChannel.put(channel, filter);
@@ -94,123 +94,195 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
 
     @SuppressWarnings("unchecked")
     public void removeChannel(ChannelCore<?> channel) {
-        ChannelSelector<?, ?> filter = filtersByChannel.get(channel);
+        ChannelSelector<?, ?> filter = filtersByChannel.remove(channel);
         if (filter == null) {
             // not a filtered channel
             return;
         }
-
-        filtersByChannel.remove(channel);
-
-        // undo add
-        Class<? extends KompicsEvent> eventType = filter.getEventType();
         Class<? extends ChannelSelector<?, ?>> filterType = (Class<? extends ChannelSelector<?, ?>>) filter
                 .getClass();
+        TypeIndex index = typesBySelectorType.get(filterType);
+        if (!index.remove(valueKey(filter), channel)) {
+            return;
+        }
+        // that was the last channel of this selector type
+        typesBySelectorType.remove(filterType);
+        Class<? extends KompicsEvent> eventType = filter.getEventType();
+        TypeIndex[] types = typesByEventType.get(eventType);
+        if (types.length == 1) {
+            typesByEventType.remove(eventType);
+        } else {
+            TypeIndex[] rest = new TypeIndex[types.length - 1];
+            int n = 0;
+            for (TypeIndex t : types) {
+                if (t != index) {
+                    rest[n++] = t;
+                }
+            }
+            typesByEventType.put(eventType, rest);
+        }
+        version++;
+    }
 
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
+    private static Object valueKey(ChannelSelector<?, ?> filter) {
+        Object value = filter.getValue();
+        return (value == null) ? NULL_VALUE : value;
+    }
+
+    /**
+     * @param event the event
+     * @return a new list of the channels whose selector accepts the event
+     * @deprecated Use {@link #select(KompicsEvent)}, which does not allocate
+     */
+    @Deprecated
+    public ArrayList<ChannelCore<?>> get(KompicsEvent event) {
+        return new ArrayList<ChannelCore<?>>(Arrays.asList(select(event)));
+    }
 
-        // remove filter
-        ArrayList<ChannelSelector<?, ?>> filters = filtersByFilterType
-                .get(filterType);
-        filters.remove(filter);
-        if (filters.isEmpty()) {
-            filtersByFilterType.remove(filterType);
+    /**
+     * Finds the channels whose selector accepts {@code event}.
+     * <p>
+     * @param event the event
+     * @return the channels, without duplicates; shared and must not be
+     * modified
+     */
+    public ChannelCore<?>[] select(KompicsEvent event) {
+        Class<? extends KompicsEvent> eventType = event.getClass();
+        Dispatch d = dispatch.get(eventType);
+        if ((d == null) || (d.version != version)) {
+            d = compile(eventType);
+            dispatch.put(eventType, d);
         }
+        return d.select(event);
+    }
 
-        // remove channel
-        HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                .get(filterType);
-        ArrayList<ChannelCore<?>> channels = channelsByValue.get(filter
-                .getValue());
-
-        channels.remove(channel);
-        if (channels.isEmpty()) {
-            channelsByValue.remove(filter.getValue());
-            if (channelsByValue.isEmpty()) {
-                channelsByFilterType.remove(filterType);
-                filterTypes.remove(filterType);
-                if (filterTypes.isEmpty()) {
-                    filterTypesByEventType.remove(eventType);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eventType);
-                    if (inheritants != null) {
-                        for (Class<? extends KompicsEvent> eType : inheritants) {
-                            filterTypesByEventType.remove(eType);
-                        }
-                        inheritedFilters.remove(eventType);
-                    }
+    private Dispatch compile(Class<? extends KompicsEvent> eventType) {
+        // read before the structure, so a concurrent change makes this stale
+        int v = version;
+        TypeIndex[] types = typesByEventType.get(eventType);
+        if (types == null) {
+            // no filter types found for this event type. it may be a
+            // sub-type of a filtered event type, though.
+            for (Map.Entry<Class<? extends KompicsEvent>, TypeIndex[]> e : typesByEventType.entrySet()) {
+                if (e.getKey().isAssignableFrom(eventType)) {
+                    // I have a filter for a super-type, so I use the
+                    // filter structure for the super-type
+                    types = e.getValue();
+                    break;
                 }
             }
         }
+        return new Dispatch((types == null) ? NO_TYPES : types, v);
     }
 
-    @SuppressWarnings("unchecked")
-    public ArrayList<ChannelCore<?>> get(KompicsEvent event) {
-        ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        Class<? extends KompicsEvent> eventType = event.getClass();
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
-
-        if (filterTypes == null) {
-			// no filter types found for this event type. we try to add this
-            // event type since it may be a sub-type of a filtered event type.
-            for (Class<? extends KompicsEvent> eType : filterTypesByEventType.keySet()) {
-                if (eType.isAssignableFrom(eventType)) {
-					// I have a filter for a super-type, so I copy the filter
-                    // structure for the super-type to this event type
-                    filterTypes = new ArrayList<Class<? extends ChannelSelector<?, ?>>>(
-                            filterTypesByEventType.get(eType));
-                    filterTypesByEventType.put(eventType, filterTypes);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eType);
-                    if (inheritants == null) {
-                        inheritants = new ArrayList<Class<? extends KompicsEvent>>();
-                        inheritedFilters.put(eType, inheritants);
-                    }
-                    inheritants.add(eventType);
+    // the channels of a and b, without duplicates (compared by identity)
+    private static ChannelCore<?>[] distinct(ChannelCore<?>[] a, ChannelCore<?>[] b) {
+        ChannelCore<?>[] result = new ChannelCore<?>[a.length + b.length];
+        int n = 0;
+        for (int i = 0; i < a.length + b.length; i++) {
+            ChannelCore<?> c = (i < a.length) ? a[i] : b[i - a.length];
+            boolean seen = false;
+            for (int j = 0; j < n; j++) {
+                if (result[j] == c) {
+                    seen = true;
                     break;
                 }
             }
+            if (!seen) {
+                result[n] = c;
+                n++;
+            }
         }
+        return (n == result.length) ? result : Arrays.copyOf(result, n);
+    }
 
-        if (filterTypes != null) {
-            // filterTypes may still be null for unfiltered event types
-            for (int i = 0; i < filterTypes.size(); i++) {
-                // for each type of filter
-                ChannelSelector<?, ?> f = filtersByFilterType.get(
-                        filterTypes.get(i)).get(0);
-                Object attValue = ((ChannelSelector<KompicsEvent, ?>) f).getValue(event);
+    /**
+     * The channels of one selector type, by selector value.
+     */
+    private static final class TypeIndex {
 
-                HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                        .get(filterTypes.get(i));
+        // any selector of a type extracts the value the same way
+        private final ChannelSelector<?, ?> extractor;
+        // copied on write per value, never modified once published
+        private final ConcurrentHashMap<Object, ChannelCore<?>[]> channels = new ConcurrentHashMap<Object, ChannelCore<?>[]>();
+        // registrations, only touched by writers
+        private int size = 0;
 
-                ArrayList<ChannelCore<?>> chans = channelsByValue.get(attValue);
-                if (chans != null) {
-                    result.addAll(chans);
+        TypeIndex(ChannelSelector<?, ?> extractor) {
+            this.extractor = extractor;
+        }
+
+        void add(Object value, ChannelCore<?> channel) {
+            ChannelCore<?>[] chans = channels.get(value);
+            if (chans == null) {
+                chans = new ChannelCore<?>[]{channel};
+            } else {
+                for (ChannelCore<?> c : chans) {
+                    if (c == channel) {
+                        return; // already registered
+                    }
                 }
+                chans = Arrays.copyOf(chans, chans.length + 1);
+                chans[chans.length - 1] = channel;
             }
+            channels.put(value, chans);
+            size++;
         }
 
-		// if (result.size() > 0)
-        // System.err.println("SIZE= " + result.size() + " FOR " + event);
-        if (result.size() > 1) {
-            return distinct(result);
+        // returns true if this index is empty afterwards
+        boolean remove(Object value, ChannelCore<?> channel) {
+            ChannelCore<?>[] chans = channels.get(value);
+            if (chans != null) {
+                ChannelCore<?>[] rest = new ChannelCore<?>[chans.length];
+                int n = 0;
+                for (ChannelCore<?> c : chans) {
+                    if (c != channel) {
+                        rest[n++] = c;
+                    }
+                }
+                if (n < chans.length) {
+                    size--;
+                }
+                if (n == 0) {
+                    channels.remove(value);
+                } else if (n < chans.length) {
+                    channels.put(value, Arrays.copyOf(rest, n));
+                }
+            }
+            return size == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        ChannelCore<?>[] select(KompicsEvent event) {
+            Object value = ((ChannelSelector<KompicsEvent, ?>) extractor).getValue(event);
+            return channels.get((value == null) ? NULL_VALUE : value);
         }
-        return result;
     }
 
-    private ArrayList<ChannelCore<?>> distinct(ArrayList<ChannelCore<?>> array) {
-        ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        for (int i = 0; i < array.size(); i++) {
-            ChannelCore<?> c = array.get(i);
-            if (!result.contains(c)) {
-                result.add(c);
+    /**
+     * The selector types that apply to one event class.
+     */
+    private static final class Dispatch {
+
+        private final TypeIndex[] types;
+        private final int version;
+
+        Dispatch(TypeIndex[] types, int version) {
+            this.types = types;
+            this.version = version;
+        }
+
+        ChannelCore<?>[] select(KompicsEvent event) {
+            ChannelCore<?>[] result = NO_CHANNELS;
+            for (int i = 0; i < types.length; i++) {
+                ChannelCore<?>[] chans = types[i].select(event);
+                if (chans != null) {
+                    // several selector types only allocate if more than one matches
+                    result = (result.length == 0) ? chans : distinct(result, chans);
+                }
             }
+            return result;
         }
-        return result;
     }
 
     public boolean isEmpty() {
@@ -218,11 +290,11 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
     }
 
     public void clear() {
-        this.filterTypesByEventType.clear();
+        this.typesByEventType.clear();
+        this.typesBySelectorType.clear();
         this.filtersByChannel.clear();
-        this.filtersByFilterType.clear();
-        this.channelsByFilterType.clear();
-        this.inheritedFilters.clear();
+        this.dispatch.clear();
+        version++;
     }
 
     @Override
@@ -21,15 +21,21 @@
 package se.sics.kompics;
 
 import com.google.common.base.Optional;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
+import se.sics.kompics.metrics.ComponentMetrics;
+import se.sics.kompics.metrics.MetricsRegistry;
+import se.sics.kompics.util.Identifiers;
 
 /**
  * The <code>ComponentCore</code> class.
@@ -41,7 +47,7 @@ import se.sics.kompics.config.ConfigUpdate;
  */
 public abstract class ComponentCore extends ForkJoinTask<Void> implements Component {
 
-    private final UUID id = UUID.randomUUID();
+    private final UUID id = Identifiers.uuid();
     protected ComponentCore parent;
     protected Config conf;
     public static final ThreadLocal<ComponentCore> parentThreadLocal = new ThreadLocal();
@@ -52,11 +58,40 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
         childUpdate.set(update);
     }
 
-    protected List<ComponentCore> children = new LinkedList<ComponentCore>();
+    /**
+     * The children in creation order. A set, so that destroying one of many
+     * thousand children does not scan all of them.
+     */
+    protected Set<ComponentCore> children = new LinkedHashSet<ComponentCore>();
 
     protected final ReentrantReadWriteLock childrenLock = new ReentrantReadWriteLock();
     protected Scheduler scheduler;
     protected int wid;
+    /**
+     * The worker this component is kept on by schedulers that support
+     * affinity, or -1 if it has not been placed yet.
+     */
+    volatile int home = -1;
+    /**
+     * This component's metrics, or {@code null} if metrics are disabled.
+     */
+    ComponentMetrics metrics;
+    /**
+     * The thread running this component instead of the scheduler, if any.
+     */
+    DedicatedThread dedicated;
+    /**
+     * How deep events may be fused into this component, see
+     * {@link Kompics#FUSION_KEY}.
+     */
+    int fusionDepth;
+    /**
+     * Config updates sent to this component by each forwarder that may still
+     * be merged into, see {@link Kompics#COALESCE_UPDATES_KEY}, or
+     * {@code null} if updates are not coalesced.
+     */
+    final ConcurrentHashMap<UUID, PendingUpdate> pendingUpdates = Kompics.coalesceUpdates
+            ? new ConcurrentHashMap<UUID, PendingUpdate>(4) : null;
 
     protected abstract Logger logger();
 
@@ -79,6 +114,13 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
             logger().warn("Destroying a component before it has been stopped is not a good idea: {}", child.getComponent());
         }
         child.state = State.DESTROYED;
+        if (child.dedicated != null) {
+            child.dedicated.halt();
+        }
+        MetricsRegistry registry = Kompics.metrics;
+        if ((registry != null) && (child.metrics != null)) {
+            registry.unregister(child.metrics);
+        }
         try {
             childrenLock.writeLock().lock();
 
@@ -86,20 +128,36 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
         } finally {
             childrenLock.writeLock().unlock();
         }
+        // its Started may have arrived after it failed
+        setInactive(child);
     }
 
+    /**
+     * Tears down and destroys the child and its subtree, bottom up.
+     * <p>
+     * Only one component's lock is held at a time, so destroying a deep tree
+     * neither holds locks along the whole path nor blocks other components
+     * that look at the parent's children meanwhile.
+     * <p>
+     * @param child the child to destroy
+     */
     protected void destroyTree(ComponentCore child) {
+        for (ComponentCore grandchild : child.childrenSnapshot()) {
+            child.destroyTree(grandchild);
+        }
+        child.getComponent().tearDown();
+        doDestroy(child);
+    }
+
+    /**
+     * @return a copy of the current children, in creation order
+     */
+    protected ComponentCore[] childrenSnapshot() {
+        childrenLock.readLock().lock();
         try {
-            childrenLock.writeLock().lock();
-            child.childrenLock.writeLock().lock();
-            for (ComponentCore grandchild : child.children) {
-                child.destroyTree(grandchild);
-            }
-            child.getComponent().tearDown();
-            doDestroy(child);
+            return children.toArray(new ComponentCore[children.size()]);
         } finally {
-            child.childrenLock.writeLock().unlock();
-            childrenLock.writeLock().unlock();
+            childrenLock.readLock().unlock();
         }
     }
 
@@ -107,6 +165,9 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
 
     protected void markSubtreeAs(State s) {
         this.state = s;
+        if ((s != State.FAULTY) && (s != State.DESTROYED) && suspended.compareAndSet(true, false)) {
+            schedule(wid); // resumed with work left from before the fault
+        }
         if (s == State.FAULTY || s == State.DESTROYED || s == State.PASSIVE) {
             if (parent != null) {
                 parent.setInactive(this);
@@ -135,7 +196,23 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
      * === SCHEDULING ===
      */
     public AtomicInteger workCount = new AtomicInteger(0);
-    protected SpinlockQueue<PortCore<?>> readyPorts = new SpinlockQueue<PortCore<?>>();
+    protected SpinlockQueue<PortCore<?>> readyPorts = Kompics.portQueues.create();
+    /**
+     * Like {@link #readyPorts}, but for {@link PortCore#prioritized
+     * prioritized} ports, and drained first.
+     */
+    protected final SpinlockQueue<PortCore<?>> prioritizedPorts = new SpinlockQueue<PortCore<?>>();
+    /**
+     * Set by an activation that stopped because the component is
+     * {@link State#FAULTY} while work is still counted. Enqueuing more events
+     * won't schedule it again, so whoever clears this flag must.
+     */
+    private final AtomicBoolean suspended = new AtomicBoolean(false);
+    /**
+     * A fault raised by a port with {@link OverflowPolicy#FAULT} on another
+     * thread, waiting to be reported by this component's next activation.
+     */
+    private final AtomicReference<Fault> overflow = new AtomicReference<Fault>();
 
     /**
      * Sets the scheduler.
@@ -148,15 +225,49 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
 
     public void eventReceived(PortCore<?> port, KompicsEvent event, int wid) {
         //System.err.println("Received event " + event + " on " + port.getPortType().portTypeClass + " work " + workCount.get());
-        port.enqueue(event);
-        readyPorts.offer(port);
-        int wc = workCount.getAndIncrement();
-        if (wc == 0) {
+        if (enqueue(port, event)) {
             schedule(wid);
         }
     }
 
+    /**
+     * Like {@link #eventReceived(PortCore, KompicsEvent, int)}, but if the
+     * component was idle it is executed on the calling thread right away.
+     */
+    void eventReceivedFused(PortCore<?> port, KompicsEvent event, int wid) {
+        if (enqueue(port, event)) {
+            if (dedicated != null) {
+                dedicated.schedule();
+            } else {
+                execute(wid);
+            }
+        }
+    }
+
+    // returns true if the component was idle and the caller must run it
+    private boolean enqueue(PortCore<?> port, KompicsEvent event) {
+        ComponentMetrics m = metrics;
+        if (m != null) {
+            m.received(event);
+        }
+        port.enqueue(event);
+        if (port.prioritized) {
+            prioritizedPorts.offer(port);
+        } else {
+            readyPorts.offer(port);
+        }
+        return workCount.getAndIncrement() == 0;
+    }
+
     protected void schedule(int wid) {
+        ComponentMetrics m = metrics;
+        if (m != null) {
+            m.scheduled();
+        }
+        if (dedicated != null) {
+            dedicated.schedule();
+            return;
+        }
         if (scheduler == null) {
             scheduler = Kompics.getScheduler();
         }
@@ -165,6 +276,52 @@ public abstract class ComponentCore extends ForkJoinTask<Void> implements Compon
 
     public abstract void execute(int wid);
 
+    /**
+     * Called by the executing thread instead of rescheduling a faulty
+     * component that still has work.
+     * <p>
+     * @param wid the current worker id
+     */
+    protected void suspend(int wid) {
+        suspended.set(true);
+        if ((state != State.FAULTY) && suspended.compareAndSet(true, false)) {
+            schedule(wid); // resumed while we were stopping
+        }
+    }
+
+    /**
+     * Hands a port overflow to this component, to be reported on its own
+     * activation like a fault in one of its handlers. Counts as a unit of
+     * work, so the component is activated for it.
+     * <p>
+     * @param fault the overflow fault
+     * @param wid the current worker id
+     * @return {@code false} if an earlier overflow is still waiting
+     */
+    boolean overflowed(Fault fault, int wid) {
+        if (!overflow.compareAndSet(null, fault)) {
+            return false;
+        }
+        if (workCount.getAndIncrement() == 0) {
+            schedule(wid);
+        }
+        return true;
+    }
+
+    /**
+     * @return the waiting overflow fault, if any
+     */
+    protected Fault takeOverflow() {
+        return (overflow.get() == null) ? null : overflow.getAndSet(null);
+    }
+
+    /**
+     * @return whether events are waiting at prioritized ports
+     */
+    boolean hasPrioritizedWork() {
+        return !prioritizedPorts.isEmpty();
+    }
+
     @Override
     public void run() {
         this.execute(0);
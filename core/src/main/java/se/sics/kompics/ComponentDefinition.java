@@ -26,6 +26,7 @@ import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -323,6 +324,105 @@ public abstract class ComponentDefinition {
         return factory.connect((PortCore<P>) positive, (PortCore<P>) negative);
     }
 
+    /**
+     * Connects the two ports and bounds the event queues on both ends of the
+     * new channel.
+     * <p>
+     * The bound applies to the ports that receive events through the channel
+     * (the other sides of {@code positive} and {@code negative}) and thus to
+     * all events queued there, not only those arriving via this channel.
+     * <p>
+     * @param <P>
+     * @param positive
+     * @param negative
+     * @param factory
+     * @param capacity the maximum number of queued events per port
+     * @param policy what to do with events that arrive at a full port
+     * @return the new channel
+     * @see #bound(Port, int, OverflowPolicy)
+     */
+    protected <P extends PortType> Channel<P> connect(Positive<P> positive, Negative<P> negative, ChannelFactory factory,
+            int capacity, OverflowPolicy policy) {
+        bound(positive.getPair(), capacity, policy);
+        bound(negative.getPair(), capacity, policy);
+        return factory.connect((PortCore<P>) positive, (PortCore<P>) negative);
+    }
+
+    protected <P extends PortType> Channel<P> connect(Negative<P> negative, Positive<P> positive, ChannelFactory factory,
+            int capacity, OverflowPolicy policy) {
+        return connect(positive, negative, factory, capacity, policy);
+    }
+
+    /**
+     * Limits how many events may be queued at {@code port} waiting for their
+     * handlers, overriding the default of the port type.
+     * <p>
+     * @param <P>
+     * @param port the port whose handlers receive the events
+     * @param capacity the maximum number of queued events, or 0 for no bound
+     * @param policy what to do with events that arrive at a full port
+     */
+    protected final <P extends PortType> void bound(Port<P> port, int capacity, OverflowPolicy policy) {
+        if (port instanceof JavaPort) {
+            ((JavaPort<P>) port).setCapacity(capacity, policy);
+        } else {
+            throw new ConfigurationException("Port (" + port.toString() + " is not an instance of JavaPort!"
+                    + "Bounded queues only work in Java");
+        }
+    }
+
+    /**
+     * Makes this component handle events waiting at {@code port} before, or
+     * no longer before, those waiting at its other ports, overriding the
+     * default of the port type.
+     * <p>
+     * @param <P>
+     * @param port the port whose handlers receive the events
+     * @param prioritized whether the port is prioritized
+     */
+    protected final <P extends PortType> void prioritize(Port<P> port, boolean prioritized) {
+        if (port instanceof JavaPort) {
+            ((JavaPort<P>) port).setPrioritized(prioritized);
+        } else {
+            throw new ConfigurationException("Port (" + port.toString() + " is not an instance of JavaPort!"
+                    + "Prioritized ports only work in Java");
+        }
+    }
+
+    /**
+     * Runs this component on a thread of its own instead of the shared
+     * scheduler, waiting for work with the back-off configured under
+     * {@value Backoff#SPINS_KEY} and {@value Backoff#YIELDS_KEY}.
+     * <p>
+     * @see #dedicatedThread(Backoff)
+     */
+    protected final void dedicatedThread() {
+        dedicatedThread(Backoff.fromConfig(config()));
+    }
+
+    /**
+     * Runs this component on a thread of its own instead of the shared
+     * scheduler.
+     * <p>
+     * Saves the scheduler hand-off on every activation, for components whose
+     * handler latency matters more than the thread they occupy. The component
+     * stays in the tree as usual and all other components keep using the
+     * scheduler. The thread stops when the component is destroyed or Kompics
+     * shuts down.
+     * <p>
+     * Must be called from the constructor. The thread is only started once
+     * the component is.
+     * <p>
+     * @param backoff how the thread waits for work
+     */
+    protected final void dedicatedThread(Backoff backoff) {
+        ComponentCore cc = getComponentCore();
+        if (cc.dedicated != null) {
+            throw new KompicsException(cc + " already runs on a dedicated thread");
+        }
+        cc.dedicated = new DedicatedThread(cc, backoff);
+    }
+
     /**
      *
      * @param <P>
@@ -438,6 +538,21 @@ public abstract class ComponentDefinition {
     public void postUpdate() {
     }
 
+    /**
+     * Override to declare which config keys this component and all its
+     * descendants read, so updates touching none of them are not sent to
+     * this subtree.
+     * <p>
+     * The subtree's config then keeps the old values of other keys, so
+     * children created later in it see those too.
+     * <p>
+     * @return prefixes of the keys read, or {@code null} (default) if any
+     * key may be read
+     */
+    public Set<String> configPrefixes() {
+        return null;
+    }
+
     public final void updateConfig(ConfigUpdate update) {
         core.doConfigUpdate(update);
     }
@@ -603,14 +718,22 @@ public abstract class ComponentDefinition {
      * manuel</a> for how to use this with logback.
      */
     public static final String MDC_KEY_CSTATE = "kcomponent-state";
+    /**
+     * Config key selecting the {@link MDCMode} of the runtime (eager, lazy or
+     * off).
+     */
+    public static final String MDC_MODE_KEY = "kompics.logging.mdc";
+
+    final MDCMode mdcMode = Kompics.getMDCMode();
 
     /**
      * Kompics provided slf4j logger with managed diagnostic context.
      * <p>
      * See <a href="https://logback.qos.ch/manual/mdc.html">the logback
-     * manuel</a> for how to use this with logback.
+     * manuel</a> for how to use this with logback, and {@link MDCMode} for
+     * when the context is set.
      */
-    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+    protected final Logger logger = LazyMDCLogger.wrap(LoggerFactory.getLogger(this.getClass()), this, mdcMode);
 
     private final Map<String, String> mdcState = new HashMap<>();
     private final Map<String, String> mdcReset = new HashMap<>();
@@ -638,7 +761,9 @@ public abstract class ComponentDefinition {
      */
     protected void loggingCtxPut(String key, String value) {
         mdcState.put(key, value);
-        MDC.put(key, value);
+        if (mdcMode == MDCMode.EAGER) {
+            MDC.put(key, value);
+        }
     }
 
     /**
@@ -656,7 +781,9 @@ public abstract class ComponentDefinition {
     protected void loggingCtxPutAlways(String key, String value) {
         mdcReset.put(key, value);
         mdcState.put(key, value);
-        MDC.put(key, value);
+        if (mdcMode == MDCMode.EAGER) {
+            MDC.put(key, value);
+        }
     }
 
     /**
@@ -666,7 +793,9 @@ public abstract class ComponentDefinition {
      */
     protected void loggingCtxRemove(String key) {
         mdcState.remove(key);
-        MDC.remove(key);
+        if (mdcMode == MDCMode.EAGER) {
+            MDC.remove(key);
+        }
     }
 
     /**
@@ -688,9 +817,12 @@ public abstract class ComponentDefinition {
      * <p>
      */
     protected void loggingCtxReset() {
-        String state = MDC.get(MDC_KEY_CSTATE);
         mdcState.clear();
         mdcState.putAll(mdcReset);
+        if (mdcMode != MDCMode.EAGER) {
+            return;
+        }
+        String state = MDC.get(MDC_KEY_CSTATE);
         MDC.setContextMap(mdcState);
         if (state != null) {
             MDC.put(MDC_KEY_CSTATE, state);
@@ -22,4 +22,8 @@ public class ConfigurationException extends RuntimeException {
             super(t);
         }
 
+        public ConfigurationException(String msg, Throwable t) {
+            super(msg, t);
+        }
+
 }
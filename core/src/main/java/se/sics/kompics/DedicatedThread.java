@@ -0,0 +1,136 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread that executes a single component.
+ * <p>
+ * Replaces the scheduler for that component: {@link ComponentCore} hands its
+ * activations to {@link #schedule()} instead of {@link Scheduler#schedule},
+ * and the thread waits for them according to its {@link Backoff}.
+ * <p>
+ * The thread is a daemon and is only started by the component's first
+ * activation (normally its {@link Start}), so a component whose constructor
+ * fails never leaves a thread behind.
+ */
+final class DedicatedThread extends Thread {
+
+    private static final Set<DedicatedThread> threads = Collections.newSetFromMap(new ConcurrentHashMap<DedicatedThread, Boolean>());
+
+    private final ComponentCore core;
+    private final Backoff backoff;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean parked = false;
+    private volatile boolean running = true;
+
+    DedicatedThread(ComponentCore core, Backoff backoff) {
+        super("Kompics-dedicated-" + core.getComponent().getClass().getSimpleName());
+        this.core = core;
+        this.backoff = backoff;
+        setDaemon(true);
+    }
+
+    @Override
+    public synchronized void start() {
+        threads.add(this);
+        super.start();
+    }
+
+    void schedule() {
+        scheduled.set(true);
+        if (!started.get()) {
+            if (started.compareAndSet(false, true) && running) {
+                start();
+            }
+        } else if (parked) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    void halt() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        final int spinUntil = backoff.spins;
+        final long yieldUntil = (long) backoff.spins + backoff.yields;
+        long idle = 0;
+        try {
+            while (running) {
+                if (scheduled.get()) {
+                    scheduled.set(false);
+                    idle = 0;
+                    try {
+                        core.execute(0);
+                    } catch (Throwable e) {
+                        Kompics.getFaultHandler().handle(new Fault(e, core, null));
+                    }
+                } else if (idle < spinUntil) {
+                    idle++;
+                } else if (idle < yieldUntil) {
+                    idle++;
+                    Thread.yield();
+                } else {
+                    parked = true;
+                    // re-check after announcing, schedule() may not have seen the flag
+                    if (!scheduled.get() && running) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                }
+            }
+        } finally {
+            threads.remove(this);
+        }
+    }
+
+    /**
+     * Stops all dedicated threads and waits for them to finish.
+     * <p>
+     * @param timeoutMillis how long to wait for each thread
+     */
+    static void haltAll(long timeoutMillis) {
+        for (DedicatedThread t : threads) {
+            t.halt();
+        }
+        for (DedicatedThread t : threads) {
+            if (t == Thread.currentThread()) {
+                continue;
+            }
+            try {
+                t.join(timeoutMillis);
+            } catch (InterruptedException ex) {
+                Kompics.logger.warn("Interrupted while stopping dedicated threads", ex);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -37,6 +37,31 @@ public class Direct {
         public boolean hasResponse() {
             return response != null;
         }
+
+        /**
+         * Prepares this request to be triggered again.
+         * <p>
+         * The origin is only set once per trigger, so a request that is kept
+         * around for reuse must be recycled after its response was handled
+         * and before it is triggered the next time. The response instance is
+         * kept, so a pre-allocated response can be reused as well.
+         * <p>
+         * Recycling a request that is still in flight is an error, since the
+         * answering component would then reply on the wrong port.
+         */
+        public void recycle() {
+            this.origin = null;
+        }
+
+        /**
+         * Recycles this request and replaces its response.
+         * <p>
+         * @param r the (pre-allocated) response for the next use
+         */
+        public void recycle(R r) {
+            this.origin = null;
+            this.response = r;
+        }
     }
 
     public static interface Response extends KompicsEvent {
@@ -0,0 +1,74 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * How the ports route an event class, computed once per class.
+ * <p>
+ * Replaces the chain of {@code instanceof} checks on every trigger and
+ * delivery with a single lookup, so that plain events skip all request and
+ * response handling.
+ */
+final class EventKind {
+
+    static final int PLAIN = 0;
+    static final int ROUTED_REQUEST = 1;
+    static final int ROUTED_RESPONSE = 2;
+    static final int DIRECT_RESPONSE = 3;
+    static final int LEGACY_REQUEST = 4;
+    static final int LEGACY_RESPONSE = 5;
+
+    private static final ClassValue<Integer> KINDS = new ClassValue<Integer>() {
+
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return kindOf(type);
+        }
+    };
+
+    private EventKind() {
+        // static only
+    }
+
+    static int of(KompicsEvent event) {
+        return KINDS.get(event.getClass());
+    }
+
+    @SuppressWarnings("deprecation")
+    static int kindOf(Class<?> type) {
+        if (RoutedRequest.class.isAssignableFrom(type)) {
+            return ROUTED_REQUEST;
+        }
+        if (RoutedResponse.class.isAssignableFrom(type)) {
+            return ROUTED_RESPONSE;
+        }
+        if (Direct.Response.class.isAssignableFrom(type)) {
+            return DIRECT_RESPONSE;
+        }
+        if (Request.class.isAssignableFrom(type)) {
+            return LEGACY_REQUEST;
+        }
+        if (Response.class.isAssignableFrom(type)) {
+            return LEGACY_RESPONSE;
+        }
+        return PLAIN;
+    }
+}
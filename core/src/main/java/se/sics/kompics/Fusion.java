@@ -0,0 +1,60 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * Per-thread state of event fusion, i.e. running an idle component's
+ * handlers directly on the thread that triggered the event on it.
+ * <p>
+ * Enabled with {@value Kompics#FUSION_KEY}. A port connected by a single
+ * {@link BiDirectionalChannel} {@link #offered offers} the next hop while
+ * forwarding an event from a handler. The receiving port takes the offer if
+ * the event goes nowhere else, and the component then runs on the calling
+ * thread if it is idle, just like a scheduler worker would run it. Owning the
+ * component's work count keeps it to one handler at a time either way.
+ */
+final class Fusion {
+
+    private static final ThreadLocal<Fusion> CURRENT = new ThreadLocal<Fusion>() {
+
+        @Override
+        protected Fusion initialValue() {
+            return new Fusion();
+        }
+    };
+    /**
+     * Number of components executing on this thread, more than one if some
+     * were fused into others.
+     */
+    int executing = 0;
+    /**
+     * Whether the event currently being forwarded may be fused into its
+     * receiver.
+     */
+    boolean offered = false;
+
+    private Fusion() {
+    }
+
+    static Fusion current() {
+        return CURRENT.get();
+    }
+}
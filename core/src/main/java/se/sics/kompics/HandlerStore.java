@@ -21,219 +21,271 @@
 package se.sics.kompics;
 
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- *
+ * Handlers and matchers subscribed at a single port.
+ * <p>
+ * Which handlers apply to an event only depends on the event's concrete
+ * class, so the result of resolving a class is cached until the next
+ * (un)subscription.
+ * <p>
+ * All subscriptions are kept in an immutable {@link Table} that is replaced
+ * on every change. Mutators must be externally synchronised, lookups may run
+ * concurrently with them and never block.
+ * <p>
  * @author Lars Kroll <lkroll@kth.se>
  */
 class HandlerStore {
 
-    private HandlerEntry[] handlers = new HandlerEntry[0];
-    private int totalSubscriptions = 0;
-    private MatchedHandlerEntry[] matchers = new MatchedHandlerEntry[0];
-    private int totalMatchers = 0;
+    private volatile Table table = Table.EMPTY;
 
     void subscribe(Handler h) {
-        totalSubscriptions++;
+        Table t = table;
         Class<? extends KompicsEvent> eventType = h.getEventType();
+        HandlerEntry[] handlers = t.handlers;
         for (int i = 0; i < handlers.length; i++) {
             if (handlers[i].eventType.equals(eventType)) {
-                handlers[i].add(h);
+                HandlerEntry[] newHandlers = handlers.clone();
+                newHandlers[i] = handlers[i].with(h);
+                table = new Table(newHandlers, t.totalSubscriptions + 1, t.matchers, t.totalMatchers);
                 return;
             }
         }
-        HandlerEntry he = new HandlerEntry(eventType);
-        he.add(h);
         HandlerEntry[] newHandlers = new HandlerEntry[handlers.length + 1];
         System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
-        newHandlers[handlers.length] = he;
-        handlers = newHandlers;
+        newHandlers[handlers.length] = new HandlerEntry(eventType, new Handler[]{h});
+        table = new Table(newHandlers, t.totalSubscriptions + 1, t.matchers, t.totalMatchers);
     }
 
     void subscribe(MatchedHandler h) {
-        totalMatchers++;
+        Table t = table;
         Class<? extends PatternExtractor> eventType = h.getCxtType();
+        MatchedHandlerEntry[] matchers = t.matchers;
         for (int i = 0; i < matchers.length; i++) {
             if (matchers[i].eventType.equals(eventType)) {
-                matchers[i].add(h);
+                MatchedHandlerEntry[] newMatchers = matchers.clone();
+                newMatchers[i] = matchers[i].with(h);
+                table = new Table(t.handlers, t.totalSubscriptions, newMatchers, t.totalMatchers + 1);
                 return;
             }
         }
-        MatchedHandlerEntry mhe = new MatchedHandlerEntry(eventType);
-        mhe.add(h);
-        MatchedHandlerEntry[] newHandlers = new MatchedHandlerEntry[matchers.length + 1];
-        System.arraycopy(matchers, 0, newHandlers, 0, matchers.length);
-        newHandlers[matchers.length] = mhe;
-        matchers = newHandlers;
+        MatchedHandlerEntry[] newMatchers = new MatchedHandlerEntry[matchers.length + 1];
+        System.arraycopy(matchers, 0, newMatchers, 0, matchers.length);
+        newMatchers[matchers.length] = new MatchedHandlerEntry(eventType).with(h);
+        table = new Table(t.handlers, t.totalSubscriptions, newMatchers, t.totalMatchers + 1);
     }
 
     boolean unsubscribe(Handler h) {
+        Table t = table;
         Class<? extends KompicsEvent> eventType = h.getEventType();
-        boolean found = false;
-        int empties = 0;
+        HandlerEntry[] handlers = t.handlers;
         for (int i = 0; i < handlers.length; i++) {
             if (handlers[i].eventType.equals(eventType)) {
-                if (handlers[i].remove(h)) {
-                    found = true;
-                    totalSubscriptions--; // might be wrong if the same handler was subscribed more than once...but how would that make any sense?
-                    if (handlers[i].isEmpty()) {
-                        empties++;
-                        handlers[i] = null;
-                    }
+                HandlerEntry e = handlers[i].without(h);
+                if (e == null) {
+                    return false;
                 }
+                HandlerEntry[] newHandlers;
+                if (e.subscriptions.length == 0) {
+                    newHandlers = new HandlerEntry[handlers.length - 1];
+                    System.arraycopy(handlers, 0, newHandlers, 0, i);
+                    System.arraycopy(handlers, i + 1, newHandlers, i, handlers.length - i - 1);
+                } else {
+                    newHandlers = handlers.clone();
+                    newHandlers[i] = e;
+                }
+                table = new Table(newHandlers, t.totalSubscriptions - 1, t.matchers, t.totalMatchers);
+                return true;
             }
         }
-        if (empties > 0) {
-            removeHandlers(empties);
-        }
-        return found;
+        return false;
     }
 
     boolean unsubscribe(MatchedHandler h) {
+        Table t = table;
         Class<? extends PatternExtractor> eventType = h.getCxtType();
-        boolean found = false;
-        int empties = 0;
+        MatchedHandlerEntry[] matchers = t.matchers;
         for (int i = 0; i < matchers.length; i++) {
             if (matchers[i].eventType.equals(eventType)) {
-                if (matchers[i].remove(h)) {
-                    found = true;
-                    totalMatchers--;
-                    if (matchers[i].isEmpty()) {
-                        empties++;
-                        matchers[i] = null;
-                    }
+                MatchedHandlerEntry e = matchers[i].without(h);
+                if (e == null) {
+                    return false;
                 }
-            }
-        }
-        if (empties > 0) {
-            removeMatchers(empties);
-        }
-        return found;
-    }
-
-    private void removeHandlers(int empties) {
-        if (empties >= handlers.length) {
-            handlers = new HandlerEntry[0];
-        } else {
-            HandlerEntry[] newHandlers = new HandlerEntry[handlers.length - empties];
-            int i = 0, j = 0;
-            while (i < handlers.length) {
-                if (handlers[i] != null) {
-                    newHandlers[j] = handlers[i];
-                    j++;
-                }
-                i++;
-            }
-            handlers = newHandlers;
-        }
-    }
-
-    private void removeMatchers(int empties) {
-        if (empties >= matchers.length) {
-            matchers = new MatchedHandlerEntry[0];
-        } else {
-            MatchedHandlerEntry[] newHandlers = new MatchedHandlerEntry[matchers.length - empties];
-            int i = 0, j = 0;
-            while (i < matchers.length) {
-                if (matchers[i] != null) {
-                    newHandlers[j] = matchers[i];
-                    j++;
+                MatchedHandlerEntry[] newMatchers;
+                if (e.isEmpty()) {
+                    newMatchers = new MatchedHandlerEntry[matchers.length - 1];
+                    System.arraycopy(matchers, 0, newMatchers, 0, i);
+                    System.arraycopy(matchers, i + 1, newMatchers, i, matchers.length - i - 1);
+                } else {
+                    newMatchers = matchers.clone();
+                    newMatchers[i] = e;
                 }
-                i++;
+                table = new Table(t.handlers, t.totalSubscriptions, newMatchers, t.totalMatchers - 1);
+                return true;
             }
-            matchers = newHandlers;
         }
+        return false;
     }
 
     boolean hasSubscription(KompicsEvent event) {
-        for (int i = 0; i < handlers.length; i++) {
-            if (handlers[i].eventType.isInstance(event)) {
-                return true;
-            }
+        Resolution r = table.resolve(event.getClass());
+        if (r.handlers.length > 0) {
+            return true;
         }
-        if (event instanceof PatternExtractor) {
+        if (r.matchers.length > 0) {
             PatternExtractor pevent = (PatternExtractor) event;
-            for (int i = 0; i < matchers.length; i++) {
-                if (matchers[i].eventType.isInstance(pevent)) {
-                    if (matchers[i].matches(pevent)) {
-                        return true;
-                    }
+            for (int i = 0; i < r.matchers.length; i++) {
+                if (r.matchers[i].matches(pevent)) {
+                    return true;
                 }
             }
         }
         return false;
     }
 
+    /**
+     * @param event the event
+     * @return the handlers for the event, shared and must not be modified
+     */
     HandlerList getSubscriptions(KompicsEvent event) {
-        Handler[] subscriptions = new Handler[totalSubscriptions];
+        return table.resolve(event.getClass()).handlers;
+    }
+
+    MatchedHandlerList getMatchers(PatternExtractor event) {
+        Table t = table;
+        MatchedHandlerEntry[] entries = t.resolve(event.getClass()).matchers;
+        if (entries.length == 0) {
+            return MatchedHandlerList.EMPTY;
+        }
+        MatchedHandler[] subscriptions = new MatchedHandler[t.totalMatchers];
         int j = 0;
-        for (int i = 0; i < handlers.length; i++) {
-            if (handlers[i].eventType.isInstance(event)) {
-                for (int k = 0; k < handlers[i].subscriptions.length; k++) {
-                    subscriptions[j] = handlers[i].subscriptions[k];
-                    j++;
+        for (int i = 0; i < entries.length; i++) {
+            j = entries[i].appendMatches(event, subscriptions, j);
+        }
+        return new MatchedHandlerList(subscriptions, j);
+    }
+
+    /**
+     * One version of the subscriptions, together with its resolution cache.
+     */
+    private static final class Table {
+
+        static final Table EMPTY = new Table(new HandlerEntry[0], 0, new MatchedHandlerEntry[0], 0);
+
+        final HandlerEntry[] handlers;
+        final int totalSubscriptions;
+        final MatchedHandlerEntry[] matchers;
+        final int totalMatchers;
+        private final ConcurrentHashMap<Class<?>, Resolution> cache = new ConcurrentHashMap<>();
+
+        Table(HandlerEntry[] handlers, int totalSubscriptions, MatchedHandlerEntry[] matchers, int totalMatchers) {
+            this.handlers = handlers;
+            this.totalSubscriptions = totalSubscriptions;
+            this.matchers = matchers;
+            this.totalMatchers = totalMatchers;
+        }
+
+        Resolution resolve(Class<?> eventType) {
+            Resolution r = cache.get(eventType);
+            if (r == null) {
+                r = new Resolution(eventType, handlers, totalSubscriptions, matchers);
+                Resolution old = cache.putIfAbsent(eventType, r);
+                if (old != null) {
+                    r = old;
                 }
             }
+            return r;
         }
-        return new HandlerList(subscriptions, j);
     }
 
-    MatchedHandlerList getMatchers(PatternExtractor event) {
-        MatchedHandler[] subscriptions = new MatchedHandler[totalMatchers];
-        int j = 0;
-        for (int i = 0; i < matchers.length; i++) {
-            if (matchers[i].eventType.isInstance(event)) {
-                j = matchers[i].appendMatches(event, subscriptions, j);
+    /**
+     * Everything subscribed for one concrete event class.
+     */
+    private static final class Resolution {
+
+        final HandlerList handlers;
+        final MatchedHandlerEntry[] matchers;
+
+        Resolution(Class<?> eventType, HandlerEntry[] handlerEntries, int totalSubscriptions,
+                MatchedHandlerEntry[] matcherEntries) {
+            Handler[] subscriptions = new Handler[totalSubscriptions];
+            int j = 0;
+            for (int i = 0; i < handlerEntries.length; i++) {
+                if (handlerEntries[i].eventType.isAssignableFrom(eventType)) {
+                    Handler[] hs = handlerEntries[i].subscriptions;
+                    System.arraycopy(hs, 0, subscriptions, j, hs.length);
+                    j += hs.length;
+                }
             }
+            if (j == 0) {
+                this.handlers = HandlerList.EMPTY;
+            } else {
+                if (j < subscriptions.length) {
+                    Handler[] exact = new Handler[j];
+                    System.arraycopy(subscriptions, 0, exact, 0, j);
+                    subscriptions = exact;
+                }
+                this.handlers = new HandlerList(subscriptions, j);
+            }
+            int k = 0;
+            MatchedHandlerEntry[] ms = new MatchedHandlerEntry[matcherEntries.length];
+            for (int i = 0; i < matcherEntries.length; i++) {
+                if (matcherEntries[i].eventType.isAssignableFrom(eventType)) {
+                    ms[k] = matcherEntries[i];
+                    k++;
+                }
+            }
+            if (k < ms.length) {
+                MatchedHandlerEntry[] exact = new MatchedHandlerEntry[k];
+                System.arraycopy(ms, 0, exact, 0, k);
+                ms = exact;
+            }
+            this.matchers = ms;
         }
-        return new MatchedHandlerList(subscriptions, j);
     }
 
-    private static class HandlerEntry {
+    /**
+     * Handlers for one event type, immutable.
+     */
+    private static final class HandlerEntry {
 
         final Class<? extends KompicsEvent> eventType;
-        private Handler[] subscriptions = new Handler[0];
+        final Handler[] subscriptions;
 
-        HandlerEntry(Class<? extends KompicsEvent> eventType) {
+        HandlerEntry(Class<? extends KompicsEvent> eventType, Handler[] subscriptions) {
             this.eventType = eventType;
+            this.subscriptions = subscriptions;
         }
 
-        void add(Handler h) {
+        HandlerEntry with(Handler h) {
             Handler[] newSubscriptions = new Handler[subscriptions.length + 1];
             System.arraycopy(subscriptions, 0, newSubscriptions, 0, subscriptions.length);
             newSubscriptions[subscriptions.length] = h;
-            subscriptions = newSubscriptions;
+            return new HandlerEntry(eventType, newSubscriptions);
         }
 
-        boolean remove(Handler h) {
-            Handler[] newSubscriptions = new Handler[subscriptions.length - 1];
-            int i = 0, j = 0;
-            boolean found = false;
-            while (i < subscriptions.length) {
+        /**
+         * @return the entry without {@code h}, or {@code null} if {@code h}
+         * is not in it
+         */
+        HandlerEntry without(Handler h) {
+            for (int i = 0; i < subscriptions.length; i++) {
                 if (subscriptions[i] == h) {
-                    found = true;
-                } else {
-                    newSubscriptions[j] = subscriptions[i];
-                    j++;
+                    Handler[] newSubscriptions = new Handler[subscriptions.length - 1];
+                    System.arraycopy(subscriptions, 0, newSubscriptions, 0, i);
+                    System.arraycopy(subscriptions, i + 1, newSubscriptions, i, subscriptions.length - i - 1);
+                    return new HandlerEntry(eventType, newSubscriptions);
                 }
-                i++;
-            }
-            if (found) {
-                subscriptions = newSubscriptions;
-                return true;
-            } else {
-                return false;
             }
+            return null;
         }
-
-        boolean isEmpty() {
-            return subscriptions.length == 0;
-        }
-
     }
 
     static class HandlerList {
 
+        static final HandlerList EMPTY = new HandlerList(new Handler[0], 0);
+
         final Handler[] subscriptions;
         final int length;
 
@@ -243,56 +295,62 @@ class HandlerStore {
         }
     }
 
-    private static class MatchedHandlerEntry {
+    /**
+     * Matched handlers for one context type by pattern, immutable once
+     * published.
+     */
+    private static final class MatchedHandlerEntry {
 
         final Class<? extends PatternExtractor> eventType;
-        private final HashMap<Object, MatchedHandler[]> subscriptions = new HashMap<>();
+        private final HashMap<Object, MatchedHandler[]> subscriptions;
 
         MatchedHandlerEntry(Class<? extends PatternExtractor> ctxType) {
+            this(ctxType, new HashMap<Object, MatchedHandler[]>());
+        }
+
+        private MatchedHandlerEntry(Class<? extends PatternExtractor> ctxType, HashMap<Object, MatchedHandler[]> subscriptions) {
             this.eventType = ctxType;
+            this.subscriptions = subscriptions;
         }
 
-        void add(MatchedHandler h) {
+        MatchedHandlerEntry with(MatchedHandler h) {
+            HashMap<Object, MatchedHandler[]> newSubscriptions = new HashMap<>(subscriptions);
             MatchedHandler[] handlers = subscriptions.get(h.pattern());
             if (handlers == null) {
-                handlers = new MatchedHandler[]{h};
-                subscriptions.put(h.pattern(), handlers);
+                newSubscriptions.put(h.pattern(), new MatchedHandler[]{h});
             } else {
                 MatchedHandler[] newHandlers = new MatchedHandler[handlers.length + 1];
                 System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
                 newHandlers[handlers.length] = h;
-                subscriptions.put(h.pattern(), newHandlers);
+                newSubscriptions.put(h.pattern(), newHandlers);
             }
+            return new MatchedHandlerEntry(eventType, newSubscriptions);
         }
 
-        boolean remove(MatchedHandler h) {
+        /**
+         * @return the entry without {@code h}, or {@code null} if {@code h}
+         * is not in it
+         */
+        MatchedHandlerEntry without(MatchedHandler h) {
             MatchedHandler[] handlers = subscriptions.get(h.pattern());
             if (handlers == null) {
-                return false;
-            } else {
-                boolean found = false;
-                if (handlers.length == 1) {
-                    for (int i = 0; i < handlers.length; i++) {
-                        if (handlers[i] == h) {
-                            subscriptions.remove(h.pattern());
-                            return true;
-                        }
-                    }
-                } else {
-                    MatchedHandler[] newHandlers = new MatchedHandler[handlers.length - 1];
-                    int i = 0, j = 0;
-                    while (i < handlers.length) {
-                        if (handlers[i] == h) {
-                            found = true;
-                        } else {
-                            newHandlers[j] = handlers[i];
-                            j++;
-                        }
-                        i++;
+                return null;
+            }
+            for (int i = 0; i < handlers.length; i++) {
+                if (handlers[i] == h) {
+                    HashMap<Object, MatchedHandler[]> newSubscriptions = new HashMap<>(subscriptions);
+                    if (handlers.length == 1) {
+                        newSubscriptions.remove(h.pattern());
+                    } else {
+                        MatchedHandler[] newHandlers = new MatchedHandler[handlers.length - 1];
+                        System.arraycopy(handlers, 0, newHandlers, 0, i);
+                        System.arraycopy(handlers, i + 1, newHandlers, i, handlers.length - i - 1);
+                        newSubscriptions.put(h.pattern(), newHandlers);
                     }
+                    return new MatchedHandlerEntry(eventType, newSubscriptions);
                 }
-                return found;
             }
+            return null;
         }
 
         boolean isEmpty() {
@@ -320,6 +378,8 @@ class HandlerStore {
 
     static class MatchedHandlerList {
 
+        static final MatchedHandlerList EMPTY = new MatchedHandlerList(new MatchedHandler[0], 0);
+
         final MatchedHandler[] subscriptions;
         final int length;
 
@@ -21,13 +21,15 @@
 package se.sics.kompics;
 
 import com.google.common.base.Optional;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.MDC;
 import se.sics.kompics.Fault.ResolveAction;
@@ -36,6 +38,8 @@ import se.sics.kompics.HandlerStore.MatchedHandlerList;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
 import se.sics.kompics.config.ValueMerger;
+import se.sics.kompics.metrics.ComponentMetrics;
+import se.sics.kompics.metrics.MetricsRegistry;
 
 /**
  * The <code>ComponentCore</code> class.
@@ -48,6 +52,13 @@ import se.sics.kompics.config.ValueMerger;
 public class JavaComponent extends ComponentCore {
 
     private final int executeNEvents;
+    private final boolean coalesceUpdates;
+    /**
+     * The adaptive number of events per activation, or {@code null} if
+     * {@link #executeNEvents} is used.
+     */
+    private final Quantum quantum;
+    private final int lifecycleFanout;
     /*
      * outside ports
      */
@@ -80,6 +91,15 @@ public class JavaComponent extends ComponentCore {
         this.component = componentDefinition;
         parentThreadLocal.set(null);
         executeNEvents = Kompics.maxNumOfExecutedEvents.get();
+        long target = Kompics.quantumTarget;
+        quantum = (target > 0) ? new Quantum(target, Kompics.quantumMaxEvents) : null;
+        lifecycleFanout = Kompics.lifecycleFanout;
+        fusionDepth = Kompics.fusionDepth;
+        coalesceUpdates = Kompics.coalesceUpdates;
+        MetricsRegistry registry = Kompics.metrics;
+        if (registry != null) {
+            this.metrics = registry.register(id(), componentDefinition.getClass().getName(), new PortDepths());
+        }
     }
 
 //    public JavaComponent(JavaComponent other) {
@@ -246,7 +266,7 @@ public class JavaComponent extends ComponentCore {
         try {
             parentThreadLocal.set(this);
             childUpdate.set(update);
-            component = createInstance(definition, initEvent);
+            component = Metadata.create(definition, initEvent.orNull());
             ComponentCore child = component.getComponentCore();
 
             //child.workCount.incrementAndGet();
@@ -272,45 +292,76 @@ public class JavaComponent extends ComponentCore {
         }
     }
 
-    private <T extends ComponentDefinition> T createInstance(Class<T> definition, Optional<Init<T>> initEvent) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
-        if (!initEvent.isPresent()) {
-            return definition.newInstance();
-        }
-        Init<T> init = initEvent.get();
-        if (init instanceof Init.None) {
-            return definition.newInstance();
+    @Override
+    public void execute(int wid) {
+        if (fusionDepth == 0) {
+            executeBatch(wid);
+            return;
+        }
+        Fusion f = Fusion.current();
+        // a fused component must not clear the logging context of the one it was fused into
+        Map<String, String> outerMDC = ((f.executing > 0) && (component.mdcMode == MDCMode.EAGER))
+                ? MDC.getCopyOfContextMap() : null;
+        f.executing++;
+        try {
+            executeBatch(wid);
+        } finally {
+            f.executing--;
+            if (outerMDC != null) {
+                MDC.setContextMap(outerMDC);
+            }
         }
-        // look for a constructor that takes a single parameter
-        // and is assigment compatible with the given init event
-        Constructor<T> constr = definition.getConstructor(init.getClass());
-        return constr.newInstance(init);
     }
 
-    @Override
-    public void execute(int wid) {
+    private void executeBatch(int wid) {
         State previousState = state;
-        if ((state == State.DESTROYED) || (state == State.FAULTY)) {
+        if (state == State.DESTROYED) {
             return; // don't schedule these components
         }
+        if (state == State.FAULTY) {
+            suspend(wid); // until the fault is resolved
+            return;
+        }
         this.wid = wid;
+        if ((state == State.ACTIVE) && reportOverflow()) {
+            suspend(wid);
+            return;
+        }
         //System.err.println("Executing " + wid);
 
 //		New scheduling code: Run n and move to end of schedule
 //		
+        // every unit of work has its entry in readyPorts before it is counted,
+        // so we can handle that many events and settle the count once at the end
+        final Quantum quantum = this.quantum;
+        int work = workCount.get();
+        int batch = Math.min(work, (quantum == null) ? executeNEvents : quantum.events());
         int count = 0;
-        int wc = workCount.get();
+        final long started = (quantum == null) ? 0 : System.nanoTime();
 
-        this.component.setMDC();
-        MDC.put(ComponentDefinition.MDC_KEY_CSTATE, state.name());
+        final ComponentMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.activationStarted();
+        }
+        final boolean mdc = this.component.mdcMode == MDCMode.EAGER;
+        if (mdc) {
+            this.component.setMDC();
+            MDC.put(ComponentDefinition.MDC_KEY_CSTATE, state.name());
+        }
         try {
 
-            while ((count < executeNEvents) && wc > 0) {
+            while (count < batch) {
                 if (previousState != state) { // state might have changed between iterations
                     if (state == State.FAULTY) {
+                        if (workCount.addAndGet(-count) > 0) {
+                            suspend(wid);
+                        }
                         return;
                     }
                     previousState = state;
-                    MDC.put(ComponentDefinition.MDC_KEY_CSTATE, state.name());
+                    if (mdc) {
+                        MDC.put(ComponentDefinition.MDC_KEY_CSTATE, state.name());
+                    }
                 }
 
                 KompicsEvent event;
@@ -324,17 +375,21 @@ public class JavaComponent extends ComponentCore {
                     if (event == null) {
                         logger().debug("Not scheduling component.");
                         // try again
-                        if (wc > 0) {
+                        if (workCount.addAndGet(-count) > 0) {
                             schedule(wid);
                         }
                         return; // Don't run anything else
                     }
-                    readyPorts.remove(nextPort);
+                    if (!prioritizedPorts.remove(nextPort)) {
+                        readyPorts.remove(nextPort);
+                    }
                 } else {
                     //System.err.println("active state " + wid);
-                    nextPort = (JavaPort<?>) readyPorts.poll();
+                    nextPort = (JavaPort<?>) prioritizedPorts.poll();
+                    if (nextPort == null) {
+                        nextPort = (JavaPort<?>) readyPorts.poll();
+                    }
                     if (nextPort == null) {
-                        wc = workCount.decrementAndGet();
                         count++;
                         continue;
                     }
@@ -342,12 +397,12 @@ public class JavaComponent extends ComponentCore {
                 }
 
                 if (event == null) {
-                    logger().debug("Couldn't find event to schedule: wc={}", wc);
-                    wc = workCount.decrementAndGet();
+                    logger().debug("Couldn't find event to schedule: wc={}", workCount.get() - count);
                     count++;
                     continue;
                 }
 
+                long start = (metrics == null) ? -1 : metrics.beforeHandle(event);
                 HandlerList handlers = nextPort.getSubscribedHandlers(event);
 
                 if ((handlers != null) && (handlers.length > 0)) {
@@ -368,19 +423,50 @@ public class JavaComponent extends ComponentCore {
                         }
                     }
                 }
-                wc = workCount.decrementAndGet();
+                if (metrics != null) {
+                    metrics.afterHandle(start);
+                }
                 count++;
             }
 
         } finally {
-            MDC.clear();
+            if (mdc) {
+                MDC.clear();
+            }
+            if (quantum != null) {
+                quantum.update(count, System.nanoTime() - started, work > batch);
+                if (metrics != null) {
+                    metrics.quantum(quantum.events());
+                }
+            }
+            if (metrics != null) {
+                metrics.activationDone();
+            }
         }
 
-        if (wc > 0) {
+        // an overflow counted in this batch must not wait for the next one
+        if ((state == State.ACTIVE) && reportOverflow()) {
+            if (workCount.addAndGet(-count) > 0) {
+                suspend(wid);
+            }
+            return;
+        }
+        if (workCount.addAndGet(-count) > 0) {
             schedule(wid);
         }
     }
 
+    private boolean reportOverflow() {
+        Fault fault = takeOverflow();
+        if (fault == null) {
+            return false;
+        }
+        logger().error("A full port caused a fault! Might be handled later...", fault.getCause());
+        markSubtreeAs(State.FAULTY);
+        escalateFault(fault);
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     private boolean executeEvent(KompicsEvent event, Handler<?> handler) {
         try {
@@ -463,95 +549,87 @@ public class JavaComponent extends ComponentCore {
 
         @Override
         public void handle(Update event) {
-            UpdateAction action = JavaComponent.this.component.handleUpdate(event.update);
+            ConfigUpdate update = event.take();
+            UpdateAction action = JavaComponent.this.component.handleUpdate(update);
             switch (action.selfStrategy) {
                 case ORIGINAL:
-                    ((Config.Impl) conf).apply(event.update, action.merger);
+                    ((Config.Impl) conf).apply(update, action.merger);
                     break;
                 case MAP:
                     ((Config.Impl) conf).apply(
                             action.selfMapper.map(
-                                    event.update,
-                                    event.update.modify(id())
+                                    update,
+                                    update.modify(id())
                             ), action.merger
                     );
                     break;
                 case SWALLOW:
                     break;
             }
-            if ((parent != null) && (event.forwarder == parent.id())) { // downwards
-                switch (action.downStrategy) {
-                    case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
-                        for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                    }
-                    break;
-                    case MAP: {
-                        ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
-                        Update forwardedEvent = new Update(mappedUpdate, id());
-                        for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                    }
+            // downwards only to the children, otherwise to the other children and upwards
+            UUID except = ((parent != null) && (event.forwarder == parent.id())) ? null : event.forwarder;
+            switch (action.downStrategy) {
+                case ORIGINAL:
+                    forwardDown(update, except);
                     break;
-                    case SWALLOW:
-                        break;
-                }
-            } else { // upwards and to other children
-                switch (action.downStrategy) {
-                    case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
-                        for (Component child : children) {
-                            if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
-                            }
-                        }
-                    }
+                case MAP:
+                    forwardDown(action.downMapper.map(update, update.modify(id())), except);
                     break;
-                    case MAP: {
-                        ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
-                        Update forwardedEvent = new Update(mappedUpdate, id());
-                        for (Component child : children) {
-                            if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
-                            }
-                        }
-                    }
+                case SWALLOW:
                     break;
-                    case SWALLOW:
+            }
+            if ((except != null) && (parent != null)) {
+                switch (action.upStrategy) {
+                    case ORIGINAL:
+                        forward(parent, update);
                         break;
-                }
-                if (parent != null) {
-                    switch (action.upStrategy) {
-                        case ORIGINAL: {
-                            Update forwardedEvent = new Update(event.update, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
+                    case MAP:
+                        forward(parent, action.upMapper.map(update, update.modify(id())));
                         break;
-
-                        case MAP: {
-                            ConfigUpdate mappedUpdate = action.upMapper.map(event.update, event.update.modify(id()));
-                            Update forwardedEvent = new Update(mappedUpdate, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
+                    case SWALLOW:
                         break;
-                        case SWALLOW:
-                            break;
-                    }
                 }
             }
             component.postUpdate();
         }
     };
 
+    /**
+     * Sends the update to all children but {@code except}, skipping
+     * subtrees that declared they don't read any of its keys.
+     */
+    private void forwardDown(ConfigUpdate update, UUID except) {
+        Update shared = coalesceUpdates ? null : new Update(update, id());
+        for (ComponentCore child : children) {
+            if (child.id() == except) {
+                continue;
+            }
+            Set<String> prefixes = child.getComponent().configPrefixes();
+            if ((prefixes != null) && !update.touches(prefixes)) {
+                continue;
+            }
+            if (shared != null) {
+                ((PortCore<ControlPort>) child.getControl()).doTrigger(shared, wid, this);
+            } else {
+                forward(child, update);
+            }
+        }
+    }
+
+    private void forward(ComponentCore target, ConfigUpdate update) {
+        if (target.pendingUpdates == null) {
+            ((PortCore<ControlPort>) target.getControl()).doTrigger(new Update(update, id()), wid, this);
+            return;
+        }
+        PendingUpdate pending = target.pendingUpdates.get(id());
+        if ((pending != null) && pending.merge(update)) {
+            return; // the target will handle it with the earlier ones
+        }
+        pending = new PendingUpdate(update, target.pendingUpdates, id());
+        target.pendingUpdates.put(id(), pending);
+        ((PortCore<ControlPort>) target.getControl()).doTrigger(new Update(update, id(), pending), wid, this);
+    }
+
     @Override
     public ComponentDefinition getComponent() {
         return component;
@@ -561,16 +639,9 @@ public class JavaComponent extends ComponentCore {
     void doConfigUpdate(ConfigUpdate update) {
         Config.Impl impl = (Config.Impl) conf;
         impl.apply(update, ValueMerger.NONE);
-        Update forwardedEvent = new Update(update, id());
-        // forward down
-        for (Component child : children) {
-            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                    forwardedEvent, wid, this);
-        }
-        // forward up
+        forwardDown(update, null);
         if (parent != null) {
-          ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-            forwardedEvent, wid, this);
+            forward(parent, update);
         }
         component.postUpdate();
     }
@@ -598,7 +669,51 @@ public class JavaComponent extends ComponentCore {
     protected void setInactive(Component child) {
         activeSet.remove(child);
     }
-    private Set<Component> activeSet = new HashSet<Component>();
+    private final Set<Component> activeSet = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+
+    /**
+     * Sends a lifecycle event to the given children.
+     * <p>
+     * With {@value Kompics#LIFECYCLE_PARALLEL_KEY} set and at least that many
+     * children, the children are split into slices of that size and each
+     * slice is sent from its own scheduler task.
+     * <p>
+     * @param targets a snapshot of the children
+     * @param event the event
+     * @param activeOnly whether to skip children that are not active
+     */
+    private void fanOut(final ComponentCore[] targets, final KompicsEvent event, final boolean activeOnly) {
+        final int slice = lifecycleFanout;
+        if ((slice == 0) || (targets.length < slice)) {
+            send(targets, 0, targets.length, event, activeOnly, wid);
+            return;
+        }
+        Scheduler s = (scheduler != null) ? scheduler : Kompics.getScheduler();
+        final int w = wid;
+        for (int i = 0; i < targets.length; i += slice) {
+            final int from = i;
+            final int to = Math.min(i + slice, targets.length);
+            s.runTask(new Runnable() {
+
+                @Override
+                public void run() {
+                    send(targets, from, to, event, activeOnly, w);
+                }
+            });
+        }
+    }
+
+    private void send(ComponentCore[] targets, int from, int to, KompicsEvent event, boolean activeOnly, int w) {
+        ComponentCore self = component.getComponentCore();
+        for (int i = from; i < to; i++) {
+            ComponentCore child = targets[i];
+            if (activeOnly && (child.state() != Component.State.ACTIVE)) {
+                continue; // don't send stop events to already stopping components
+            }
+            logger().debug("Sending {} to child: {}", event.getClass().getSimpleName(), child);
+            ((PortCore<ControlPort>) child.getControl()).doTrigger(event, w, self);
+        }
+    }
     Handler<Start> handleStart = new Handler<Start>() {
         @Override
         public void handle(Start event) {
@@ -606,26 +721,17 @@ public class JavaComponent extends ComponentCore {
                 throw new KompicsException(JavaComponent.this + " received a Start event while in " + state + " state. "
                         + "Duplicate Start events are not allowed!");
             }
-            try {
-                childrenLock.readLock().lock();
-                if (!children.isEmpty()) {
-                    logger().debug("Starting...");
-                    state = Component.State.STARTING;
-                    for (ComponentCore child : children) {
-                        logger().debug("Sending Start to child: {}", child);
-                        // start child
-                        ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                Start.event, wid, component.getComponentCore());
-                    }
-                } else {
-                    logger().debug("Started!");
-                    state = Component.State.ACTIVE;
-                    if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Started(component.getComponentCore()), wid, component.getComponentCore());
-                    }
+            ComponentCore[] targets = childrenSnapshot();
+            if (targets.length > 0) {
+                logger().debug("Starting...");
+                state = Component.State.STARTING;
+                fanOut(targets, Start.event, false);
+            } else {
+                logger().debug("Started!");
+                state = Component.State.ACTIVE;
+                if (parent != null) {
+                    ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Started(component.getComponentCore()), wid, component.getComponentCore());
                 }
-            } finally {
-                childrenLock.readLock().unlock();
             }
         }
 
@@ -643,34 +749,22 @@ public class JavaComponent extends ComponentCore {
                 throw new KompicsException(JavaComponent.this + " received a Stop event while in " + state + " state. "
                         + "Duplicate Stop events are not allowed!");
             }
-            try {
-                childrenLock.readLock().lock();
-                if (!children.isEmpty()) {
-                    logger().debug("Stopping...");
-                    state = Component.State.STOPPING;
-                    for (ComponentCore child : children) {
-                        if (child.state() != Component.State.ACTIVE) {
-                            continue; // don't send stop events to already stopping components
-                        }
-                        logger().debug("Sending Stop to child: {}", child);
-                        // stop child
-                        ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                Stop.event, wid, component.getComponentCore());
-                    }
+            ComponentCore[] targets = childrenSnapshot();
+            if (targets.length > 0) {
+                logger().debug("Stopping...");
+                state = Component.State.STOPPING;
+                fanOut(targets, Stop.event, true);
+            } else {
+                logger().debug("Stopped!");
+                state = Component.State.PASSIVE;
+                component.tearDown();
+                if (parent != null) {
+                    ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Stopped(component.getComponentCore()), wid, component.getComponentCore());
                 } else {
-                    logger().debug("Stopped!");
-                    state = Component.State.PASSIVE;
-                    component.tearDown();
-                    if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Stopped(component.getComponentCore()), wid, component.getComponentCore());
-                    } else {
-                        synchronized (component.getComponentCore()) {
-                            component.getComponentCore().notifyAll();
-                        }
+                    synchronized (component.getComponentCore()) {
+                        component.getComponentCore().notifyAll();
                     }
                 }
-            } finally {
-                childrenLock.readLock().unlock();
             }
         }
 
@@ -689,36 +783,24 @@ public class JavaComponent extends ComponentCore {
                 throw new KompicsException(JavaComponent.this + " received a Kill event while in " + state + " state. "
                         + "Duplicate Kill events are not allowed!");
             }
-            try {
-                childrenLock.readLock().lock();
-                if (!children.isEmpty()) {
-                    logger().debug("Slowly dying...");
-                    state = Component.State.STOPPING;
-                    ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
-                    for (ComponentCore child : children) {
-                        if (child.state() != Component.State.ACTIVE) {
-                            continue; // don't send stop events to already stopping components
-                        }
-                        logger().debug("Sending Kill to child: {}", child);
-                        // stop child
-                        ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                Kill.event, wid, component.getComponentCore());
-                    }
+            ComponentCore[] targets = childrenSnapshot();
+            if (targets.length > 0) {
+                logger().debug("Slowly dying...");
+                state = Component.State.STOPPING;
+                ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
+                fanOut(targets, Kill.event, true);
+            } else {
+                logger().debug("dying...");
+                state = Component.State.PASSIVE;
+                ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
+                component.tearDown();
+                if (parent != null) {
+                    ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Killed(component.getComponentCore()), wid, component.getComponentCore());
                 } else {
-                    logger().debug("dying...");
-                    state = Component.State.PASSIVE;
-                    ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
-                    component.tearDown();
-                    if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Killed(component.getComponentCore()), wid, component.getComponentCore());
-                    } else {
-                        synchronized (component.getComponentCore()) {
-                            component.getComponentCore().notifyAll();
-                        }
+                    synchronized (component.getComponentCore()) {
+                        component.getComponentCore().notifyAll();
                     }
                 }
-            } finally {
-                childrenLock.readLock().unlock();
             }
         }
 
@@ -816,4 +898,21 @@ public class JavaComponent extends ComponentCore {
 
 };
 
+
+    private class PortDepths implements ComponentMetrics.QueueDepths {
+
+        @Override
+        public Map<String, Integer> queueDepths() {
+            Map<String, Integer> depths = new TreeMap<String, Integer>();
+            depths.put("control", negativeControl.queueDepth());
+            // queues live on the inside half of each port
+            for (JavaPort<? extends PortType> port : negativePorts.values()) {
+                depths.put("+" + port.getPortType().getClass().getName(), ((JavaPort<?>) port.getPair()).queueDepth());
+            }
+            for (JavaPort<? extends PortType> port : positivePorts.values()) {
+                depths.put("-" + port.getPortType().getClass().getName(), ((JavaPort<?>) port.getPair()).queueDepth());
+            }
+            return depths;
+        }
+    }
 }
@@ -20,12 +20,15 @@
  */
 package se.sics.kompics;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import se.sics.kompics.HandlerStore.HandlerList;
 import se.sics.kompics.HandlerStore.MatchedHandlerList;
 
@@ -40,28 +43,37 @@ import se.sics.kompics.HandlerStore.MatchedHandlerList;
 public class JavaPort<P extends PortType> extends PortCore<P> {
 
     private JavaPort<P> pair;
-    private final ReentrantReadWriteLock rwLock;
+    /**
+     * Serialises changes to the handlers and channels. Deliveries read the
+     * immutable snapshots below without taking it.
+     */
+    private final ReentrantLock writeLock;
     private final HandlerStore handlers = new HandlerStore();
     //private final HashMap<Class<? extends KompicsEvent>, ArrayList<Handler<?>>> subs = new HashMap<>();
     // TODO change this one as well.
     //private final HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>> matchers = new HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>>();
-    private ArrayList<ChannelCore<P>> normalChannels = new ArrayList<ChannelCore<P>>();
-    private ChannelSelectorSet selectorChannels = new ChannelSelectorSet();
-    ;
-    private SpinlockQueue<KompicsEvent> eventQueue = new SpinlockQueue<KompicsEvent>();
+    // copied on write, never modified once published
+    private volatile ArrayList<ChannelCore<P>> normalChannels = new ArrayList<ChannelCore<P>>();
+    // changed in place under the write lock, safe to read concurrently
+    private volatile ChannelSelectorSet selectorChannels = new ChannelSelectorSet();
+    private final SpinlockQueue<KompicsEvent> eventQueue;
+    private volatile Bound bound;
 
     public JavaPort(JavaPort<P> other) {
         this.isPositive = other.isPositive;
         this.portType = other.portType;
-        this.rwLock = other.rwLock;
+        this.writeLock = other.writeLock;
         this.owner = other.owner;
         this.isControlPort = other.isControlPort;
+        this.eventQueue = newEventQueue(owner);
+        this.bound = other.bound;
+        this.prioritized = other.prioritized;
     }
 
     JavaPort(boolean positive, P portType, ComponentCore owner) {
         this.isPositive = positive;
         this.portType = portType;
-        this.rwLock = new ReentrantReadWriteLock();
+        this.writeLock = new ReentrantLock();
         // this.subs = new HashMap<Class<? extends KompicsEvent>,
         // ArrayList<Handler<?>>>();
         // this.allChannels = new ArrayList<ChannelCore<P>>();
@@ -70,6 +82,19 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         // this.remotePorts = new HashMap<PortCore<P>, ChannelCore<P>>();
         this.owner = owner;
         this.isControlPort = (portType instanceof ControlPort);
+        this.eventQueue = newEventQueue(owner);
+        if (portType.getCapacity() > 0) {
+            this.bound = new Bound(portType.getCapacity(), portType.getOverflowPolicy(), 0);
+        }
+        this.prioritized = portType.isPrioritized() || Kompics.isPrioritized(portType);
+    }
+
+    private static SpinlockQueue<KompicsEvent> newEventQueue(ComponentCore owner) {
+        if (owner == null) {
+            // nobody will ever consume from this port
+            return new SpinlockQueue<KompicsEvent>();
+        }
+        return Kompics.portQueues.create();
     }
 
     @Override
@@ -83,60 +108,82 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void addChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            normalChannels.add(channel);
+            ArrayList<ChannelCore<P>> channels = new ArrayList<ChannelCore<P>>(normalChannels);
+            channels.add(channel);
+            normalChannels = channels;
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     @Override
     public void addChannel(ChannelCore<P> channel, ChannelSelector<?, ?> selector) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             selectorChannels.addChannelSelector(channel, selector);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     @Override
     public void removeChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             selectorChannels.removeChannel(channel);
-            normalChannels.remove(channel);
+            if (normalChannels.contains(channel)) {
+                ArrayList<ChannelCore<P>> channels = new ArrayList<ChannelCore<P>>(normalChannels);
+                channels.remove(channel);
+                normalChannels = channels;
+            }
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    // delivers the event to the connected channels (called holding read lock)
+    // delivers the event to the connected channels
     private boolean deliverToChannels(KompicsEvent event, int wid) {
         //Kompics.logger.debug("{}: trying to deliver {} to channels...", owner.getComponent(), event);
         boolean delivered = false;
-        if (normalChannels != null) {
-            for (ChannelCore<?> channel : normalChannels) {
-                if (isPositive) {
-                    channel.forwardToNegative(event, wid);
-                } else {
-                    channel.forwardToPositive(event, wid);
-                }
-                delivered = true;
-            }
-        }
-        if (selectorChannels != null) {
-            ArrayList<ChannelCore<?>> channels = selectorChannels.get(event);
-            if (channels != null) {
-                for (ChannelCore channel : channels) {
+        final ArrayList<ChannelCore<P>> normal = normalChannels;
+        final ChannelSelectorSet selector = selectorChannels;
+        if ((owner != null) && (owner.fusionDepth > 0) && (normal.size() == 1) && selector.isEmpty()
+                && (normal.get(0) instanceof BiDirectionalChannel)) {
+            Fusion f = Fusion.current();
+            if ((f.executing > 0) && (f.executing <= owner.fusionDepth)) {
+                f.offered = true;
+                try {
                     if (isPositive) {
-                        channel.forwardToNegative(event, wid);
+                        normal.get(0).forwardToNegative(event, wid);
                     } else {
-                        channel.forwardToPositive(event, wid);
+                        normal.get(0).forwardToPositive(event, wid);
                     }
-                    delivered = true;
+                } finally {
+                    f.offered = false;
+                }
+                return true;
+            }
+        }
+        for (int i = 0; i < normal.size(); i++) {
+            ChannelCore<?> channel = normal.get(i);
+            if (isPositive) {
+                channel.forwardToNegative(event, wid);
+            } else {
+                channel.forwardToPositive(event, wid);
+            }
+            delivered = true;
+        }
+        if (!selector.isEmpty()) {
+            ChannelCore<?>[] channels = selector.select(event);
+            for (int i = 0; i < channels.length; i++) {
+                if (isPositive) {
+                    channels[i].forwardToNegative(event, wid);
+                } else {
+                    channels[i].forwardToPositive(event, wid);
                 }
+                delivered = true;
             }
         }
         //Kompics.logger.debug("{}: {}", owner.getComponent(), delivered ? "succeeded" : "failed");
@@ -162,11 +209,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -194,11 +241,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + cxtType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -217,11 +264,11 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             handlers.subscribe(handler);
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -232,7 +279,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setEventType(eventType);
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             if (!handlers.unsubscribe(handler)) {
                 throw new RuntimeException("Handler " + handler
@@ -242,7 +289,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                         + eventType.getCanonicalName() + " events.");
             }
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -253,7 +300,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setCxtType(cxtType);
         }
 
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
             if (!handlers.unsubscribe(handler)) {
                 throw new RuntimeException("Handler " + handler
@@ -263,7 +310,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                         + handler.getCxtType().getCanonicalName() + " events.");
             }
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -275,73 +322,97 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return handlers.getMatchers(event);
     }
 
-    // TODO optimize trigger/subscribe
     @Override
     public void doTrigger(KompicsEvent event, int wid, ChannelCore<?> channel) {
         //System.out.println(this.getClass()+": "+event+" triggert from "+channel);
-        if (event instanceof Request) {
-            Request request = (Request) event;
-            request.pushPathElement(channel);
+        int kind = EventKind.of(event);
+        if (kind == EventKind.ROUTED_REQUEST) {
+            ((RoutedRequest) event).push(channel);
+        } else if (kind == EventKind.LEGACY_REQUEST) {
+            ((Request) event).pushPathElement(channel);
         }
-        pair.deliver(event, wid);
+        pair.deliver(event, kind, wid);
     }
 
     @Override
     public void doTrigger(KompicsEvent event, int wid, ComponentCore component) {
         //System.out.println(this.getClass()+": "+event+" triggert from "+component);
-        if (event instanceof Request) {
-            Request request = (Request) event;
-            request.pushPathElement(component);
+        int kind = EventKind.of(event);
+        if (kind == EventKind.ROUTED_REQUEST) {
+            ((RoutedRequest) event).push(component);
+        } else if (kind == EventKind.LEGACY_REQUEST) {
+            ((Request) event).pushPathElement(component);
         }
-        pair.deliver(event, wid);
+        pair.deliver(event, kind, wid);
     }
 
-    private void deliver(KompicsEvent event, int wid) {
+    private void deliver(KompicsEvent event, int kind, int wid) {
         Class<? extends KompicsEvent> eventType = event.getClass();
         boolean delivered = false;
+        boolean fuse = false;
+        if ((owner != null) && (owner.fusionDepth > 0)) {
+            Fusion f = Fusion.current();
+            if (f.offered) {
+                f.offered = false;
+                // only if this component is the event's sole destination
+                fuse = !isControlPort && normalChannels.isEmpty() && selectorChannels.isEmpty();
+            }
+        }
 
-        rwLock.readLock().lock();
-        try {
-            if (event instanceof Response) {
-                Response response = (Response) event;
-                RequestPathElement pe = response.getTopPathElement();
-                if (pe != null) {
-                    if (pe.isChannel()) {
-                        ChannelCore<?> caller = (ChannelCore<?>) pe
-                                .getChannel();
-                        if (caller != null) {
-                            // caller can be null since it is a WeakReference
-                            delivered = deliverToCallerChannel(event, wid,
-                                    caller);
-                        }
-                    } else {
-                        ComponentCore component = pe.getComponent();
-                        if (component == owner) {
-                            delivered = deliverToSubscribers(event, wid,
-                                    eventType);
-                        } else {
-                            throw new RuntimeException(
-                                    "Response path invalid: expected to arrive to component "
-                                    + component.getComponent()
-                                    + " but instead arrived at "
-                                    + owner.getComponent());
-                        }
+        if (kind == EventKind.ROUTED_RESPONSE) {
+            Object hop = ((RoutedResponse) event).pop();
+            if (hop == null) {
+                // arrived at the request origin and was triggered further
+                delivered = deliverToSubscribers(event, wid, eventType, fuse);
+                delivered |= deliverToChannels(event, wid);
+            } else if (hop instanceof ChannelCore) {
+                delivered = deliverToCallerChannel(event, wid, (ChannelCore<?>) hop);
+            } else if (hop == owner) {
+                delivered = deliverToSubscribers(event, wid, eventType, fuse);
+            } else {
+                throw new RuntimeException(
+                        "Response path invalid: expected to arrive to component "
+                        + ((ComponentCore) hop).getComponent()
+                        + " but instead arrived at "
+                        + owner.getComponent());
+            }
+        } else if (kind == EventKind.LEGACY_RESPONSE) {
+            Response response = (Response) event;
+            RequestPathElement pe = response.getTopPathElement();
+            if (pe != null) {
+                if (pe.isChannel()) {
+                    ChannelCore<?> caller = (ChannelCore<?>) pe
+                            .getChannel();
+                    if (caller != null) {
+                        // caller can be null since it is a WeakReference
+                        delivered = deliverToCallerChannel(event, wid,
+                                caller);
                     }
                 } else {
-                    // response event has arrived to request origin and was
-                    // triggered further. We treat it as a regular event
-                    delivered = deliverToSubscribers(event, wid, eventType);
-                    delivered |= deliverToChannels(event, wid);
+                    ComponentCore component = pe.getComponent();
+                    if (component == owner) {
+                        delivered = deliverToSubscribers(event, wid,
+                                eventType, fuse);
+                    } else {
+                        throw new RuntimeException(
+                                "Response path invalid: expected to arrive to component "
+                                + component.getComponent()
+                                + " but instead arrived at "
+                                + owner.getComponent());
+                    }
                 }
-            } else if (event instanceof Direct.Response) {
-                delivered = deliverToSubscribers(event, wid, eventType);
             } else {
-                // event is not a response event
-                delivered = deliverToSubscribers(event, wid, eventType);
+                // response event has arrived to request origin and was
+                // triggered further. We treat it as a regular event
+                delivered = deliverToSubscribers(event, wid, eventType, fuse);
                 delivered |= deliverToChannels(event, wid);
             }
-        } finally {
-            rwLock.readLock().unlock();
+        } else if (kind == EventKind.DIRECT_RESPONSE) {
+            delivered = deliverToSubscribers(event, wid, eventType, fuse);
+        } else {
+            // event is not a response event
+            delivered = deliverToSubscribers(event, wid, eventType, fuse);
+            delivered |= deliverToChannels(event, wid);
         }
 
         if (!delivered) {
@@ -374,7 +445,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     }
 
     // delivers this response event to the channel through which the
-    // corresponding request event came (called holding read lock)
+    // corresponding request event came
     private boolean deliverToCallerChannel(KompicsEvent event, int wid,
             ChannelCore<?> caller) {
         // Kompics.logger.debug("Caller +{}-{} in {} fwd {}", new Object[] {
@@ -394,21 +465,103 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return true;
     }
 
-    // deliver event to the local component (called holding read lock)
+    // deliver event to the local component
     private boolean deliverToSubscribers(KompicsEvent event, int wid,
-            Class<? extends KompicsEvent> eventType) {
+            Class<? extends KompicsEvent> eventType, boolean fuse) {
         //Kompics.logger.debug("{}: trying to deliver {} to subscribers...", owner, event);
 
         if (handlers.hasSubscription(event)) {
-            doDeliver(event, wid);
+            doDeliver(event, wid, fuse);
             return true;
         }
         //Kompics.logger.debug("{}: Couldn't deliver {}, no matching subscribers", owner.getComponent(), event);
         return false;
     }
 
-    private void doDeliver(KompicsEvent event, int wid) {
-        owner.eventReceived(this, event, wid);
+    private void doDeliver(KompicsEvent event, int wid, boolean fuse) {
+        Bound b = bound;
+        if ((b != null) && !admit(b, event, wid)) {
+            return;
+        }
+        if (fuse) {
+            owner.eventReceivedFused(this, event, wid);
+        } else {
+            owner.eventReceived(this, event, wid);
+        }
+    }
+
+    // reserves queue space for the event according to the overflow policy
+    private boolean admit(Bound b, KompicsEvent event, int wid) {
+        while (true) {
+            int d = b.depth.get();
+            if (d < b.capacity) {
+                if (b.depth.compareAndSet(d, d + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            switch (b.policy) {
+                case DROP_NEWEST:
+                    b.dropped.incrementAndGet();
+                    return false;
+                case DROP_OLDEST:
+                    // the consumer discards the head of the queue for us
+                    b.pendingDrops.incrementAndGet();
+                    b.dropped.incrementAndGet();
+                    return true;
+                case FAULT:
+                    b.dropped.incrementAndGet();
+                    // reported by the owner itself, so it is marked faulty first
+                    if (b.faulted.compareAndSet(false, true)
+                            && !owner.overflowed(new Fault(new PortOverflowException(this, b.capacity), owner, event), wid)) {
+                        b.faulted.set(false); // try again on a later overflow
+                    }
+                    return false;
+                default: // BLOCK
+                    if (!mayBlock()) {
+                        // waiting would hold a worker the consumer may need
+                        if (b.overcommitted.compareAndSet(false, true)) {
+                            Kompics.logger.warn("{} port of {} is full, but the scheduler cannot block this thread. "
+                                    + "Queueing beyond its capacity of {} instead.",
+                                    new Object[]{getPortType().getClass().getSimpleName(), owner, b.capacity});
+                        }
+                        b.depth.incrementAndGet();
+                        return true;
+                    }
+                    if (awaitSpace(b)) {
+                        return true;
+                    }
+                    // the port was re-bounded while we waited
+                    Bound nb = bound;
+                    return (nb == null) || admit(nb, event, wid);
+            }
+        }
+    }
+
+    private boolean mayBlock() {
+        Scheduler s = (owner.scheduler != null) ? owner.scheduler : Kompics.getScheduler();
+        return (s == null) || s.mayBlock();
+    }
+
+    /*
+     * Blocks until a slot in b is reserved or b is replaced. Waits through the
+     * fork-join pool, if any, so a blocked worker doesn't starve the consumer
+     * of a thread.
+     */
+    private boolean awaitSpace(final Bound b) {
+        SpaceBlocker blocker = new SpaceBlocker(b);
+        boolean interrupted = false;
+        while (!blocker.isReleasable()) {
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return blocker.reserved;
     }
 
     @Override
@@ -417,59 +570,108 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     }
 
     KompicsEvent pickFirstEvent() {
-        return eventQueue.poll();
+        Bound b = bound;
+        if (b == null) {
+            return eventQueue.poll();
+        }
+        while (b.pendingDrops.get() > 0) {
+            if (eventQueue.poll() == null) {
+                break;
+            }
+            b.pendingDrops.decrementAndGet();
+        }
+        KompicsEvent event = eventQueue.poll();
+        if (event != null) {
+            b.release();
+        }
+        return event;
+    }
+
+    /**
+     * Limits the number of events that may be queued at this port.
+     * <p>
+     * Replaces the default given by the port type. Events are queued at the
+     * port on which their handlers are subscribed, so this should be called
+     * on a component's own side of the port.
+     * <p>
+     * @param capacity the maximum number of queued events, or 0 for no bound
+     * @param policy what to do with events that arrive at a full port
+     */
+    public void setCapacity(int capacity, OverflowPolicy policy) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        if (capacity == 0) {
+            bound = null;
+        } else {
+            if (policy == null) {
+                throw new NullPointerException("policy");
+            }
+            bound = new Bound(capacity, policy, eventQueue.size());
+        }
     }
 
-    boolean hasEvent() {
-        return !eventQueue.isEmpty();
+    /**
+     * Makes the owner handle events at this port before, or no longer before,
+     * those waiting at its other ports.
+     * <p>
+     * Replaces the default given by the port type. Like the capacity, this
+     * applies to the port on which the handlers are subscribed.
+     * <p>
+     * @param prioritized whether the port is prioritized
+     */
+    public void setPrioritized(boolean prioritized) {
+        this.prioritized = prioritized;
+    }
+
+    /**
+     * @return whether the owner handles events at this port first
+     */
+    public boolean isPrioritized() {
+        return prioritized;
+    }
+
+    /**
+     * @return the queue capacity of this port, or 0 if it is unbounded
+     */
+    public int getCapacity() {
+        Bound b = bound;
+        return (b == null) ? 0 : b.capacity;
+    }
+
+    /**
+     * @return the overflow policy of this port, or {@code null} if it is
+     * unbounded
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        Bound b = bound;
+        return (b == null) ? null : b.policy;
+    }
+
+    /**
+     * Number of events currently waiting to be handled at this port.
+     * <p>
+     * Constant time for bounded ports or ring backed queues, otherwise linear
+     * in the number of queued events.
+     * <p>
+     * @return the current queue depth
+     */
+    public int queueDepth() {
+        Bound b = bound;
+        return (b == null) ? eventQueue.size() : b.depth.get();
+    }
+
+    /**
+     * @return the number of events this port has discarded because it was
+     * full
+     */
+    public long droppedEvents() {
+        Bound b = bound;
+        return (b == null) ? 0 : b.dropped.get();
     }
 
-    @SuppressWarnings("unchecked")
-    private <E extends KompicsEvent> Class<E> reflectEventType(Class handlerC, int parameter) {
-        Class<E> eventType = null;
-        try {
-            Method declared[] = handlerC.getDeclaredMethods();
-            // The JVM in Java 7 wrongly reflects the "handle" methods for some 
-            // handlers: e.g. both `handle(Event e)` and `handle(Message m)` are
-            // reflected as "declared" methods when only the second is actually
-            // declared in the handler. A workaround is to reflect all `handle`
-            // methods and pick the one with the most specific event type.
-            // This sorted set stores the event types of all reflected handler
-            // methods topologically ordered by the event type relationships.
-            TreeSet<Class<? extends KompicsEvent>> relevant
-                    = new TreeSet<Class<? extends KompicsEvent>>(
-                            new Comparator<Class<? extends KompicsEvent>>() {
-                                @Override
-                                public int compare(Class<? extends KompicsEvent> e1,
-                                        Class<? extends KompicsEvent> e2) {
-                                    if (e1.isAssignableFrom(e2)) {
-                                        return 1;
-                                    } else if (e2.isAssignableFrom(e1)) {
-                                        return -1;
-                                    }
-                                    return 0;
-                                }
-                            });
-            for (Method m : declared) {
-                if (m.getName().equals("handle")) {
-                    relevant.add(
-                            (Class<? extends KompicsEvent>) m.getParameterTypes()[parameter]);
-                }
-            }
-            eventType = (Class<E>) relevant.first();
-        } catch (Exception e) {
-            throw new RuntimeException("Cannot reflect handler event type for "
-                    + "handler " + handlerC + ". Please specify it "
-                    + "as an argument to the handler constructor.", e);
-        } finally {
-            if (eventType == null) {
-                throw new RuntimeException(
-                        "Cannot reflect handler event type for handler "
-                        + handlerC + ". Please specify it "
-                        + "as an argument to the handler constructor.");
-            }
-        }
-        return eventType;
+    boolean hasEvent() {
+        return !eventQueue.isEmpty();
     }
 
     @Override
@@ -484,31 +686,36 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void cleanChannels() {
-        rwLock.writeLock().lock();
+        writeLock.lock();
         try {
-            selectorChannels.clear();
-            normalChannels.clear();
+            selectorChannels = new ChannelSelectorSet();
+            normalChannels = new ArrayList<ChannelCore<P>>();
         } finally {
-            rwLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     @Override
     public void cleanEvents() {
         eventQueue.clear();
+        Bound b = bound;
+        if (b != null) {
+            b.pendingDrops.set(0);
+            b.depth.set(0);
+        }
     }
 
     private void reflectCMHType(ClassMatchedHandler cmh) {
-        Class cmhType = reflectEventType(cmh.getClass(), 0);
+        Class cmhType = Metadata.handlerType(cmh.getClass(), 0);
         cmh.setPattern(cmhType);
     }
 
     private Class reflectHandlerCxtType(MatchedHandler handler) {
-        return reflectEventType(handler.getClass(), 1);
+        return Metadata.handlerType(handler.getClass(), 1);
     }
 
     private <E extends Object & KompicsEvent> Class<E> reflectHandlerEventType(Handler<E> handler) {
-        return reflectEventType(handler.getClass(), 0);
+        return Metadata.handlerType(handler.getClass(), 0);
     }
 
     @Override
@@ -539,4 +746,68 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         }
         return channels;
     }
+
+    private final class SpaceBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final Bound b;
+        private int attempts = 0;
+        boolean reserved = false;
+
+        SpaceBlocker(Bound b) {
+            this.b = b;
+        }
+
+        @Override
+        public boolean block() {
+            attempts++;
+            if (attempts < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (reserved || (bound != b)) {
+                return true;
+            }
+            int d = b.depth.get();
+            if ((d < b.capacity) && b.depth.compareAndSet(d, d + 1)) {
+                reserved = true;
+            }
+            return reserved;
+        }
+    }
+
+    private static final class Bound {
+
+        final int capacity;
+        final OverflowPolicy policy;
+        final AtomicInteger depth;
+        final AtomicInteger pendingDrops = new AtomicInteger(0);
+        final AtomicLong dropped = new AtomicLong(0);
+        final AtomicBoolean faulted = new AtomicBoolean(false);
+        final AtomicBoolean overcommitted = new AtomicBoolean(false);
+
+        Bound(int capacity, OverflowPolicy policy, int depth) {
+            this.capacity = capacity;
+            this.policy = policy;
+            this.depth = new AtomicInteger(depth);
+        }
+
+        void release() {
+            int d;
+            do {
+                d = depth.get();
+                if (d <= 0) {
+                    return;
+                }
+            } while (!depth.compareAndSet(d, d - 1));
+            if (faulted.get()) {
+                faulted.set(false);
+            }
+        }
+    }
 }
@@ -20,8 +20,14 @@
  */
 package se.sics.kompics;
 
+import com.google.common.base.Optional;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +35,12 @@ import se.sics.kompics.Component.State;
 import se.sics.kompics.Fault.ResolveAction;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.TypesafeConfig;
+import se.sics.kompics.metrics.MetricsRegistry;
+import se.sics.kompics.scheduler.AffinityScheduler;
 import se.sics.kompics.scheduler.ForkJoinScheduler;
 import se.sics.kompics.scheduler.WorkStealingScheduler;
+import se.sics.kompics.util.IdentifierFactory;
+import se.sics.kompics.util.Identifiers;
 
 /**
  * The
@@ -45,6 +55,58 @@ public final class Kompics {
     public static final long SHUTDOWN_TIMEOUT = 5000;
     public static Logger logger = LoggerFactory.getLogger("Kompics");
     public static AtomicInteger maxNumOfExecutedEvents = new AtomicInteger(1);
+    /**
+     * Config key for the maximum number of events a component handles per
+     * activation. Overrides the value passed to
+     * {@link #createAndStart(Class, Init, int, int)} when set.
+     */
+    public static final String BATCH_SIZE_KEY = "kompics.execution.batchSize";
+    /**
+     * Config key for the target time in microseconds a component runs per
+     * activation. If set, the number of events handled per activation is
+     * adapted per component to the measured handler time, instead of the
+     * fixed {@value #BATCH_SIZE_KEY}. {@code 0}, the default, disables this.
+     */
+    public static final String QUANTUM_KEY = "kompics.execution.quantum";
+    /**
+     * Config key for the most events a component handles per activation
+     * when {@value #QUANTUM_KEY} is set. Defaults to
+     * {@value #DEFAULT_QUANTUM_MAX_EVENTS}.
+     */
+    public static final String QUANTUM_MAX_EVENTS_KEY = "kompics.execution.quantumMaxEvents";
+    public static final int DEFAULT_QUANTUM_MAX_EVENTS = 1024;
+    /**
+     * Config key for the number of children from which a component sends
+     * Start, Stop and Kill to its children in parallel, as slices of this
+     * size handed to {@link Scheduler#runTask(Runnable)}. {@code 0}, the
+     * default, always sends them one by one.
+     */
+    public static final String LIFECYCLE_PARALLEL_KEY = "kompics.lifecycle.parallelFanout";
+    /**
+     * Config key for how many components deep an event may be handled
+     * directly on the thread that triggered it, instead of being queued and
+     * scheduled, when it goes over a single two-way channel to an idle
+     * component. {@code 0}, the default, disables this.
+     */
+    public static final String FUSION_KEY = "kompics.execution.fusion";
+    /**
+     * Config key for a list of port type class names whose ports are
+     * prioritized, in addition to those declared with
+     * {@link PortType#prioritized()}. E.g.
+     * {@code ["se.sics.kompics.ControlPort"]} lets components handle
+     * lifecycle events before queued data events, and
+     * {@code ["se.sics.kompics.timer.Timer"]} keeps timeouts from waiting
+     * behind bulk data. No port type is prioritized by default.
+     */
+    public static final String PRIORITIZED_KEY = "kompics.port.prioritized";
+    /**
+     * Config key to merge config updates that a component has not handled
+     * yet into one, instead of delivering and applying each separately.
+     * Only updates whose values would simply replace each other are merged,
+     * see {@link se.sics.kompics.config.ConfigUpdate#coalesce}. Defaults to
+     * {@code false}.
+     */
+    public static final String COALESCE_UPDATES_KEY = "kompics.config.coalesceUpdates";
     private static boolean on = false;
     private static Scheduler scheduler;
     private static ComponentCore mainCore;
@@ -58,6 +120,68 @@ public final class Kompics {
     };
     private static FaultHandler faultHandler = defaultFaultHandler;
     private static Config config;
+    /**
+     * Kind of queue new ports and components use, loaded from the config in
+     * {@link #createAndStart(Class, Init, int, int)}.
+     */
+    static volatile SpinlockQueue.Options portQueues = SpinlockQueue.Options.UNBOUNDED;
+    private static volatile MDCMode mdcMode = MDCMode.EAGER;
+    /**
+     * The runtime's metrics, or {@code null} if they are disabled.
+     */
+    static volatile MetricsRegistry metrics;
+    /**
+     * Loaded from {@value #LIFECYCLE_PARALLEL_KEY}.
+     */
+    static volatile int lifecycleFanout = 0;
+    /**
+     * Loaded from {@value #QUANTUM_KEY}, in nanoseconds.
+     */
+    static volatile long quantumTarget = 0;
+    /**
+     * Loaded from {@value #QUANTUM_MAX_EVENTS_KEY}.
+     */
+    static volatile int quantumMaxEvents = DEFAULT_QUANTUM_MAX_EVENTS;
+    /**
+     * Loaded from {@value #FUSION_KEY}.
+     */
+    static volatile int fusionDepth = 0;
+    /**
+     * Loaded from {@value #PRIORITIZED_KEY}.
+     */
+    private static volatile Set<String> prioritizedPorts = Collections.emptySet();
+    /**
+     * Loaded from {@value #COALESCE_UPDATES_KEY}.
+     */
+    static volatile boolean coalesceUpdates = false;
+
+    private static Set<String> loadPrioritized(Config conf) {
+        List<String> names = conf.getValues(PRIORITIZED_KEY, String.class);
+        if ((names == null) || names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> types = new HashSet<>();
+        for (String name : names) {
+            try {
+                if (!PortType.class.isAssignableFrom(Class.forName(name))) {
+                    throw new ConfigurationException("Invalid port type in " + PRIORITIZED_KEY + ": " + name);
+                }
+            } catch (ClassNotFoundException ex) {
+                throw new ConfigurationException("Invalid port type in " + PRIORITIZED_KEY + ": " + name, ex);
+            }
+            types.add(name);
+        }
+        return types;
+    }
+
+    /**
+     * @param portType a port type
+     * @return whether {@value #PRIORITIZED_KEY} lists the port type
+     */
+    static boolean isPrioritized(PortType portType) {
+        Set<String> types = prioritizedPorts;
+        return !types.isEmpty() && types.contains(portType.getClass().getName());
+    }
 
     public static void setScheduler(Scheduler sched) {
         synchronized (obj) {
@@ -68,6 +192,21 @@ public final class Kompics {
         }
     }
 
+    /**
+     * @return the logging context mode components are created with
+     */
+    public static MDCMode getMDCMode() {
+        return mdcMode;
+    }
+
+    /**
+     * @return the metrics of the running Kompics instance, if
+     * {@value se.sics.kompics.metrics.MetricsRegistry#ENABLED_KEY} is set
+     */
+    public static Optional<MetricsRegistry> getMetrics() {
+        return Optional.fromNullable(metrics);
+    }
+
     public static Scheduler getScheduler() {
         synchronized (obj) {
             return scheduler;
@@ -182,6 +321,33 @@ public final class Kompics {
             if (on) {
                 throw new RuntimeException("Kompics already created");
             }
+            int batchSize = getConfig().getValueOrDefault(BATCH_SIZE_KEY, maxEventExecuteNumber);
+            if (batchSize < 1) {
+                throw new ConfigurationException("Invalid value for " + BATCH_SIZE_KEY + ": " + batchSize);
+            }
+            long quantum = getConfig().getValueOrDefault(QUANTUM_KEY, 0L);
+            if (quantum < 0) {
+                throw new ConfigurationException("Invalid value for " + QUANTUM_KEY + ": " + quantum);
+            }
+            int quantumMax = getConfig().getValueOrDefault(QUANTUM_MAX_EVENTS_KEY, DEFAULT_QUANTUM_MAX_EVENTS);
+            if (quantumMax < 1) {
+                throw new ConfigurationException("Invalid value for " + QUANTUM_MAX_EVENTS_KEY + ": " + quantumMax);
+            }
+            int fanout = getConfig().getValueOrDefault(LIFECYCLE_PARALLEL_KEY, 0);
+            if (fanout < 0) {
+                throw new ConfigurationException("Invalid value for " + LIFECYCLE_PARALLEL_KEY + ": " + fanout);
+            }
+            int fusion = getConfig().getValueOrDefault(FUSION_KEY, 0);
+            if (fusion < 0) {
+                throw new ConfigurationException("Invalid value for " + FUSION_KEY + ": " + fusion);
+            }
+            IdentifierFactory ids = Identifiers.fromConfig(getConfig());
+            Set<String> prioritized = loadPrioritized(getConfig());
+            boolean coalesce = getConfig().getValueOrDefault(COALESCE_UPDATES_KEY, false);
+            SpinlockQueue.Options queues = SpinlockQueue.Options.fromConfig(getConfig());
+            MDCMode mdc = MDCMode.fromString(getConfig().getValueOrDefault(ComponentDefinition.MDC_MODE_KEY, "eager"));
+            // built, but only started once everything else is in place
+            MetricsRegistry registry = MetricsRegistry.fromConfig(getConfig());
             on = true;
 
             if (scheduler == null) {
@@ -190,7 +356,20 @@ public final class Kompics {
                 //scheduler = new ThreadPoolScheduler(workers);
             }
 
-            Kompics.maxNumOfExecutedEvents.lazySet(maxEventExecuteNumber);
+            Kompics.maxNumOfExecutedEvents.lazySet(batchSize);
+            quantumTarget = TimeUnit.MICROSECONDS.toNanos(quantum);
+            quantumMaxEvents = quantumMax;
+            lifecycleFanout = fanout;
+            prioritizedPorts = prioritized;
+            coalesceUpdates = coalesce;
+            fusionDepth = fusion;
+            Identifiers.setFactory(ids);
+            portQueues = queues;
+            mdcMode = mdc;
+            metrics = registry;
+            if (metrics != null) {
+                metrics.start();
+            }
 
             try {
                 ComponentDefinition mainComponent;
@@ -257,6 +436,8 @@ public final class Kompics {
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            DedicatedThread.haltAll(SHUTDOWN_TIMEOUT);
+            stopMetrics();
             on = false;
             scheduler = null;
             obj.notifyAll();
@@ -268,6 +449,8 @@ public final class Kompics {
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            DedicatedThread.haltAll(SHUTDOWN_TIMEOUT);
+            stopMetrics();
             on = false;
             scheduler = null;
 
@@ -275,6 +458,13 @@ public final class Kompics {
         }
     }
 
+    private static void stopMetrics() {
+        if (metrics != null) {
+            metrics.stop();
+            metrics = null;
+        }
+    }
+
     public static void waitForTermination() throws InterruptedException {
         synchronized (obj) {
             while (on) {
@@ -328,6 +518,8 @@ public final class Kompics {
     public static void logStats() {
         if (scheduler instanceof WorkStealingScheduler) {
             ((WorkStealingScheduler) scheduler).logStats();
+        } else if (scheduler instanceof AffinityScheduler) {
+            ((AffinityScheduler) scheduler).logStats();
         }
     }
 }
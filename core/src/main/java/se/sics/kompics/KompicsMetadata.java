@@ -0,0 +1,59 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * Compile-time metadata about the handlers and component definitions
+ * declared in a top-level class and the classes nested in it.
+ * <p>
+ * Implementations are generated by the {@code kompics-processor} annotation
+ * processor as {@code <TopLevelClass>}{@value #SUFFIX} and let the runtime
+ * subscribe handlers and create components without reflection. Classes
+ * without metadata fall back to reflection.
+ */
+public interface KompicsMetadata {
+
+    public static final String SUFFIX = "_KompicsMetadata";
+
+    /**
+     * Returns the parameter types of the handler's {@code handle} method,
+     * i.e. the event type of a {@link Handler} and the content and context
+     * types of a {@link MatchedHandler}.
+     * <p>
+     * @param handlerClass a handler class
+     * @return the parameter types or {@code null} if unknown
+     */
+    public Class<?>[] handlerParameters(Class<?> handlerClass);
+
+    /**
+     * Creates an instance of the component definition.
+     * <p>
+     * Must behave like the reflective creation: with a {@code null} init the
+     * public no-argument constructor is used, otherwise the public
+     * constructor whose only parameter is exactly {@code init}'s class.
+     * <p>
+     * @param definition a component definition class
+     * @param init the init event or {@code null}
+     * @return the new instance or {@code null} if there is no such
+     * constructor
+     */
+    public ComponentDefinition create(Class<?> definition, Init<?> init);
+}
@@ -0,0 +1,710 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Logger for {@link MDCMode#LAZY} that installs the component's diagnostic
+ * context only around statements that pass the level check.
+ */
+final class LazyMDCLogger implements Logger {
+
+    private final Logger delegate;
+    private final ComponentDefinition component;
+
+    private LazyMDCLogger(Logger delegate, ComponentDefinition component) {
+        this.delegate = delegate;
+        this.component = component;
+    }
+
+    static Logger wrap(Logger logger, ComponentDefinition component, MDCMode mode) {
+        if (mode == MDCMode.LAZY) {
+            return new LazyMDCLogger(logger, component);
+        }
+        return logger;
+    }
+
+    private void install() {
+        component.setMDC();
+        ComponentCore core = component.getComponentCore();
+        if (core != null) { // still in the ComponentDefinition constructor
+            MDC.put(ComponentDefinition.MDC_KEY_CSTATE, core.state().name());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return delegate.isTraceEnabled();
+    }
+
+    @Override
+    public void trace(String msg) {
+        if (delegate.isTraceEnabled()) {
+            install();
+            try {
+                delegate.trace(msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        if (delegate.isTraceEnabled()) {
+            install();
+            try {
+                delegate.trace(format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        if (delegate.isTraceEnabled()) {
+            install();
+            try {
+                delegate.trace(format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(String format, Object... arguments) {
+        if (delegate.isTraceEnabled()) {
+            install();
+            try {
+                delegate.trace(format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(String msg, Throwable t) {
+        if (delegate.isTraceEnabled()) {
+            install();
+            try {
+                delegate.trace(msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isTraceEnabled(Marker marker) {
+        return delegate.isTraceEnabled(marker);
+    }
+
+    @Override
+    public void trace(Marker marker, String msg) {
+        if (delegate.isTraceEnabled(marker)) {
+            install();
+            try {
+                delegate.trace(marker, msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg) {
+        if (delegate.isTraceEnabled(marker)) {
+            install();
+            try {
+                delegate.trace(marker, format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg1, Object arg2) {
+        if (delegate.isTraceEnabled(marker)) {
+            install();
+            try {
+                delegate.trace(marker, format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object... arguments) {
+        if (delegate.isTraceEnabled(marker)) {
+            install();
+            try {
+                delegate.trace(marker, format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String msg, Throwable t) {
+        if (delegate.isTraceEnabled(marker)) {
+            install();
+            try {
+                delegate.trace(marker, msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(String msg) {
+        if (delegate.isDebugEnabled()) {
+            install();
+            try {
+                delegate.debug(msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        if (delegate.isDebugEnabled()) {
+            install();
+            try {
+                delegate.debug(format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        if (delegate.isDebugEnabled()) {
+            install();
+            try {
+                delegate.debug(format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... arguments) {
+        if (delegate.isDebugEnabled()) {
+            install();
+            try {
+                delegate.debug(format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(String msg, Throwable t) {
+        if (delegate.isDebugEnabled()) {
+            install();
+            try {
+                delegate.debug(msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled(Marker marker) {
+        return delegate.isDebugEnabled(marker);
+    }
+
+    @Override
+    public void debug(Marker marker, String msg) {
+        if (delegate.isDebugEnabled(marker)) {
+            install();
+            try {
+                delegate.debug(marker, msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg) {
+        if (delegate.isDebugEnabled(marker)) {
+            install();
+            try {
+                delegate.debug(marker, format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        if (delegate.isDebugEnabled(marker)) {
+            install();
+            try {
+                delegate.debug(marker, format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object... arguments) {
+        if (delegate.isDebugEnabled(marker)) {
+            install();
+            try {
+                delegate.debug(marker, format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String msg, Throwable t) {
+        if (delegate.isDebugEnabled(marker)) {
+            install();
+            try {
+                delegate.debug(marker, msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void info(String msg) {
+        if (delegate.isInfoEnabled()) {
+            install();
+            try {
+                delegate.info(msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        if (delegate.isInfoEnabled()) {
+            install();
+            try {
+                delegate.info(format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        if (delegate.isInfoEnabled()) {
+            install();
+            try {
+                delegate.info(format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        if (delegate.isInfoEnabled()) {
+            install();
+            try {
+                delegate.info(format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(String msg, Throwable t) {
+        if (delegate.isInfoEnabled()) {
+            install();
+            try {
+                delegate.info(msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled(Marker marker) {
+        return delegate.isInfoEnabled(marker);
+    }
+
+    @Override
+    public void info(Marker marker, String msg) {
+        if (delegate.isInfoEnabled(marker)) {
+            install();
+            try {
+                delegate.info(marker, msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg) {
+        if (delegate.isInfoEnabled(marker)) {
+            install();
+            try {
+                delegate.info(marker, format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        if (delegate.isInfoEnabled(marker)) {
+            install();
+            try {
+                delegate.info(marker, format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object... arguments) {
+        if (delegate.isInfoEnabled(marker)) {
+            install();
+            try {
+                delegate.info(marker, format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String msg, Throwable t) {
+        if (delegate.isInfoEnabled(marker)) {
+            install();
+            try {
+                delegate.info(marker, msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(String msg) {
+        if (delegate.isWarnEnabled()) {
+            install();
+            try {
+                delegate.warn(msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        if (delegate.isWarnEnabled()) {
+            install();
+            try {
+                delegate.warn(format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        if (delegate.isWarnEnabled()) {
+            install();
+            try {
+                delegate.warn(format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        if (delegate.isWarnEnabled()) {
+            install();
+            try {
+                delegate.warn(format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(String msg, Throwable t) {
+        if (delegate.isWarnEnabled()) {
+            install();
+            try {
+                delegate.warn(msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isWarnEnabled(Marker marker) {
+        return delegate.isWarnEnabled(marker);
+    }
+
+    @Override
+    public void warn(Marker marker, String msg) {
+        if (delegate.isWarnEnabled(marker)) {
+            install();
+            try {
+                delegate.warn(marker, msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg) {
+        if (delegate.isWarnEnabled(marker)) {
+            install();
+            try {
+                delegate.warn(marker, format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        if (delegate.isWarnEnabled(marker)) {
+            install();
+            try {
+                delegate.warn(marker, format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object... arguments) {
+        if (delegate.isWarnEnabled(marker)) {
+            install();
+            try {
+                delegate.warn(marker, format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String msg, Throwable t) {
+        if (delegate.isWarnEnabled(marker)) {
+            install();
+            try {
+                delegate.warn(marker, msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void error(String msg) {
+        if (delegate.isErrorEnabled()) {
+            install();
+            try {
+                delegate.error(msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        if (delegate.isErrorEnabled()) {
+            install();
+            try {
+                delegate.error(format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        if (delegate.isErrorEnabled()) {
+            install();
+            try {
+                delegate.error(format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        if (delegate.isErrorEnabled()) {
+            install();
+            try {
+                delegate.error(format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(String msg, Throwable t) {
+        if (delegate.isErrorEnabled()) {
+            install();
+            try {
+                delegate.error(msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isErrorEnabled(Marker marker) {
+        return delegate.isErrorEnabled(marker);
+    }
+
+    @Override
+    public void error(Marker marker, String msg) {
+        if (delegate.isErrorEnabled(marker)) {
+            install();
+            try {
+                delegate.error(marker, msg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg) {
+        if (delegate.isErrorEnabled(marker)) {
+            install();
+            try {
+                delegate.error(marker, format, arg);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        if (delegate.isErrorEnabled(marker)) {
+            install();
+            try {
+                delegate.error(marker, format, arg1, arg2);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object... arguments) {
+        if (delegate.isErrorEnabled(marker)) {
+            install();
+            try {
+                delegate.error(marker, format, arguments);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String msg, Throwable t) {
+        if (delegate.isErrorEnabled(marker)) {
+            install();
+            try {
+                delegate.error(marker, msg, t);
+            } finally {
+                MDC.clear();
+            }
+        }
+    }
+}
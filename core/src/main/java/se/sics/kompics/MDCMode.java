@@ -0,0 +1,56 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * How the runtime maintains the slf4j MDC (logging diagnostic context) of
+ * components.
+ * <p>
+ * Set with {@value ComponentDefinition#MDC_MODE_KEY} in the config and read
+ * once when the runtime is started.
+ */
+public enum MDCMode {
+
+    /**
+     * The MDC is installed every time a component is executed and cleared
+     * afterwards. This is the default.
+     */
+    EAGER,
+    /**
+     * The MDC is only installed around statements of a component's
+     * {@code logger} that are actually emitted. Code that reads the MDC
+     * directly, or logs through other loggers, sees an empty context.
+     */
+    LAZY,
+    /**
+     * The runtime never touches the MDC.
+     */
+    OFF;
+
+    static MDCMode fromString(String mode) {
+        try {
+            return valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationException("Invalid value for " + ComponentDefinition.MDC_MODE_KEY + ": " + mode
+                    + " (expected eager, lazy or off)");
+        }
+    }
+}
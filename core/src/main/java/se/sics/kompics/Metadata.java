@@ -0,0 +1,178 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Looks up the {@link KompicsMetadata} generated for a class and caches what
+ * the runtime had to reflect instead, so each handler class is inspected
+ * only once.
+ */
+final class Metadata {
+
+    private static final KompicsMetadata NONE = new KompicsMetadata() {
+
+        @Override
+        public Class<?>[] handlerParameters(Class<?> handlerClass) {
+            return null;
+        }
+
+        @Override
+        public ComponentDefinition create(Class<?> definition, Init<?> init) {
+            return null;
+        }
+    };
+
+    private static final ClassValue<KompicsMetadata> GENERATED = new ClassValue<KompicsMetadata>() {
+
+        @Override
+        protected KompicsMetadata computeValue(Class<?> type) {
+            Class<?> top = type;
+            while (top.getEnclosingClass() != null) {
+                top = top.getEnclosingClass();
+            }
+            if (top != type) {
+                return GENERATED.get(top);
+            }
+            try {
+                Class<?> c = Class.forName(type.getName() + KompicsMetadata.SUFFIX, true, type.getClassLoader());
+                return (KompicsMetadata) c.newInstance();
+            } catch (ClassNotFoundException ex) {
+                return NONE;
+            } catch (InstantiationException | IllegalAccessException | ClassCastException ex) {
+                Kompics.logger.warn("Ignoring invalid metadata for {}", type, ex);
+                return NONE;
+            }
+        }
+    };
+
+    private static final ClassValue<Class<?>[]> HANDLE_PARAMETERS = new ClassValue<Class<?>[]>() {
+
+        @Override
+        protected Class<?>[] computeValue(Class<?> type) {
+            Class<?>[] params = GENERATED.get(type).handlerParameters(type);
+            if (params != null) {
+                return params;
+            }
+            return reflectHandleParameters(type);
+        }
+    };
+
+    private Metadata() {
+    }
+
+    /**
+     * @param handlerClass a handler class
+     * @param parameter the position of the parameter of its {@code handle}
+     * method
+     * @return the most specific type of that parameter
+     */
+    @SuppressWarnings("unchecked")
+    static <E> Class<E> handlerType(Class<?> handlerClass, int parameter) {
+        Class<?>[] params = HANDLE_PARAMETERS.get(handlerClass);
+        if ((parameter >= params.length) || (params[parameter] == null)) {
+            throw new RuntimeException(
+                    "Cannot reflect handler event type for handler "
+                    + handlerClass + ". Please specify it "
+                    + "as an argument to the handler constructor.");
+        }
+        return (Class<E>) params[parameter];
+    }
+
+    /**
+     * Creates an instance of the component definition, through its
+     * generated metadata if there is any.
+     * <p>
+     * @param definition the component definition class
+     * @param init the init event, {@code null} or {@link Init#NONE} for
+     * none
+     * @return the new instance
+     */
+    static <T extends ComponentDefinition> T create(Class<T> definition, Init<?> init) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        if (init instanceof Init.None) {
+            init = null;
+        }
+        ComponentDefinition cd;
+        try {
+            cd = GENERATED.get(definition).create(definition, init);
+        } catch (RuntimeException | Error e) {
+            // like Constructor#newInstance, so both paths fail the same way
+            throw new InvocationTargetException(e);
+        }
+        if (cd != null) {
+            return definition.cast(cd);
+        }
+        if (init == null) {
+            return definition.getDeclaredConstructor().newInstance();
+        }
+        // look for a constructor that takes a single parameter
+        // and is assigment compatible with the given init event
+        Constructor<T> constr = definition.getConstructor(init.getClass());
+        return constr.newInstance(init);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<?>[] reflectHandleParameters(Class<?> handlerC) {
+        // The JVM in Java 7 wrongly reflects the "handle" methods for some
+        // handlers: e.g. both `handle(Event e)` and `handle(Message m)` are
+        // reflected as "declared" methods when only the second is actually
+        // declared in the handler. A workaround is to reflect all `handle`
+        // methods and pick the one with the most specific type for each
+        // parameter. These sorted sets store the parameter types of all
+        // reflected handler methods topologically ordered by their
+        // relationships.
+        Comparator<Class<?>> specificFirst = new Comparator<Class<?>>() {
+            @Override
+            public int compare(Class<?> e1, Class<?> e2) {
+                if (e1.isAssignableFrom(e2)) {
+                    return 1;
+                } else if (e2.isAssignableFrom(e1)) {
+                    return -1;
+                }
+                return 0;
+            }
+        };
+        TreeSet<Class<?>>[] relevant = new TreeSet[2];
+        for (Method m : handlerC.getDeclaredMethods()) {
+            if (m.getName().equals("handle")) {
+                Class<?>[] types = m.getParameterTypes();
+                for (int i = 0; (i < types.length) && (i < relevant.length); i++) {
+                    if (relevant[i] == null) {
+                        relevant[i] = new TreeSet<Class<?>>(specificFirst);
+                    }
+                    relevant[i].add(types[i]);
+                }
+            }
+        }
+        Class<?>[] params = new Class<?>[relevant.length];
+        for (int i = 0; i < relevant.length; i++) {
+            if (relevant[i] != null) {
+                params[i] = relevant[i].first();
+            }
+        }
+        return params;
+    }
+}
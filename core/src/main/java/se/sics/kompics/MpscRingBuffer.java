@@ -0,0 +1,173 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, array-backed multi-producer/single-consumer queue.
+ * <p>
+ * Producers claim a slot by advancing the producer index and then publish the
+ * element into it; an empty ({@code null}) slot below the producer index is a
+ * claimed but not yet published element. Only one thread may call the
+ * consumer side ({@link #poll()}, {@link #peek()}, {@link #remove(Object)},
+ * {@link #clear()}) at a time.
+ * <p>
+ * Nothing is allocated on {@link #offer(Object)}.
+ */
+final class MpscRingBuffer<E> {
+
+    /**
+     * Marks a slot whose element was removed out of order by the consumer.
+     */
+    private static final Object REMOVED = new Object();
+    private static final AtomicLongFieldUpdater<MpscRingBuffer> CONSUMER_INDEX
+            = AtomicLongFieldUpdater.newUpdater(MpscRingBuffer.class, "consumerIndex");
+
+    private final AtomicReferenceArray<Object> buffer;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong(0);
+    private volatile long consumerIndex = 0;
+
+    MpscRingBuffer(int capacity) {
+        int cap = roundToPowerOfTwo(capacity);
+        this.buffer = new AtomicReferenceArray<Object>(cap);
+        this.mask = cap - 1;
+    }
+
+    static int roundToPowerOfTwo(int capacity) {
+        if (capacity < 2) {
+            return 2;
+        }
+        if (capacity > (1 << 30)) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @param e the element, must not be {@code null}
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(E e) {
+        final long capacity = mask + 1;
+        long pIndex;
+        do {
+            pIndex = producerIndex.get();
+            if (pIndex - consumerIndex >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(pIndex, pIndex + 1));
+        buffer.lazySet((int) pIndex & mask, e);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    E poll() {
+        while (true) {
+            final long cIndex = consumerIndex;
+            final int offset = (int) cIndex & mask;
+            Object e = buffer.get(offset);
+            if (e == null) {
+                if (cIndex == producerIndex.get()) {
+                    return null;
+                }
+                e = awaitPublished(offset);
+            }
+            buffer.lazySet(offset, null);
+            CONSUMER_INDEX.lazySet(this, cIndex + 1);
+            if (e != REMOVED) {
+                return (E) e;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    E peek() {
+        while (true) {
+            final long cIndex = consumerIndex;
+            final int offset = (int) cIndex & mask;
+            Object e = buffer.get(offset);
+            if (e == null) {
+                if (cIndex == producerIndex.get()) {
+                    return null;
+                }
+                e = awaitPublished(offset);
+            }
+            if (e != REMOVED) {
+                return (E) e;
+            }
+            buffer.lazySet(offset, null);
+            CONSUMER_INDEX.lazySet(this, cIndex + 1);
+        }
+    }
+
+    /**
+     * Removes the first published occurrence of {@code e}, comparing by
+     * identity.
+     * <p>
+     * @param e the element to remove
+     * @return whether an element was removed
+     */
+    boolean remove(E e) {
+        final long pIndex = producerIndex.get();
+        for (long i = consumerIndex; i < pIndex; i++) {
+            final int offset = (int) i & mask;
+            if (buffer.get(offset) == e) {
+                buffer.lazySet(offset, REMOVED);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return consumerIndex == producerIndex.get();
+    }
+
+    int size() {
+        long size = producerIndex.get() - consumerIndex;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    void clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    private Object awaitPublished(int offset) {
+        Object e;
+        int spins = 0;
+        while ((e = buffer.get(offset)) == null) {
+            if (++spins > 100) {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * What a bounded port does with a new event when its queue is full.
+ * <p>
+ * @see JavaPort#setCapacity(int, OverflowPolicy)
+ * @see PortType#bounded(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The triggering thread waits until the consumer has made room. On a
+     * fork-join scheduler the pool is told about the wait, so it may start a
+     * compensating worker.
+     * <p>
+     * Only threads that may block (see {@link Scheduler#mayBlock()}) wait.
+     * Other schedulers cannot replace a waiting worker, which the consumer
+     * may need to make room, so events triggered from their workers are
+     * queued beyond the capacity instead, and a warning is logged.
+     * <p>
+     * Never use this on a port the owning component triggers into itself
+     * (e.g. via a loopback), as it would then wait for itself forever.
+     */
+    BLOCK,
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued event is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new event is discarded and a {@link Fault} with a
+     * {@link PortOverflowException} is escalated from the owning component.
+     * Only one fault is raised until the queue drops below capacity again.
+     * <p>
+     * The fault is raised by the owning component's next activation while it
+     * is active, exactly like a fault thrown by one of its handlers, so it is
+     * faulty until the fault is resolved.
+     */
+    FAULT;
+}
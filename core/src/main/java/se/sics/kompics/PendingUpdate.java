@@ -0,0 +1,83 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.google.common.base.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import se.sics.kompics.config.ConfigUpdate;
+
+/**
+ * A config update sent to a component that has not handled it yet.
+ * <p>
+ * With {@value Kompics#COALESCE_UPDATES_KEY} set, the sender merges further
+ * updates for the same component into it instead of sending each one, as
+ * long as the component has not {@link #take() taken} it. Taking it also
+ * removes it from the receiver's pending updates, so the receiver only keeps
+ * entries for updates that are still in flight.
+ */
+final class PendingUpdate {
+
+    private final ConcurrentMap<UUID, PendingUpdate> box;
+    private final UUID sender;
+    private ConfigUpdate update;
+    private boolean closed = false;
+
+    /**
+     * @param update the first update
+     * @param box the receiver's pending updates, which this is put into
+     * @param sender the id of the sending component
+     */
+    PendingUpdate(ConfigUpdate update, ConcurrentMap<UUID, PendingUpdate> box, UUID sender) {
+        this.update = update;
+        this.box = box;
+        this.sender = sender;
+    }
+
+    /**
+     * @param later the next update from the same sender
+     * @return whether it was merged, if not it must be sent on its own
+     */
+    synchronized boolean merge(ConfigUpdate later) {
+        if (closed) {
+            return false;
+        }
+        Optional<ConfigUpdate> merged = update.coalesce(later);
+        if (!merged.isPresent()) {
+            // later updates must not overtake this one
+            closed = true;
+            return false;
+        }
+        update = merged.get();
+        return true;
+    }
+
+    /**
+     * Called by the receiving component.
+     * <p>
+     * @return all updates merged so far
+     */
+    synchronized ConfigUpdate take() {
+        closed = true;
+        box.remove(sender, this); // unless the sender already replaced it
+        return update;
+    }
+}
@@ -40,6 +40,12 @@ public abstract class PortCore<P extends PortType> implements Negative<P>, Posit
 
     protected ComponentCore owner;
 
+    /**
+     * Whether the owner handles events at this port before those at its
+     * other ports.
+     */
+    protected volatile boolean prioritized;
+
     @Override
     public P getPortType() {
         return portType;
@@ -20,9 +20,9 @@
  */
 package se.sics.kompics;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -34,13 +34,26 @@ import java.util.Set;
  */
 public abstract class PortType {
 
-	private static HashMap<Class<? extends PortType>, PortType> map = new HashMap<Class<? extends PortType>, PortType>();
+	private static final ConcurrentHashMap<Class<? extends PortType>, PortType> map = new ConcurrentHashMap<Class<? extends PortType>, PortType>();
+
+	private static final byte POSITIVE = 1;
+	private static final byte NEGATIVE = 2;
 
 	private Set<Class<? extends KompicsEvent>> positive = new HashSet<Class<? extends KompicsEvent>>();
 	private Set<Class<? extends KompicsEvent>> negative = new HashSet<Class<? extends KompicsEvent>>();
 
 	Class<? extends PortType> portTypeClass;
 
+	private int capacity = 0;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private boolean prioritized = false;
+
+	/**
+	 * Memoised directions (bit set of {@link #POSITIVE} and {@link #NEGATIVE})
+	 * in which each concrete event class that was looked up flows.
+	 */
+	private final ConcurrentHashMap<Class<?>, Byte> directions = new ConcurrentHashMap<Class<?>, Byte>();
+
 	/**
 	 * Gets the port type.
 	 * 
@@ -55,7 +68,11 @@ public abstract class PortType {
 		if (portType == null) {
 			try {
 				portType = portTypeClass.newInstance();
-				map.put(portTypeClass, portType);
+				// keep whichever instance was registered first
+				P existing = (P) map.putIfAbsent(portTypeClass, portType);
+				if (existing != null) {
+					portType = existing;
+				}
 			} catch (InstantiationException e) {
 				throw new RuntimeException("Cannot create port type "
 						+ portTypeClass.getCanonicalName(), e);
@@ -79,6 +96,7 @@ public abstract class PortType {
 	 */
 	protected final void positive(Class<? extends KompicsEvent> eventType) {
 		positive.add(eventType);
+		directions.clear();
 	}
 
 	/**
@@ -88,6 +106,7 @@ public abstract class PortType {
 	 */
 	protected final void indication(Class<? extends KompicsEvent> eventType) {
 		positive.add(eventType);
+		directions.clear();
 	}
 
 	/**
@@ -98,6 +117,7 @@ public abstract class PortType {
 	 */
 	protected final void negative(Class<? extends KompicsEvent> eventType) {
 		negative.add(eventType);
+		directions.clear();
 	}
 
 	/**
@@ -107,6 +127,61 @@ public abstract class PortType {
 	 */
 	protected final void request(Class<? extends KompicsEvent> eventType) {
 		negative.add(eventType);
+		directions.clear();
+	}
+
+	/**
+	 * bounds the event queue of every port of this type
+	 * <p>
+	 * Can be overridden for individual ports with
+	 * {@link JavaPort#setCapacity(int, OverflowPolicy)}.
+	 * 
+	 * @param capacity
+	 *            the maximum number of queued events per port, or 0 for no
+	 *            bound
+	 * @param policy
+	 *            what to do with events that arrive at a full port
+	 */
+	protected final void bounded(int capacity, OverflowPolicy policy) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative");
+		}
+		this.capacity = capacity;
+		this.overflowPolicy = policy;
+	}
+
+	/**
+	 * @return the default queue capacity of ports of this type (0 if
+	 *         unbounded)
+	 */
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the default overflow policy of ports of this type
+	 */
+	public final OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * makes a component handle events at ports of this type before events
+	 * waiting at its other ports
+	 * <p>
+	 * Can also be set in the config with {@value Kompics#PRIORITIZED_KEY}
+	 * and overridden for individual ports with
+	 * {@link JavaPort#setPrioritized(boolean)}.
+	 */
+	protected final void prioritized() {
+		this.prioritized = true;
+	}
+
+	/**
+	 * @return whether ports of this type are prioritized by default
+	 */
+	public final boolean isPrioritized() {
+		return prioritized;
 	}
 
 	/**
@@ -118,15 +193,7 @@ public abstract class PortType {
 	 * @return true, if successful
 	 */
 	public final boolean hasPositive(Class<? extends KompicsEvent> eventType) {
-		if (positive.contains(eventType)) {
-			return true;
-		}
-		for (Class<? extends KompicsEvent> eType : positive) {
-			if (eType.isAssignableFrom(eventType)) {
-				return true;
-			}
-		}
-		return false;
+		return (directions(eventType) & POSITIVE) != 0;
 	}
 
 	/**
@@ -138,10 +205,31 @@ public abstract class PortType {
 	 * @return true, if successful
 	 */
 	public final boolean hasNegative(Class<? extends KompicsEvent> eventType) {
-		if (negative.contains(eventType)) {
+		return (directions(eventType) & NEGATIVE) != 0;
+	}
+
+	private byte directions(Class<? extends KompicsEvent> eventType) {
+		Byte d = directions.get(eventType);
+		if (d == null) {
+			byte b = 0;
+			if (flows(positive, eventType)) {
+				b |= POSITIVE;
+			}
+			if (flows(negative, eventType)) {
+				b |= NEGATIVE;
+			}
+			d = b;
+			directions.putIfAbsent(eventType, d);
+		}
+		return d;
+	}
+
+	private static boolean flows(Set<Class<? extends KompicsEvent>> declared,
+			Class<? extends KompicsEvent> eventType) {
+		if (declared.contains(eventType)) {
 			return true;
 		}
-		for (Class<? extends KompicsEvent> eType : negative) {
+		for (Class<? extends KompicsEvent> eType : declared) {
 			if (eType.isAssignableFrom(eventType)) {
 				return true;
 			}
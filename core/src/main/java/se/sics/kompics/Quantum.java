@@ -0,0 +1,81 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * Adaptive number of events a component handles per activation.
+ * <p>
+ * Enabled with {@value Kompics#QUANTUM_KEY}. The quantum is sized so that an
+ * activation takes about the target time, given the average handler time
+ * measured so far: components with cheap handlers and deep queues handle
+ * many events per activation, components with expensive handlers few, so
+ * they don't keep their worker from other components. It grows at most
+ * twofold per activation, and only while the queue was deeper than the
+ * quantum, so a burst does not follow a long idle period.
+ * <p>
+ * Only accessed by the thread currently executing the component.
+ */
+final class Quantum {
+
+    // weight of the latest activation in the average cost
+    private static final double ALPHA = 0.25;
+
+    private final long target;
+    private final int max;
+    private double cost = -1.0;
+    private int events = 1;
+
+    /**
+     * @param target the target time per activation in nanoseconds
+     * @param max the largest quantum
+     */
+    Quantum(long target, int max) {
+        this.target = target;
+        this.max = max;
+    }
+
+    int events() {
+        return events;
+    }
+
+    /**
+     * Called at the end of every activation.
+     * <p>
+     * @param handled the number of events handled
+     * @param elapsed the time the activation took in nanoseconds
+     * @param backlog whether events were left for the next activation
+     */
+    void update(int handled, long elapsed, boolean backlog) {
+        if (handled <= 0) {
+            return;
+        }
+        double c = ((double) elapsed) / handled;
+        cost = (cost < 0.0) ? c : (ALPHA * c + (1.0 - ALPHA) * cost);
+        long fit = (cost < 1.0) ? max : (long) (target / cost);
+        if (fit > events) {
+            if (!backlog) {
+                return;
+            }
+            fit = Math.min(fit, 2L * events);
+        }
+        events = (int) Math.max(1, Math.min(fit, max));
+    }
+}
@@ -28,7 +28,8 @@ import java.util.ArrayDeque;
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
  * @version $Id$
- * @deprecated Use {@link Direct.Request} instead if possible.
+ * @deprecated Use {@link Direct.Request} instead if possible, or
+ * {@link RoutedRequest} if responses have to retrace the request path.
  */
 @Deprecated
 public abstract class Request implements KompicsEvent {
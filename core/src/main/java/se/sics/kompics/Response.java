@@ -29,7 +29,8 @@ import java.util.ArrayDeque;
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
  * @version $Id$
- * @deprecated Use {@link Direct.Response} instead if possible.
+ * @deprecated Use {@link Direct.Response} instead if possible, or
+ * {@link RoutedResponse} if responses have to retrace the request path.
  */
 @Deprecated
 public abstract class Response implements KompicsEvent {
@@ -0,0 +1,78 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Arrays;
+
+/**
+ * A request whose responses travel back along the path it took.
+ * <p>
+ * Each channel and component the request passes is recorded in a flat array
+ * that the {@link RoutedResponse} unwinds. Unlike {@link Request} no objects
+ * are allocated per hop and the path holds no weak references; it only lives
+ * as long as the request and its responses. A request or response that is
+ * kept for long, e.g. a periodic timer, thus keeps the components on its path
+ * reachable.
+ * <p>
+ * Request types opt in by extending this class. Existing ones, like the timer
+ * port's, stay on {@link Request}, since handlers for {@link Request} or
+ * {@link Response} would no longer match them otherwise.
+ */
+public abstract class RoutedRequest implements KompicsEvent {
+
+    private static final int INITIAL_DEPTH = 4;
+
+    // ChannelCore or ComponentCore hops, oldest first
+    Object[] route = new Object[INITIAL_DEPTH];
+    int depth = 0;
+
+    void push(ChannelCore<?> channel) {
+        append(channel);
+    }
+
+    void push(ComponentCore component) {
+        if ((depth > 0) && (route[depth - 1] == component)) {
+            return; // avoid path duplication
+        }
+        append(component);
+    }
+
+    private void append(Object hop) {
+        if (depth == route.length) {
+            route = Arrays.copyOf(route, depth * 2);
+        }
+        route[depth++] = hop;
+    }
+
+    /**
+     * @return the number of hops recorded so far
+     */
+    public int routeLength() {
+        return depth;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        RoutedRequest request = (RoutedRequest) super.clone();
+        request.route = route.clone();
+        return request;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * A response to a {@link RoutedRequest}, delivered back along the request's
+ * path.
+ * <p>
+ * The response shares the request's route and only keeps its own position in
+ * it, so creating or cloning a response does not copy the path. The route is
+ * read when the response is first delivered, so a response may be created
+ * before its request is triggered.
+ */
+public abstract class RoutedResponse implements KompicsEvent {
+
+    // until the first hop is taken; released afterwards
+    private RoutedRequest request;
+    private Object[] route;
+    private int top;
+
+    protected RoutedResponse(RoutedRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Removes the next hop from the path.
+     * <p>
+     * @return the channel or component to return to, or null once the
+     * response has arrived at the request's origin
+     */
+    Object pop() {
+        if (request != null) {
+            route = request.route;
+            top = request.depth;
+            request = null;
+        }
+        if (top == 0) {
+            return null;
+        }
+        Object hop = route[--top];
+        if (top == 0) {
+            route = null; // release the path
+        }
+        return hop;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        // the route is never written through a response, so sharing is safe
+        return super.clone();
+    }
+}
@@ -1,5 +1,8 @@
 package se.sics.kompics;
 
+import se.sics.kompics.metrics.MetricsRegistry;
+import se.sics.kompics.metrics.SchedulerMetrics;
+
 public abstract class Scheduler {
 
     public abstract void schedule(Component c, int w);
@@ -10,9 +13,84 @@ public abstract class Scheduler {
 
     public abstract void asyncShutdown();
 
+    /**
+     * Runs a short, non-blocking runtime task, such as a slice of a
+     * lifecycle fan-out, on the scheduler's workers.
+     * <p>
+     * Schedulers without a general purpose task queue run it on the calling
+     * thread.
+     * <p>
+     * @param task the task
+     */
+    public void runTask(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Whether the calling thread may wait for other components to make
+     * progress, as a producer does at a full port with
+     * {@link OverflowPolicy#BLOCK}.
+     * <p>
+     * A waiting worker runs no components, so this must be {@code false} on
+     * the scheduler's own workers unless it can add threads while one waits.
+     * Threads that don't run components may always wait. The default is
+     * {@code false}, which is always safe.
+     * <p>
+     * @return whether the calling thread may block
+     */
+    public boolean mayBlock() {
+        return false;
+    }
+
+    /**
+     * Returns the scheduler metrics of the running Kompics instance.
+     * <p>
+     * Component activations are counted by the components themselves, so
+     * implementations only need to report steals and sleeps.
+     * <p>
+     * @return the metrics, or {@code null} if metrics are disabled
+     */
+    protected static SchedulerMetrics metrics() {
+        MetricsRegistry registry = Kompics.metrics;
+        return (registry == null) ? null : registry.scheduler();
+    }
+
+    /**
+     * @param component the component
+     * @return whether the component has events waiting at prioritized ports,
+     * so schedulers can run it ahead of others
+     */
+    protected final boolean hasPrioritizedWork(Component component) {
+        return ((ComponentCore) component).hasPrioritizedWork();
+    }
+
     protected final void executeComponent(Component component, int w) {
         //Kompics.logger.error("Executing: {}", component.getComponent());
         ((ComponentCore) component).execute(w);
         //Kompics.logger.error("Finished executing: {}", component.getComponent());
     }
+
+    /**
+     * Returns the worker the component was last placed on via
+     * {@link #setHome(Component, int)}, or -1 if it was never placed.
+     * <p>
+     * @param component the component
+     * @return the home worker id or -1
+     */
+    protected final int homeOf(Component component) {
+        return ((ComponentCore) component).home;
+    }
+
+    /**
+     * Places the component on a worker.
+     * <p>
+     * Only the scheduler that is currently responsible for the component
+     * should move it, i.e. while the component is scheduled but not running.
+     * <p>
+     * @param component the component
+     * @param w the new home worker id
+     */
+    protected final void setHome(Component component, int w) {
+        ((ComponentCore) component).home = w;
+    }
 }
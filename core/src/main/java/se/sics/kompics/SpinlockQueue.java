@@ -21,10 +21,20 @@
 package se.sics.kompics;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
+import se.sics.kompics.config.Config;
 
 // TODO: Auto-generated Javadoc
 /**
  * The <code>SpinlockQueue</code> class.
+ * <p>
+ * By default this is an unbounded {@link ConcurrentLinkedQueue}. When created
+ * with a capacity it is instead backed by a bounded multi-producer/
+ * single-consumer ring buffer, which does not allocate on {@link #offer}. In
+ * that case only a single thread may consume at a time, which holds for port
+ * event queues and ready lists, since only the owning component ever polls
+ * them. A full ring spills into an unbounded overflow list until the
+ * consumer catches up, so {@link #offer} never blocks; bounding a port is
+ * left to its {@link OverflowPolicy}.
  * 
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -32,32 +42,179 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class SpinlockQueue<E> {
 
-	private final ConcurrentLinkedQueue<E> q = new ConcurrentLinkedQueue<E>();
-	
+	private final ConcurrentLinkedQueue<E> q;
+	private final MpscRingBuffer<E> ring;
+	private volatile ConcurrentLinkedQueue<E> spill;
+
+	public SpinlockQueue() {
+		this.q = new ConcurrentLinkedQueue<E>();
+		this.ring = null;
+	}
+
+	/**
+	 * Creates a single-consumer queue backed by a ring buffer.
+	 * 
+	 * @param capacity
+	 *            the ring capacity (rounded up to a power of two)
+	 */
+	public SpinlockQueue(int capacity) {
+		this.q = null;
+		this.ring = new MpscRingBuffer<E>(capacity);
+	}
+
 	public void offer(E e) {
-		q.offer(e);
+		if (ring == null) {
+			q.offer(e);
+			return;
+		}
+		ConcurrentLinkedQueue<E> s = spill;
+		if ((s != null) && !s.isEmpty()) {
+			s.offer(e); // stay behind earlier spilled elements
+			return;
+		}
+		if (!ring.offer(e)) {
+			spillOver().offer(e);
+		}
 	}
-	
+
 	public E poll() {
-		return q.poll();
+		if (ring == null) {
+			return q.poll();
+		}
+		E e = ring.poll();
+		if (e == null) {
+			ConcurrentLinkedQueue<E> s = spill;
+			if (s != null) {
+				return s.poll();
+			}
+		}
+		return e;
 	}
-	
+
 	public E peek() {
-		return q.peek();
+		if (ring == null) {
+			return q.peek();
+		}
+		E e = ring.peek();
+		if (e == null) {
+			ConcurrentLinkedQueue<E> s = spill;
+			if (s != null) {
+				return s.peek();
+			}
+		}
+		return e;
 	}
-	
+
 	public boolean isEmpty() {
-		return q.isEmpty();
+		if (ring == null) {
+			return q.isEmpty();
+		}
+		ConcurrentLinkedQueue<E> s = spill;
+		return ring.isEmpty() && ((s == null) || s.isEmpty());
 	}
-        
-        public void remove(E e) {
-            q.remove(e);
+
+        public boolean remove(E e) {
+            if (ring == null) {
+                return q.remove(e);
+            }
+            if (ring.remove(e)) {
+                return true;
+            }
+            ConcurrentLinkedQueue<E> s = spill;
+            return (s != null) && s.remove(e);
         }
-        
+
         public void clear() {
-            q.clear();
+            if (ring == null) {
+                q.clear();
+                return;
+            }
+            ring.clear();
+            ConcurrentLinkedQueue<E> s = spill;
+            if (s != null) {
+                s.clear();
+            }
         }
 
+	/**
+	 * Number of queued elements.
+	 * <p>
+	 * Constant time for ring backed queues, linear in the number of elements
+	 * otherwise.
+	 * 
+	 * @return the number of queued elements
+	 */
+	public int size() {
+		if (ring == null) {
+			return q.size();
+		}
+		ConcurrentLinkedQueue<E> s = spill;
+		return ring.size() + ((s == null) ? 0 : s.size());
+	}
+
+	private synchronized ConcurrentLinkedQueue<E> spillOver() {
+		if (spill == null) {
+			spill = new ConcurrentLinkedQueue<E>();
+		}
+		return spill;
+	}
+
+	/**
+	 * Describes which kind of queue to create for port event queues and
+	 * component ready lists.
+	 * <p>
+	 * Read from the config keys {@code kompics.port.queue} ({@code clq} or
+	 * {@code mpsc-ring}) and {@code kompics.port.queueCapacity}.
+	 */
+	public static final class Options {
+
+		public static final String QUEUE_KEY = "kompics.port.queue";
+		public static final String CAPACITY_KEY = "kompics.port.queueCapacity";
+		public static final int DEFAULT_CAPACITY = 256;
+
+		public static final Options UNBOUNDED = new Options(0);
+
+		private final int capacity;
+
+		private Options(int capacity) {
+			this.capacity = capacity;
+		}
+
+		public static Options ring(int capacity) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("Ring capacity must be positive, got " + capacity);
+			}
+			return new Options(capacity);
+		}
+
+		public static Options fromConfig(Config conf) {
+			String type = conf.getValueOrDefault(QUEUE_KEY, "clq");
+			if (type.equalsIgnoreCase("clq")) {
+				return UNBOUNDED;
+			} else if (type.equalsIgnoreCase("mpsc-ring")) {
+				int capacity = conf.getValueOrDefault(CAPACITY_KEY, DEFAULT_CAPACITY);
+				if (capacity < 1) {
+					throw new ConfigurationException("Invalid value for " + CAPACITY_KEY + ": " + capacity);
+				}
+				return ring(capacity);
+			} else {
+				throw new ConfigurationException("Invalid value for " + QUEUE_KEY + ": " + type
+						+ " (expected clq or mpsc-ring)");
+			}
+		}
+
+		public boolean isBounded() {
+			return capacity > 0;
+		}
+
+		public <E> SpinlockQueue<E> create() {
+			if (capacity > 0) {
+				return new SpinlockQueue<E>(capacity);
+			}
+			return new SpinlockQueue<E>();
+		}
+	}
+
 //	public static final int FL_SIZE = 1000;
 //
 //	private final Spinlock lock = new Spinlock();
@@ -30,9 +30,25 @@ import se.sics.kompics.config.ConfigUpdate;
 public class Update implements KompicsEvent {
     public final ConfigUpdate update;
     public final UUID forwarder;
+    /**
+     * Where further updates were merged into {@link #update}, if coalescing.
+     */
+    final PendingUpdate pending;
     
     public Update(ConfigUpdate update, UUID forwarder) {
+        this(update, forwarder, null);
+    }
+
+    Update(ConfigUpdate update, UUID forwarder, PendingUpdate pending) {
         this.update = update;
         this.forwarder = forwarder;
+        this.pending = pending;
+    }
+
+    /**
+     * @return the update to handle, including any merged into this one
+     */
+    ConfigUpdate take() {
+        return (pending == null) ? update : pending.take();
     }
 }
@@ -116,6 +116,35 @@ public interface Config {
      */
     public <T> List<T> getValues(String key, Class<T> type);
 
+    /**
+     * Return the value at {@code key} as {@code T} or {@code null} if none.
+     * <p>
+     * Performs checked casting against the type of {@code key}. The result
+     * is cached until the config is updated, so repeated reads are cheap.
+     * <p>
+     * @param <T> The requested type of the value
+     * @param key The location and type of the value
+     * @return The value as {@code T} if present or {@code null} otherwise
+     * @throws ClassCastException if the value can not be cast to {@code T}
+     */
+    public <T> T getValue(ConfigKey<T> key) throws ClassCastException;
+
+    /**
+     * Return the value at {@code key} as {@code T} or {@code defaultValue} if
+     * none.
+     * <p>
+     * Like {@link #getValue(ConfigKey)} the result is cached until the config
+     * is updated.
+     * <p>
+     * @param <T> The requested type of the value
+     * @param key The location and type of the value
+     * @param defaultValue Returned if there is not value of the right type at
+     * {@code key}
+     * @return The value as {@code T} if present or {@code defaultValue}
+     * otherwise
+     */
+    public <T> T getValueOrDefault(ConfigKey<T> key, T defaultValue);
+
     public Builder modify(UUID author);
 
     public Config copy(boolean newVersionLine);
@@ -124,7 +153,10 @@ public interface Config {
 
         private final AtomicLong versionFactory;
         private final BaselineConfig baseline;
-        private final HashMap<String, ConfigValue> values = new HashMap<>();
+        /**
+         * Replaced as a whole by {@link #apply(ConfigUpdate, Optional)}.
+         */
+        private volatile ConfigSnapshot snapshot;
         long version;
 
         private Impl(BaselineConfig baseline, long version) {
@@ -135,11 +167,51 @@ public interface Config {
             this.baseline = baseline;
             this.version = version;
             this.versionFactory = versionFactory;
+            this.snapshot = new ConfigSnapshot(new HashMap<String, ConfigValue>(), false);
+        }
+
+        /**
+         * Looks the value up in the snapshot's cache, and caches it if it
+         * wasn't there.
+         * <p>
+         * @return the value, {@link ConfigSnapshot#ABSENT} if there is none,
+         * or {@code null} if it can't be converted to {@code type}
+         */
+        private Object lookup(ConfigSnapshot s, ConfigKey<?> key) {
+            Object v = s.get(key.slot, key.type);
+            if (v != null) {
+                return v;
+            }
+            v = convert(s, key.name, key.type);
+            if (v != null) {
+                s.put(key.slot, key.type, v);
+            }
+            return v;
+        }
+
+        /**
+         * Like {@link #lookup(ConfigSnapshot, ConfigKey)}, but without the
+         * cache, which only holds {@link ConfigKey} slots.
+         */
+        private Object convert(ConfigSnapshot s, String key, Class<?> type) {
+            ConfigValue cv = s.value(key);
+            if (cv == null) {
+                cv = baseline.getValue(key);
+            }
+            if (cv == null) {
+                return ConfigSnapshot.ABSENT;
+            }
+            return Conversions.convert(cv.unwrap(), type);
+        }
+
+        private ClassCastException notConvertible(String key, Class<?> type) {
+            Object o = readValue(key).get();
+            return new ClassCastException("Can't cast or convert " + o + " (" + o.getClass() + ") to " + type);
         }
 
         @Override
         public <T> Optional<T> readValue(String key) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = snapshot.value(key);
             if (cv != null) {
                 T v = (T) cv.unwrap();
                 return Optional.of(v);
@@ -154,7 +226,7 @@ public interface Config {
 
         @Override
         public <T> Optional<T> readValue(String key, Class<T> type) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = snapshot.value(key);
             try {
                 if (cv != null) {
                     T v = Conversions.convert(cv.unwrap(), type);
@@ -181,44 +253,45 @@ public interface Config {
 
         @Override
         public <T> T getValue(String key, Class<T> type) throws ClassCastException {
-            ConfigValue cv = values.get(key);
-            if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
-                if (v != null) {
-                    return v;
-                } else {
-                    throw new ClassCastException("Can't cast or convert " + cv.unwrap() + " ("+cv.unwrap().getClass()+") to " + type);
-                }
+            Object v = convert(snapshot, key, type);
+            if (v == ConfigSnapshot.ABSENT) {
+                return null;
             }
-            cv = baseline.getValue(key);
-            if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
-                if (v != null) {
-                    return v;
-                } else {
-                    throw new ClassCastException("Can't cast or convert " + cv.unwrap() + " ("+cv.unwrap().getClass()+") to " + type);
-                }
+            if (v == null) {
+                throw notConvertible(key, type);
             }
-            return null;
+            return (T) v;
         }
 
         @Override
         public <T extends Object> T getValueOrDefault(String key, T defaultValue) {
             Class<T> type = (Class<T>) defaultValue.getClass();
-            ConfigValue cv = values.get(key);
-            if (cv == null) {
-                cv = baseline.getValue(key);
+            Object v = convert(snapshot, key, type);
+            if ((v == ConfigSnapshot.ABSENT) || (v == null)) {
+                return defaultValue;
             }
-            if (cv != null) {
-                T v = Conversions.convert(cv.unwrap(), type);
-                if (v != null) {
-                    return v;
-                } else {
-                    return defaultValue;
-                }
-            } else {
+            return (T) v;
+        }
+
+        @Override
+        public <T> T getValue(ConfigKey<T> key) throws ClassCastException {
+            Object v = lookup(snapshot, key);
+            if (v == ConfigSnapshot.ABSENT) {
+                return null;
+            }
+            if (v == null) {
+                throw notConvertible(key.name, key.type);
+            }
+            return (T) v;
+        }
+
+        @Override
+        public <T> T getValueOrDefault(ConfigKey<T> key, T defaultValue) {
+            Object v = lookup(snapshot, key);
+            if ((v == ConfigSnapshot.ABSENT) || (v == null)) {
                 return defaultValue;
             }
+            return (T) v;
         }
 
         @Override
@@ -228,7 +301,7 @@ public interface Config {
 
         @Override
         public <T> List<T> getValues(String key) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = snapshot.value(key);
             if (cv != null) {
                 Object o = cv.unwrap();
                 if (o instanceof Collection) {
@@ -262,7 +335,7 @@ public interface Config {
 
         @Override
         public <T> List<T> getValues(String key, Class<T> type) {
-            ConfigValue cv = values.get(key);
+            ConfigValue cv = snapshot.value(key);
             if (cv != null) {
                 Object o = cv.unwrap();
                 if (o instanceof Collection) {
@@ -310,31 +383,32 @@ public interface Config {
             } else {
                 copy = new Impl(baseline, version, versionFactory);
             }
-            for (Entry<String, ConfigValue> e : values.entrySet()) {
-                if (e.getValue() instanceof Builder.CV) {
+            ConfigSnapshot current = snapshot;
+            if (!current.deep) {
+                // nothing to clone, so the copy can share all values
+                copy.snapshot = current;
+                return copy;
+            }
+            HashMap<String, ConfigValue> clones = new HashMap<>();
+            for (Entry<String, ConfigValue> e : current.flatten().entrySet()) {
+                if (isDeep(e.getValue())) {
                     Builder.CV cv = (Builder.CV) e.getValue();
-                    switch (cv.options.copy) {
-                        case SHALLOW:
-                            copy.values.put(e.getKey(), cv);
-                            break;
-                        case DEEP: {
-                            Object ocopy = cv.options.cloner.clone(cv.unwrap());
-                            Builder.CV newCV = new Builder.CV(ocopy, cv.version, cv.options);
-                            copy.values.put(e.getKey(), newCV);
-                        }
-                        break;
-                    }
-                } else {
-                    copy.values.put(e.getKey(), e.getValue()); // always shallow if not Builder.CV
+                    Object ocopy = cv.options.cloner.clone(cv.unwrap());
+                    Builder.CV newCV = new Builder.CV(ocopy, cv.version, cv.options);
+                    clones.put(e.getKey(), newCV);
                 }
             }
+            // the clones shadow the originals, everything else is shared
+            copy.snapshot = current.with(clones, true);
             return copy;
         }
 
         public void apply(ConfigUpdate update, Optional<ValueMerger> customMergeLogic) {
-            this.version = update.versionId;
+            ConfigSnapshot current = snapshot;
+            HashMap<String, ConfigValue> values = new HashMap<>();
+            boolean deep = false;
             for (Entry<String, ConfigValue> e : update.updates.entrySet()) {
-                ConfigValue oldCV = values.get(e.getKey());
+                ConfigValue oldCV = current.value(e.getKey());
                 if (oldCV == null) {
                     oldCV = baseline.getValue(e.getKey());
                 }
@@ -350,6 +424,16 @@ public interface Config {
                     }
                 }
             }
+            for (ConfigValue cv : values.values()) {
+                deep |= isDeep(cv);
+            }
+            this.version = update.versionId;
+            this.snapshot = current.with(values, deep);
+        }
+
+        private static boolean isDeep(ConfigValue cv) {
+            // always shallow if not Builder.CV
+            return (cv instanceof Builder.CV) && (((Builder.CV) cv).options.copy == ValueOptions.Copy.DEEP);
         }
 
     }
@@ -436,6 +520,23 @@ public interface Config {
             }
         }
 
+        @Override
+        public <T> T getValue(ConfigKey<T> key) throws ClassCastException {
+            if (updates.containsKey(key.name)) {
+                return getValue(key.name, key.type);
+            }
+            return conf.getValue(key);
+        }
+
+        @Override
+        public <T> T getValueOrDefault(ConfigKey<T> key, T defaultValue) {
+            if (updates.containsKey(key.name)) {
+                T v = readValue(key.name, key.type).orNull();
+                return (v != null) ? v : defaultValue;
+            }
+            return conf.getValueOrDefault(key, defaultValue);
+        }
+
         @Override
         public Builder modify(UUID author) {
             return this;
@@ -0,0 +1,92 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ * <p>
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS)
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A config key interned to an integer slot, with the type of its value.
+ * <p>
+ * Create keys once, e.g. as constants, and read them with
+ * {@link Config#getValue(ConfigKey)} or
+ * {@link Config#getValueOrDefault(ConfigKey, Object)}. After the first read
+ * of a key from a config, later reads of the same key cost an array load,
+ * until the config is updated. Reads by plain string are not cached.
+ * <p>
+ * Every distinct key name is interned for the lifetime of the JVM, so keys
+ * should not be created for dynamic names such as {@code "peer." + id}.
+ * <p>
+ * @param <T> the type of the value
+ */
+public final class ConfigKey<T> {
+
+    private static final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextSlot = new AtomicInteger(0);
+
+    public final String name;
+    public final Class<T> type;
+    final int slot;
+
+    private ConfigKey(String name, Class<T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * @param <T> the type of the value
+     * @param name the location of the value, e.g. {@code "kompics.foo.bar"}
+     * @param type the type to convert the value to
+     * @return a key for the value
+     */
+    public static <T> ConfigKey<T> of(String name, Class<T> type) {
+        return new ConfigKey<T>(name, type, slotOf(name));
+    }
+
+    /**
+     * @param name a key
+     * @return the slot of the key, the same for every key with this name
+     */
+    private static int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            Integer newSlot = nextSlot.getAndIncrement();
+            slot = slots.putIfAbsent(name, newSlot);
+            if (slot == null) {
+                slot = newSlot;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * @return the number of slots handed out so far
+     */
+    static int slots() {
+        return nextSlot.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey(" + name + ": " + type.getName() + ")";
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ * <p>
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS)
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable version of the values of a {@link Config.Impl}, with a cache
+ * of their converted values indexed by {@link ConfigKey} slot.
+ * <p>
+ * Updates never change a snapshot, but replace it, so a reader sees either
+ * all or none of an update, and never a stale cache entry.
+ * <p>
+ * Snapshots are layered: an update only holds the values it changed, on
+ * top of the snapshot it was applied to, and copies of a config share its
+ * snapshot, cache included. So a component shares its parent's values
+ * until one of them is updated. Lookups walk the layers, which are
+ * flattened once there are more than {@link #MAX_DEPTH}.
+ */
+final class ConfigSnapshot {
+
+    /**
+     * Cached for keys that have no value.
+     */
+    static final Object ABSENT = new Object();
+
+    static final int MAX_DEPTH = 8;
+
+    private final HashMap<String, ConfigValue> values;
+    private final ConfigSnapshot under;
+    private final int depth;
+    /**
+     * Whether any layer holds values that must be deep copied.
+     */
+    final boolean deep;
+    // allocated by the first read through a ConfigKey
+    private volatile AtomicReferenceArray<Cached> cache;
+
+    ConfigSnapshot(HashMap<String, ConfigValue> values, boolean deep) {
+        this(values, null, deep);
+    }
+
+    private ConfigSnapshot(HashMap<String, ConfigValue> values, ConfigSnapshot under, boolean deep) {
+        this.values = values;
+        this.under = under;
+        this.depth = (under == null) ? 1 : under.depth + 1;
+        this.deep = deep || ((under != null) && under.deep);
+    }
+
+    /**
+     * @param changes the changed values, which the new snapshot owns
+     * @param deep whether any of the changes must be deep copied
+     * @return a new snapshot with the changes on top of this one
+     */
+    ConfigSnapshot with(HashMap<String, ConfigValue> changes, boolean deep) {
+        if (depth < MAX_DEPTH) {
+            return new ConfigSnapshot(changes, this, deep);
+        }
+        HashMap<String, ConfigValue> flat = flatten();
+        flat.putAll(changes);
+        return new ConfigSnapshot(flat, null, this.deep || deep);
+    }
+
+    /**
+     * @param key the key
+     * @return the value at {@code key} in the topmost layer that has one, or
+     * {@code null}
+     */
+    ConfigValue value(String key) {
+        for (ConfigSnapshot s = this; s != null; s = s.under) {
+            ConfigValue cv = s.values.get(key);
+            if (cv != null) {
+                return cv;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a new map of all values visible in this snapshot
+     */
+    HashMap<String, ConfigValue> flatten() {
+        HashMap<String, ConfigValue> flat = (under == null) ? new HashMap<String, ConfigValue>() : under.flatten();
+        for (Map.Entry<String, ConfigValue> e : values.entrySet()) {
+            flat.put(e.getKey(), e.getValue());
+        }
+        return flat;
+    }
+
+    /**
+     * @param slot the key's slot
+     * @param type the requested type
+     * @return the cached value, {@link #ABSENT}, or {@code null} if nothing
+     * is cached for this type
+     */
+    Object get(int slot, Class<?> type) {
+        AtomicReferenceArray<Cached> c = cache;
+        if ((c == null) || (slot >= c.length())) {
+            return null;
+        }
+        Cached entry = c.get(slot);
+        if ((entry == null) || (entry.type != type)) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches the value, replacing any value cached for another type.
+     * <p>
+     * @param slot the key's slot
+     * @param type the requested type
+     * @param value the converted value or {@link #ABSENT}
+     */
+    void put(int slot, Class<?> type, Object value) {
+        AtomicReferenceArray<Cached> c = cache;
+        if (c == null) {
+            // entries cached concurrently meanwhile may be lost
+            c = new AtomicReferenceArray<Cached>(Math.max(Math.max(16, slot + 1), ConfigKey.slots()));
+            cache = c;
+        } else if (slot >= c.length()) {
+            // new keys were interned since, entries cached concurrently meanwhile may be lost
+            AtomicReferenceArray<Cached> nc = new AtomicReferenceArray<Cached>(Math.max(slot + 1, c.length() << 1));
+            for (int i = 0; i < c.length(); i++) {
+                nc.lazySet(i, c.get(i));
+            }
+            c = nc;
+            cache = nc;
+        }
+        c.set(slot, new Cached(type, value));
+    }
+
+    private static final class Cached {
+
+        final Class<?> type;
+        final Object value;
+
+        Cached(Class<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -20,6 +20,7 @@
  */
 package se.sics.kompics.config;
 
+import com.google.common.base.Optional;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -46,6 +47,51 @@ public class ConfigUpdate implements Iterable<Entry<String, ConfigValue>> {
         return updates.entrySet().iterator();
     }
 
+    /**
+     * Merges a later update into this one, so that applying the result has
+     * the same effect as applying this one and then {@code later}.
+     * <p>
+     * That only holds if every key in both is merged by
+     * {@link ValueMerger#NEWEST} or {@link ValueMerger#HIGHEST_ID} in
+     * {@code later}, so other updates are not merged. Custom merge logic
+     * passed to {@link Config.Impl#apply(ConfigUpdate, Optional)} only sees
+     * the last value for each key.
+     * <p>
+     * @param later an update created after this one
+     * @return the merged update, or absent if the updates can't be merged
+     */
+    public Optional<ConfigUpdate> coalesce(ConfigUpdate later) {
+        HashMap<String, ConfigValue> merged = new HashMap<>(updates);
+        for (Entry<String, ConfigValue> e : later.updates.entrySet()) {
+            ConfigValue earlier = merged.get(e.getKey());
+            if (earlier == null) {
+                merged.put(e.getKey(), e.getValue());
+            } else {
+                ValueMerger vm = e.getValue().options().merger;
+                if ((vm != ValueMerger.NEWEST) && (vm != ValueMerger.HIGHEST_ID)) {
+                    return Optional.absent();
+                }
+                merged.put(e.getKey(), vm.merge(e.getKey(), earlier, e.getValue(), Config.Builder.CVFactory.INSTANCE));
+            }
+        }
+        return Optional.of(new ConfigUpdate(merged, later.versionId, later.creator));
+    }
+
+    /**
+     * @param prefixes key prefixes, e.g. {@code "kompics.network"}
+     * @return whether any key in this update starts with one of the prefixes
+     */
+    public boolean touches(Iterable<String> prefixes) {
+        for (String key : updates.keySet()) {
+            for (String prefix : prefixes) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public ConfigUpdateFactory modify(UUID creator) {
         return new Factory(creator);
     }
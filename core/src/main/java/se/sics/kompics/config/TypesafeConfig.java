@@ -60,7 +60,12 @@ public class TypesafeConfig implements BaselineConfig {
 
     @Override
     public List<? extends ConfigValue> getValues(String path) {
-        ConfigList cl = config.getList(path);
+        ConfigList cl;
+        try {
+            cl = config.getList(path);
+        } catch (ConfigException.Missing ex) {
+            return null;
+        }
         if (cl != null) {
             List<ConfigValue> l = new LinkedList<>();
             for (com.typesafe.config.ConfigValue cv : cl) {
@@ -0,0 +1,256 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import se.sics.kompics.KompicsEvent;
+
+/**
+ * Metrics of a single component.
+ * <p>
+ * Handler times and queueing delays are sampled, so only about one in
+ * {@code sampleInterval} events pays for reading the clock. The update
+ * methods are called by the runtime; all but {@link #received(KompicsEvent)}
+ * from the thread currently executing the component.
+ */
+public final class ComponentMetrics implements ComponentMetricsMXBean {
+
+    /**
+     * Supplies the number of queued events per port of a component.
+     */
+    public static interface QueueDepths {
+
+        public Map<String, Integer> queueDepths();
+    }
+
+    private final UUID id;
+    private final String name;
+    private final QueueDepths depths;
+    private final SchedulerMetrics scheduler;
+    private final int sampleMask;
+    private final Histogram handlerTime = new Histogram();
+    private final Histogram queueDelay = new Histogram();
+    private final Histogram scheduleDelay = new Histogram();
+    private volatile Sample sample = null;
+    // written by the executing thread, published once per activation
+    private long handled = 0;
+    private volatile long handledPublished = 0;
+    private volatile long activations = 0;
+    private volatile long scheduledAt = 0;
+    private volatile long maxScheduleDelay = 0;
+    private volatile int quantum = 0;
+
+    ComponentMetrics(UUID id, String name, QueueDepths depths, SchedulerMetrics scheduler, int sampleInterval) {
+        this.id = id;
+        this.name = name;
+        this.depths = depths;
+        this.scheduler = scheduler;
+        this.sampleMask = sampleInterval - 1;
+    }
+
+    /**
+     * Called when an event is queued at the component.
+     * <p>
+     * @param event the event
+     */
+    public void received(KompicsEvent event) {
+        if ((ThreadLocalRandom.current().nextInt() & sampleMask) == 0) {
+            sample = new Sample(event, System.nanoTime());
+        }
+    }
+
+    /**
+     * Called before the handlers for an event are run.
+     * <p>
+     * @param event the event
+     * @return the start time to pass to {@link #afterHandle(long)}, or -1 if
+     * this event is not timed
+     */
+    public long beforeHandle(KompicsEvent event) {
+        long now = -1;
+        Sample s = sample;
+        if ((s != null) && (s.event == event)) {
+            now = System.nanoTime();
+            queueDelay.record(now - s.enqueued);
+            sample = null;
+        }
+        handled++;
+        if ((handled & sampleMask) == 0) {
+            return (now < 0) ? System.nanoTime() : now;
+        }
+        return now;
+    }
+
+    public void afterHandle(long start) {
+        if (start >= 0) {
+            handlerTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Called when the component is handed to the scheduler.
+     */
+    public void scheduled() {
+        scheduledAt = System.nanoTime();
+    }
+
+    /**
+     * Called at the start of every execution of the component.
+     */
+    public void activationStarted() {
+        long at = scheduledAt;
+        if (at != 0) {
+            scheduledAt = 0;
+            long delay = System.nanoTime() - at;
+            scheduleDelay.record(delay);
+            if (delay > maxScheduleDelay) {
+                maxScheduleDelay = delay;
+            }
+        }
+    }
+
+    /**
+     * Called at the end of every execution of the component.
+     */
+    public void activationDone() {
+        handledPublished = handled;
+        activations++;
+        scheduler.executed();
+    }
+
+    public Histogram handlerTime() {
+        return handlerTime;
+    }
+
+    public Histogram queueDelay() {
+        return queueDelay;
+    }
+
+    public Histogram scheduleDelay() {
+        return scheduleDelay;
+    }
+
+    /**
+     * Called when an adaptive quantum changed.
+     * <p>
+     * @param events the number of events per activation from now on
+     */
+    public void quantum(int events) {
+        quantum = events;
+    }
+
+    public UUID id() {
+        return id;
+    }
+
+    @Override
+    public String getId() {
+        return id.toString();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getEventsHandled() {
+        return handledPublished;
+    }
+
+    @Override
+    public long getActivations() {
+        return activations;
+    }
+
+    @Override
+    public double getHandlerTimeMean() {
+        return handlerTime.mean();
+    }
+
+    @Override
+    public long getHandlerTimeP99() {
+        return handlerTime.quantile(0.99);
+    }
+
+    @Override
+    public long[] getHandlerTimeBuckets() {
+        return handlerTime.buckets();
+    }
+
+    @Override
+    public double getQueueDelayMean() {
+        return queueDelay.mean();
+    }
+
+    @Override
+    public long getQueueDelayP99() {
+        return queueDelay.quantile(0.99);
+    }
+
+    @Override
+    public long[] getQueueDelayBuckets() {
+        return queueDelay.buckets();
+    }
+
+    @Override
+    public double getScheduleDelayMean() {
+        return scheduleDelay.mean();
+    }
+
+    @Override
+    public long getScheduleDelayP99() {
+        return scheduleDelay.quantile(0.99);
+    }
+
+    @Override
+    public long getScheduleDelayMax() {
+        return maxScheduleDelay;
+    }
+
+    @Override
+    public int getQuantum() {
+        return quantum;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return depths.queueDepths();
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentMetrics(" + name + "@" + id + ", handled=" + handledPublished + ")";
+    }
+
+    private static final class Sample {
+
+        final KompicsEvent event;
+        final long enqueued;
+
+        Sample(KompicsEvent event, long enqueued) {
+            this.event = event;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.Map;
+
+/**
+ * Management view of a single component's metrics.
+ * <p>
+ * All times are in nanoseconds. The schedule delay is the time between a
+ * component being handed to the scheduler and it starting to run, i.e. how
+ * long it starves while it has work.
+ */
+public interface ComponentMetricsMXBean {
+
+    public String getId();
+
+    public String getName();
+
+    public long getEventsHandled();
+
+    public long getActivations();
+
+    public double getHandlerTimeMean();
+
+    public long getHandlerTimeP99();
+
+    public long[] getHandlerTimeBuckets();
+
+    public double getQueueDelayMean();
+
+    public long getQueueDelayP99();
+
+    public long[] getQueueDelayBuckets();
+
+    public double getScheduleDelayMean();
+
+    public long getScheduleDelayP99();
+
+    public long getScheduleDelayMax();
+
+    /**
+     * @return the current adaptive number of events per activation, or 0 if
+     * the quantum is not adaptive
+     */
+    public int getQuantum();
+
+    public Map<String, Integer> getQueueDepths();
+}
@@ -0,0 +1,101 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram with power of two buckets.
+ * <p>
+ * Bucket {@code i} counts values in {@code [2^(i-1), 2^i)}, bucket 0 counts
+ * values below 1. Recording is only safe from one thread at a time (e.g.
+ * the thread currently executing a component), reading from any thread.
+ */
+public final class Histogram {
+
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private volatile long count = 0;
+    private volatile long sum = 0;
+
+    public void record(long value) {
+        int bucket = (value <= 0) ? 0 : (BUCKETS - Long.numberOfLeadingZeros(value));
+        if (bucket >= BUCKETS) {
+            bucket = BUCKETS - 1;
+        }
+        // single writer, so plain increments are enough
+        buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        sum += value;
+        count++;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public double mean() {
+        long c = count;
+        return (c == 0) ? 0.0 : ((double) sum) / c;
+    }
+
+    /**
+     * @return a copy of the bucket counts
+     */
+    public long[] buckets() {
+        long[] res = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            res[i] = buckets.get(i);
+        }
+        return res;
+    }
+
+    /**
+     * Upper bound of the bucket containing the given quantile.
+     * <p>
+     * @param quantile between 0.0 and 1.0
+     * @return an upper bound for the value at the quantile, or 0 if nothing
+     * was recorded
+     */
+    public long quantile(double quantile) {
+        long[] bs = buckets();
+        long total = 0;
+        for (long b : bs) {
+            total += b;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += bs[i];
+            if (seen >= rank) {
+                return (i == 0) ? 0 : ((i >= 63) ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
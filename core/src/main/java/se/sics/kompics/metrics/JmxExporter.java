@@ -0,0 +1,108 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import se.sics.kompics.Kompics;
+
+/**
+ * Registers the scheduler and every component as MXBeans under the
+ * {@value #DOMAIN} domain of the platform MBean server.
+ */
+public class JmxExporter implements MetricsExporter, MetricsRegistry.Listener {
+
+    public static final String DOMAIN = "se.sics.kompics";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private MetricsRegistry registry;
+
+    @Override
+    public synchronized void start(MetricsRegistry registry) {
+        this.registry = registry;
+        register(registry.scheduler(), schedulerName());
+        registry.addListener(this);
+        for (ComponentMetrics m : registry.components()) {
+            componentAdded(m);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (registry == null) {
+            return;
+        }
+        registry.removeListener(this);
+        for (ComponentMetrics m : registry.components()) {
+            componentRemoved(m);
+        }
+        unregister(schedulerName());
+        registry = null;
+    }
+
+    @Override
+    public void componentAdded(ComponentMetrics metrics) {
+        register(metrics, componentName(metrics));
+    }
+
+    @Override
+    public void componentRemoved(ComponentMetrics metrics) {
+        unregister(componentName(metrics));
+    }
+
+    private void register(Object bean, ObjectName name) {
+        try {
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (JMException ex) {
+            Kompics.logger.warn("Could not register " + name, ex);
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            Kompics.logger.warn("Could not unregister " + name, ex);
+        }
+    }
+
+    private static ObjectName schedulerName() {
+        return name("type=Scheduler");
+    }
+
+    private static ObjectName componentName(ComponentMetrics m) {
+        return name("type=Component,name=" + ObjectName.quote(m.getName()) + ",id=" + m.getId());
+    }
+
+    private static ObjectName name(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+/**
+ * Publishes the metrics of a running Kompics instance somewhere.
+ * <p>
+ * Exporters are listed by name ({@code jmx}) or class name under
+ * {@value MetricsRegistry#EXPORTERS_KEY} and need a public no-argument
+ * constructor. They are started after the registry is created and stopped
+ * when Kompics shuts down.
+ */
+public interface MetricsExporter {
+
+    public void start(MetricsRegistry registry);
+
+    public void stop();
+}
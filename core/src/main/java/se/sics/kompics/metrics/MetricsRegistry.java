@@ -0,0 +1,167 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.config.Config;
+
+/**
+ * All metrics of a running Kompics instance.
+ * <p>
+ * This is the pull API: get the registry via {@link Kompics#getMetrics()}
+ * and read {@link #components()} and {@link #scheduler()} whenever needed.
+ * Exporters can additionally {@link #addListener(Listener) listen} for
+ * components coming and going.
+ */
+public final class MetricsRegistry {
+
+    public static final String ENABLED_KEY = "kompics.metrics.enabled";
+    public static final String SAMPLE_INTERVAL_KEY = "kompics.metrics.sampleInterval";
+    public static final String EXPORTERS_KEY = "kompics.metrics.exporters";
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    public static interface Listener {
+
+        public void componentAdded(ComponentMetrics metrics);
+
+        public void componentRemoved(ComponentMetrics metrics);
+    }
+
+    private final int sampleInterval;
+    private final SchedulerMetrics scheduler = new SchedulerMetrics();
+    private final ConcurrentHashMap<UUID, ComponentMetrics> components = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<MetricsExporter> exporters;
+
+    public MetricsRegistry(int sampleInterval, List<MetricsExporter> exporters) {
+        if ((sampleInterval < 1) || (Integer.bitCount(sampleInterval) != 1)) {
+            throw new IllegalArgumentException("Sample interval must be a power of two, got " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+        this.exporters = new ArrayList<>(exporters);
+    }
+
+    /**
+     * @param conf the config
+     * @return a registry with the configured exporters, or {@code null} if
+     * metrics are disabled
+     */
+    public static MetricsRegistry fromConfig(Config conf) {
+        boolean enabled = conf.getValueOrDefault(ENABLED_KEY, false);
+        if (!enabled) {
+            return null;
+        }
+        int interval = conf.getValueOrDefault(SAMPLE_INTERVAL_KEY, DEFAULT_SAMPLE_INTERVAL);
+        if ((interval < 1) || (Integer.bitCount(interval) != 1)) {
+            throw new ConfigurationException("Invalid value for " + SAMPLE_INTERVAL_KEY + ": " + interval
+                    + " (expected a power of two)");
+        }
+        List<MetricsExporter> exporters = new ArrayList<>();
+        // the exporters are optional, the registry can also be read directly
+        if (conf.readValue(EXPORTERS_KEY).isPresent()) {
+            for (String name : conf.getValues(EXPORTERS_KEY, String.class)) {
+                exporters.add(createExporter(name));
+            }
+        }
+        return new MetricsRegistry(interval, exporters);
+    }
+
+    private static MetricsExporter createExporter(String name) {
+        if (name.equalsIgnoreCase("jmx")) {
+            return new JmxExporter();
+        }
+        try {
+            Class<?> c = Class.forName(name);
+            return (MetricsExporter) c.newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException ex) {
+            throw new ConfigurationException("Invalid metrics exporter in " + EXPORTERS_KEY + ": " + name, ex);
+        }
+    }
+
+    public void start() {
+        for (MetricsExporter e : exporters) {
+            e.start(this);
+        }
+    }
+
+    public void stop() {
+        for (MetricsExporter e : exporters) {
+            try {
+                e.stop();
+            } catch (RuntimeException ex) {
+                Kompics.logger.warn("Could not stop metrics exporter " + e, ex);
+            }
+        }
+    }
+
+    /**
+     * Creates and registers the metrics for a new component.
+     * <p>
+     * @param id the component's id
+     * @param name a human readable name, usually the definition's class
+     * @param depths supplies the component's port queue depths
+     * @return the new metrics
+     */
+    public ComponentMetrics register(UUID id, String name, ComponentMetrics.QueueDepths depths) {
+        ComponentMetrics m = new ComponentMetrics(id, name, depths, scheduler, sampleInterval);
+        components.put(id, m);
+        for (Listener l : listeners) {
+            l.componentAdded(m);
+        }
+        return m;
+    }
+
+    public void unregister(ComponentMetrics m) {
+        if (components.remove(m.id(), m)) {
+            for (Listener l : listeners) {
+                l.componentRemoved(m);
+            }
+        }
+    }
+
+    public Collection<ComponentMetrics> components() {
+        return Collections.unmodifiableCollection(components.values());
+    }
+
+    public ComponentMetrics component(UUID id) {
+        return components.get(id);
+    }
+
+    public SchedulerMetrics scheduler() {
+        return scheduler;
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by all workers of the scheduler.
+ * <p>
+ * Executions are counted by every scheduler. Steals and sleeps are only
+ * reported by schedulers that manage their own worker threads.
+ */
+public final class SchedulerMetrics implements SchedulerMetricsMXBean {
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder steals = new LongAdder();
+    private final LongAdder sleeps = new LongAdder();
+
+    public void executed() {
+        executions.increment();
+    }
+
+    public void stole() {
+        steals.increment();
+    }
+
+    public void slept() {
+        sleeps.increment();
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getSteals() {
+        return steals.sum();
+    }
+
+    @Override
+    public long getSleeps() {
+        return sleeps.sum();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS)
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Fault;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.metrics.SchedulerMetrics;
+
+/**
+ * A scheduler that keeps every component on a single home worker.
+ * <p>
+ * Components are placed round-robin the first time they are scheduled and
+ * from then on {@link #schedule(Component, int)} always queues them on the
+ * same worker, so a component's state stays in that worker's caches.
+ * <p>
+ * A component is only moved when its worker's queue has stayed deeper than
+ * the migration threshold for {@code patience} consecutive executions. In
+ * that case an idle worker takes components from the overloaded worker and
+ * becomes their new home.
+ * <p>
+ * Components that have events waiting at prioritized ports when they are
+ * scheduled run ahead of the other components on their worker.
+ */
+public final class AffinityScheduler extends Scheduler {
+
+    public static final int DEFAULT_MIGRATION_THRESHOLD = 32;
+    public static final int DEFAULT_PATIENCE = 64;
+    private static final int SPINS_BEFORE_PARK = 64;
+
+    private final AffinityWorker[] workers;
+    private final int migrationThreshold;
+    private final int patience;
+    private final AtomicInteger nextHome = new AtomicInteger(0);
+    private volatile boolean running = true;
+    private boolean started = false;
+
+    public AffinityScheduler(int workers) {
+        this(workers, DEFAULT_MIGRATION_THRESHOLD, DEFAULT_PATIENCE);
+    }
+
+    /**
+     * Creates a new affinity scheduler.
+     * <p>
+     * @param workers number of worker threads
+     * @param migrationThreshold queue depth at which a worker is considered
+     * overloaded
+     * @param patience number of consecutive executions a worker must be
+     * overloaded before components are moved away from it
+     */
+    public AffinityScheduler(int workers, int migrationThreshold, int patience) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one worker, got " + workers);
+        }
+        this.migrationThreshold = migrationThreshold;
+        this.patience = patience;
+        this.workers = new AffinityWorker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new AffinityWorker(i);
+        }
+    }
+
+    @Override
+    public void schedule(Component c, int w) {
+        int home = homeOf(c);
+        if (home < 0) {
+            home = (nextHome.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+            setHome(c, home);
+        }
+        workers[home].addWork((ComponentCore) c);
+    }
+
+    @Override
+    public synchronized void proceed() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (AffinityWorker worker : workers) {
+            worker.start();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        asyncShutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Kompics.SHUTDOWN_TIMEOUT);
+        try {
+            for (AffinityWorker worker : workers) {
+                if (worker == Thread.currentThread()) {
+                    continue;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+                if (worker.isAlive()) {
+                    Kompics.logger.warn("Failed orderly Kompics shutdown");
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        running = false;
+        for (AffinityWorker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public boolean mayBlock() {
+        return !(Thread.currentThread() instanceof AffinityWorker);
+    }
+
+    public void logStats() {
+        long ex = 0, mi = 0, sl = 0;
+        for (AffinityWorker worker : workers) {
+            ex += worker.executionCount;
+            mi += worker.migrationCount;
+            sl += worker.sleepCount;
+            Kompics.logger.info("Worker {}: executed {}, migrated {}, slept {}",
+                    new Object[]{worker.wid, worker.executionCount, worker.migrationCount, worker.sleepCount});
+        }
+        Kompics.logger.info("TOTAL: executed {}, migrated {}, slept {}", new Object[]{ex, mi, sl});
+    }
+
+    private ComponentCore migrateTo(AffinityWorker thief) {
+        for (int i = 1; i < workers.length; i++) {
+            AffinityWorker victim = workers[(thief.wid + i) % workers.length];
+            if (victim.pressure >= patience) {
+                ComponentCore core = victim.takeWork();
+                if (core != null) {
+                    setHome(core, thief.wid);
+                    thief.migrationCount++;
+                    SchedulerMetrics metrics = metrics();
+                    if (metrics != null) {
+                        metrics.stole();
+                    }
+                    return core;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void wakeIdleWorker(AffinityWorker overloaded) {
+        for (AffinityWorker worker : workers) {
+            if ((worker != overloaded) && worker.sleeping) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    private final class AffinityWorker extends Thread {
+
+        private final int wid;
+        private final ConcurrentLinkedQueue<ComponentCore> workQueue = new ConcurrentLinkedQueue<ComponentCore>();
+        /**
+         * Components that had prioritized work pending when scheduled, run
+         * before the rest.
+         */
+        private final ConcurrentLinkedQueue<ComponentCore> prioritizedQueue = new ConcurrentLinkedQueue<ComponentCore>();
+        private final AtomicInteger depth = new AtomicInteger(0);
+        /**
+         * Number of consecutive executions that found this worker's queue
+         * deeper than the migration threshold. Only written by the worker
+         * itself.
+         */
+        private volatile int pressure = 0;
+        private volatile boolean sleeping = false;
+        long executionCount, migrationCount, sleepCount;
+
+        AffinityWorker(int wid) {
+            super("Kompics-affinity-worker-" + wid);
+            this.wid = wid;
+            this.setDaemon(true);
+        }
+
+        void addWork(ComponentCore core) {
+            if (hasPrioritizedWork(core)) {
+                prioritizedQueue.offer(core);
+            } else {
+                workQueue.offer(core);
+            }
+            depth.incrementAndGet();
+            if (sleeping) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        ComponentCore takeWork() {
+            ComponentCore core = prioritizedQueue.poll();
+            if (core == null) {
+                core = workQueue.poll();
+            }
+            if (core != null) {
+                depth.decrementAndGet();
+            }
+            return core;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                ComponentCore core = takeWork();
+                if (core == null) {
+                    core = migrateTo(this);
+                }
+                if (core == null) {
+                    if (idle < SPINS_BEFORE_PARK) {
+                        idle++;
+                        Thread.yield();
+                    } else {
+                        park();
+                        idle = 0;
+                    }
+                    continue;
+                }
+                idle = 0;
+                execute(core);
+                if (depth.get() > migrationThreshold) {
+                    int p = pressure + 1;
+                    pressure = p;
+                    if (p == patience) {
+                        wakeIdleWorker(this);
+                    }
+                } else if (pressure != 0) {
+                    pressure = 0;
+                }
+            }
+        }
+
+        private void execute(ComponentCore core) {
+            executionCount++;
+            try {
+                executeComponent(core, wid);
+            } catch (Throwable e) {
+                Kompics.getFaultHandler().handle(new Fault(e, core, null));
+            }
+        }
+
+        private void park() {
+            sleeping = true;
+            if (workQueue.isEmpty() && prioritizedQueue.isEmpty() && running) {
+                sleepCount++;
+                SchedulerMetrics metrics = metrics();
+                if (metrics != null) {
+                    metrics.slept();
+                }
+                LockSupport.park(this);
+            }
+            sleeping = false;
+        }
+    }
+}
@@ -46,6 +46,11 @@ public class ForkJoinScheduler extends Scheduler {
         pool.execute((ForkJoinTask<Void>) c);
     }
 
+    @Override
+    public void runTask(Runnable task) {
+        pool.execute(task);
+    }
+
     @Override
     public void proceed() {
         // Do nothing
@@ -68,6 +73,12 @@ public class ForkJoinScheduler extends Scheduler {
         pool.shutdown();
     }
 
+    @Override
+    public boolean mayBlock() {
+        // waits go through ForkJoinPool.managedBlock, which compensates
+        return true;
+    }
+
     static class KompicsUncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
 
         @Override
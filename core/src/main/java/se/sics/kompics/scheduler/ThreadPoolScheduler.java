@@ -51,6 +51,11 @@ public class ThreadPoolScheduler extends Scheduler {
         threadPool.execute(c);
     }
 
+    @Override
+    public void runTask(Runnable task) {
+        threadPool.execute(task);
+    }
+
     @Override
     public void proceed() {
         // Do nothing
@@ -73,6 +78,11 @@ public class ThreadPoolScheduler extends Scheduler {
         threadPool.shutdown();
     }
 
+    @Override
+    public boolean mayBlock() {
+        return !(Thread.currentThread() instanceof PoolThread);
+    }
+
     static class KompicsThreadFactory implements ThreadFactory {
 
         final AtomicInteger threadNumber = new AtomicInteger(1);
@@ -84,7 +94,7 @@ public class ThreadPoolScheduler extends Scheduler {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix
+            Thread t = new PoolThread(r, namePrefix
                     + threadNumber.getAndIncrement());
             if (t.isDaemon()) {
                 t.setDaemon(false);
@@ -95,4 +105,11 @@ public class ThreadPoolScheduler extends Scheduler {
             return t;
         }
     }
+
+    static final class PoolThread extends Thread {
+
+        PoolThread(Runnable r, String name) {
+            super(r, name);
+        }
+    }
 }
@@ -0,0 +1,185 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.Fault;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+
+/**
+ * Runs every component activation on its own virtual thread.
+ * <p>
+ * A handler that blocks (on a database, file I/O, a lock...) only parks its
+ * virtual thread, so large numbers of mostly idle, occasionally blocking
+ * components can share a small carrier pool. The carrier pool is the JDK's
+ * and is sized with the {@code jdk.virtualThreadScheduler.parallelism}
+ * system property.
+ * <p>
+ * Virtual threads need Java 21. On older JVMs this scheduler refuses to start
+ * unless a fallback is asked for with {@value #FALLBACK_THREADS_KEY}, in which
+ * case activations run on a pool of at most that many platform threads. Only
+ * that many components can then block at the same time. Use
+ * {@link #isVirtual()} to find out which one is in use.
+ * <p>
+ * For CPU bound components {@link ForkJoinScheduler} remains the better
+ * choice, as creating a thread per activation costs more than pushing a task
+ * onto a work queue.
+ */
+public class VirtualThreadScheduler extends Scheduler {
+
+    /**
+     * Size of the platform thread pool used when virtual threads are not
+     * available. Defaults to 0, which disables the fallback.
+     */
+    public static final String FALLBACK_THREADS_KEY = "kompics.scheduler.virtual.fallbackThreads";
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    public VirtualThreadScheduler() {
+        this(Kompics.getConfig().getValueOrDefault(FALLBACK_THREADS_KEY, 0));
+    }
+
+    /**
+     * @param fallbackThreads the maximum number of platform threads to use if
+     * virtual threads are not available, or 0 to fail instead
+     */
+    public VirtualThreadScheduler(int fallbackThreads) {
+        if (fallbackThreads < 0) {
+            throw new ConfigurationException("Invalid value for " + FALLBACK_THREADS_KEY + ": " + fallbackThreads);
+        }
+        ExecutorService vexec = virtualThreadExecutor();
+        if (vexec != null) {
+            executor = vexec;
+            virtual = true;
+        } else if (fallbackThreads == 0) {
+            throw new ConfigurationException("Virtual threads are not available on this JVM. Set "
+                    + FALLBACK_THREADS_KEY + " to run on a bounded pool of platform threads instead.");
+        } else {
+            Kompics.logger.warn("Virtual threads are not available on this JVM. Using at most {} platform threads instead.", fallbackThreads);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(fallbackThreads, fallbackThreads, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadPoolScheduler.KompicsThreadFactory());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            virtual = false;
+        }
+    }
+
+    /**
+     * @return whether virtual threads are available on this JVM
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    // looked up reflectively so that the runtime still builds and runs on Java 8
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            // e.g. virtual threads still being a preview feature
+            Kompics.logger.debug("Could not create virtual thread executor", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if activations run on virtual threads,
+     * {@code false} if on the platform thread fallback
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void schedule(Component c, int w) {
+        executor.execute(new Activation((ComponentCore) c));
+    }
+
+    @Override
+    public void runTask(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void proceed() {
+        // Do nothing
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Kompics.SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Kompics.logger.warn("Failed orderly Kompics shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean mayBlock() {
+        return virtual || !(Thread.currentThread() instanceof ThreadPoolScheduler.PoolThread);
+    }
+
+    private final class Activation implements Runnable {
+
+        private final ComponentCore core;
+
+        Activation(ComponentCore core) {
+            this.core = core;
+        }
+
+        @Override
+        public void run() {
+            try {
+                executeComponent(core, 0);
+            } catch (Throwable e) {
+                Kompics.getFaultHandler().handle(new Fault(e, core, null));
+            }
+        }
+    }
+}
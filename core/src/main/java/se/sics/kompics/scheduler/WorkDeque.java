@@ -0,0 +1,138 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import se.sics.kompics.ComponentCore;
+
+/**
+ * A Chase-Lev work-stealing deque of components.
+ * <p>
+ * The owning worker {@link #push(ComponentCore) pushes} and
+ * {@link #pop() pops} at the bottom, i.e. in LIFO order, so the component
+ * that was just sent an event runs next, while its state is still in the
+ * cache. Any thread may {@link #steal() steal} from the top, i.e. the
+ * oldest component.
+ * <p>
+ * The array grows as needed and never shrinks. Thieves that still read an
+ * old array find the same components there, since growing only copies.
+ */
+final class WorkDeque {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final AtomicLong top = new AtomicLong(0);
+    private volatile long bottom = 0;
+    private volatile AtomicReferenceArray<ComponentCore> array = new AtomicReferenceArray<ComponentCore>(INITIAL_CAPACITY);
+
+    /**
+     * Only called by the owner.
+     * <p>
+     * @param core the component to add at the bottom
+     */
+    void push(ComponentCore core) {
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<ComponentCore> a = array;
+        if (b - t >= a.length() - 1) {
+            a = grow(a, b, t);
+            array = a;
+        }
+        a.lazySet(index(a, b), core);
+        bottom = b + 1; // publishes the component
+    }
+
+    /**
+     * Only called by the owner.
+     * <p>
+     * @return the newest component, or {@code null} if there is none
+     */
+    ComponentCore pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<ComponentCore> a = array;
+        bottom = b; // volatile write before the read of top, see steal()
+        long t = top.get();
+        if (t > b) {
+            bottom = t;
+            return null;
+        }
+        int i = index(a, b);
+        ComponentCore core = a.get(i);
+        if (t == b) {
+            // the last one, thieves may race for it
+            if (!top.compareAndSet(t, t + 1)) {
+                core = null;
+            }
+            bottom = t + 1;
+        }
+        if (core != null) {
+            a.compareAndSet(i, core, null);
+        }
+        return core;
+    }
+
+    /**
+     * Can be called by any thread.
+     * <p>
+     * @return the oldest component, or {@code null} if there is none or
+     * another thread took it first
+     */
+    ComponentCore steal() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        AtomicReferenceArray<ComponentCore> a = array;
+        int i = index(a, t);
+        ComponentCore core = a.get(i);
+        if ((core == null) || !top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+        a.compareAndSet(i, core, null);
+        return core;
+    }
+
+    /**
+     * @return the number of queued components, possibly outdated
+     */
+    int size() {
+        long s = bottom - top.get();
+        return (s > 0) ? (int) s : 0;
+    }
+
+    boolean isEmpty() {
+        return bottom <= top.get();
+    }
+
+    private static AtomicReferenceArray<ComponentCore> grow(AtomicReferenceArray<ComponentCore> a, long b, long t) {
+        AtomicReferenceArray<ComponentCore> na = new AtomicReferenceArray<ComponentCore>(a.length() << 1);
+        for (long i = t; i < b; i++) {
+            na.lazySet(index(na, i), a.get(index(a, i)));
+        }
+        return na;
+    }
+
+    private static int index(AtomicReferenceArray<ComponentCore> a, long i) {
+        return (int) (i & (a.length() - 1));
+    }
+}
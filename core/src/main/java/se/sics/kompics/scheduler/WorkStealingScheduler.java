@@ -20,159 +20,207 @@
  */
 package se.sics.kompics.scheduler;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import se.sics.kompics.Component;
 import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Fault;
 import se.sics.kompics.Kompics;
 import se.sics.kompics.Scheduler;
-import se.sics.kompics.SpinlockQueue;
+import se.sics.kompics.metrics.SchedulerMetrics;
 
-// TODO: Auto-generated Javadoc
 /**
- * The
- * <code>Scheduler</code> class.
+ * A work-stealing scheduler with a Chase-Lev deque per worker.
+ * <p>
+ * A component scheduled by a worker, i.e. sent an event by a handler
+ * running on it, is pushed onto that worker's deque and runs next, while
+ * the event is still in its cache. Components scheduled from other threads
+ * go to the inbox of the worker given by the {@code wid} hint passed to
+ * {@link #schedule(Component, int)}. Idle workers steal the oldest
+ * components of randomly chosen victims, and park after spinning a while
+ * without finding any.
  *
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
+ * @author Lars Kroll {@literal <lkroll@kth.se>}
  * @version $Id$
  */
 public final class WorkStealingScheduler extends Scheduler {
 
-    private final int workerCount;
     private final Worker[] workers;
-    private final boolean[] on;
-    private final SpinlockQueue<Worker> sleepingWorkers;
-    private final AtomicInteger sleepingWorkerCount;
+    private final AtomicInteger sleepingWorkers = new AtomicInteger(0);
+    private final AtomicInteger nextWorker = new AtomicInteger(0);
+    private volatile boolean running = true;
+    private boolean started = false;
 
     /**
      * Instantiates a new scheduler.
      *
-     * @param wc the wc
+     * @param wc the number of workers
      */
     public WorkStealingScheduler(int wc) {
-        workerCount = wc;
-        workers = new Worker[workerCount];
-        sleepingWorkers = new SpinlockQueue<Worker>();
-        sleepingWorkerCount = new AtomicInteger(0);
-        on = new boolean[workerCount];
-
+        if (wc < 1) {
+            throw new IllegalArgumentException("Need at least one worker, got " + wc);
+        }
+        workers = new Worker[wc];
         for (int i = 0; i < workers.length; i++) {
             workers[i] = new Worker(this, i);
-            on[i] = true;
         }
     }
 
-    public final void proceed() {
-        for (int i = 0; i < workers.length; i++) {
-            workers[i].start();
+    @Override
+    public synchronized void proceed() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Worker worker : workers) {
+            worker.start();
         }
     }
 
-    public final void shutdown() {
-        for (int i = 0; i < workers.length; i++) {
-            synchronized (workers[i]) {
-                on[i] = false;
-                workers[i].quitWhenNoMoreWork();
-                workers[i].notify();
+    @Override
+    public void shutdown() {
+        asyncShutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Kompics.SHUTDOWN_TIMEOUT);
+        try {
+            for (Worker worker : workers) {
+                if (worker == Thread.currentThread()) {
+                    continue;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+                if (worker.isAlive()) {
+                    Kompics.logger.warn("Failed orderly Kompics shutdown");
+                    return;
+                }
             }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
         }
     }
 
-    public final void schedule(Component component, int wid) {
+    @Override
+    public boolean mayBlock() {
+        return !(Thread.currentThread() instanceof Worker);
+    }
+
+    @Override
+    public void schedule(Component component, int wid) {
         ComponentCore core = (ComponentCore) component;
-        // check if any worker need waking up
-        int swc = sleepingWorkerCount.get();
-        Worker toAwake = null;
-        if (swc > 0) {
-            swc = sleepingWorkerCount.getAndDecrement();
-            if (swc > 0) {
-                toAwake = sleepingWorkers.poll();
+        Thread current = Thread.currentThread();
+        if ((current instanceof Worker) && (((Worker) current).scheduler == this)) {
+            Worker self = (Worker) current;
+            if (self.addLocalWork(core)) {
+                wakeOne(null);
             }
+            return;
         }
-
-        if (toAwake == null) {
-            // add new work to the queue of the worker who generated it
-            workers[wid].addWork(core);
+        Worker target;
+        if ((wid >= 0) && (wid < workers.length)) {
+            target = workers[wid];
         } else {
-            // add new work to the queue of the worker to be awaken
-            workers[toAwake.getWid()].addWork(core);
+            target = workers[(nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        target.addWork(core);
+        wakeOne(target);
+    }
 
-            // wake up sleeping worker
-            synchronized (toAwake) {
-                toAwake.notify();
+    private void wakeOne(Worker preferred) {
+        if (sleepingWorkers.get() == 0) {
+            return;
+        }
+        if ((preferred != null) && preferred.sleeping) {
+            LockSupport.unpark(preferred);
+            return;
+        }
+        for (Worker worker : workers) {
+            if (worker.sleeping) {
+                LockSupport.unpark(worker);
+                return;
             }
         }
-
     }
 
-    final ComponentCore stealWork(int wid) {
-        ComponentCore core = null;
-        int wmax, max;
-        do {
-            max = 0;
-            wmax = wid;
-            for (int i = 0; i < workers.length; i++) {
-                if (i != wid) {
-                    int wc = workers[i].getWorkCount();
-                    if (wc > max) {
-                        max = wc;
-                        wmax = i;
-                    }
+    final ComponentCore stealWork(Worker thief) {
+        int n = workers.length;
+        if (n == 1) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            Worker victim = workers[(start + i) % n];
+            if (victim == thief) {
+                continue;
+            }
+            ComponentCore core = victim.getWork();
+            if (core != null) {
+                SchedulerMetrics metrics = metrics();
+                if (metrics != null) {
+                    metrics.stole();
                 }
+                return core;
             }
-            core = workers[wmax].getWork();
-            // repeat until some worker has some work
-        } while (core == null && max > 0);
-        return core;
+        }
+        return null;
     }
 
-    final void waitForWork(Worker w) {
-        synchronized (w) {
-            sleepingWorkers.offer(w);
-            sleepingWorkerCount.incrementAndGet();
-//			try {
-//				// Kompics.logger.debug("{} sleeping.", w.getWid());
-//				if (!on[w.getWid()]) {
-//					// do not wait when the worker is supposed to quit
-//					return;
-//				}
-//
-//				w.wait();
-//			} catch (InterruptedException e) {
-//			}
-            // Kompics.logger.debug("{} sleeping.", w.getWid());
-            if (!on[w.getWid()]) {
-                // do not wait when the worker is supposed to quit
-                return;
+    final boolean anyWork() {
+        for (Worker worker : workers) {
+            if (worker.hasWork()) {
+                return true;
             }
-            w.waitForWork();
-            // Kompics.logger.debug("{} woke up.", w.getWid());
         }
+        return false;
     }
 
-    public final void logStats() {
-        int ex = 0, ws = 0, sl = 0;
-        for (int i = 0; i < workers.length; i++) {
-            ex += workers[i].executionCount;
-            ws += workers[i].workStealingCount;
-            sl += workers[i].sleepCount;
-            Kompics.logger
-                    .error("Worker {}: executed {}, stole {}, slept {}",
-                    new Object[]{i, workers[i].executionCount,
-                        workers[i].workStealingCount,
-                        workers[i].sleepCount});
-        }
-        Kompics.logger.error("TOTAL: executed {}, stole {}, slept {}",
-                new Object[]{ex, ws, sl});
+    final boolean isRunning() {
+        return running;
     }
 
-    final void execute(Component component, int w) {
-        executeComponent(component, w);
+    final void sleeping(int delta) {
+        sleepingWorkers.addAndGet(delta);
     }
 
-    @Override
-    public void asyncShutdown() {
-        shutdown();
+    final void slept() {
+        SchedulerMetrics metrics = metrics();
+        if (metrics != null) {
+            metrics.slept();
+        }
+    }
+
+    public final void logStats() {
+        long ex = 0, ws = 0, sl = 0;
+        for (Worker worker : workers) {
+            ex += worker.executionCount;
+            ws += worker.workStealingCount;
+            sl += worker.sleepCount;
+            Kompics.logger.info("Worker {}: executed {}, stole {}, slept {}",
+                    new Object[]{worker.getWid(), worker.executionCount,
+                        worker.workStealingCount, worker.sleepCount});
+        }
+        Kompics.logger.info("TOTAL: executed {}, stole {}, slept {}",
+                new Object[]{ex, ws, sl});
+    }
+
+    final void execute(ComponentCore core, Worker worker) {
+        try {
+            executeComponent(core, worker.getWid());
+        } catch (Throwable e) {
+            Kompics.getFaultHandler().handle(new Fault(e, core, null));
+        }
     }
 }
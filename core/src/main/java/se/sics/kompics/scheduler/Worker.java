@@ -20,34 +20,44 @@
  */
 package se.sics.kompics.scheduler;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import se.sics.kompics.ComponentCore;
-import se.sics.kompics.SpinlockQueue;
 
 /**
- * The <code>Worker</code> class.
+ * A worker thread of the {@link WorkStealingScheduler}.
+ * <p>
+ * Components scheduled from the worker itself go to its {@link WorkDeque}
+ * and run in LIFO order. Components scheduled from other threads go to its
+ * inbox. Once both are empty, the worker steals from randomly chosen other
+ * workers, spins a while, and finally parks until new work arrives.
  * 
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
+ * @author Lars Kroll {@literal <lkroll@kth.se>}
  * @version $Id$
  */
 public class Worker extends Thread {
 
-	private final WorkStealingScheduler scheduler;
+	/**
+	 * Every this many executions the oldest local component runs instead of
+	 * the newest, and the inbox is looked at first, so neither starves.
+	 */
+	private static final int FAIRNESS_MASK = 31;
+	private static final int SPINS_BEFORE_PARK = 64;
 
-	private final int wid;
+	final WorkStealingScheduler scheduler;
 
-	private final SpinlockQueue<ComponentCore> workQueue;
+	private final int wid;
 
-	private final AtomicInteger workCount;
+	private final WorkDeque deque = new WorkDeque();
 
-	private final AtomicBoolean workAvailable = new AtomicBoolean(false);
+	private final ConcurrentLinkedQueue<ComponentCore> inbox = new ConcurrentLinkedQueue<ComponentCore>();
 
-	private final AtomicBoolean shouldQuit;
+	volatile boolean sleeping = false;
 
-	int executionCount, workStealingCount, sleepCount;
+	long executionCount, workStealingCount, sleepCount;
 
 	/**
 	 * Instantiates a new worker.
@@ -61,10 +71,8 @@ public class Worker extends Thread {
 		super();
 		this.scheduler = scheduler;
 		this.wid = wid;
-		this.workQueue = new SpinlockQueue<ComponentCore>();
-		this.workCount = new AtomicInteger(0);
-		this.shouldQuit = new AtomicBoolean(false);
 		super.setName("Kompics worker-" + wid);
+		super.setDaemon(true);
 	}
 
 	/*
@@ -74,61 +82,86 @@ public class Worker extends Thread {
 	 */
 	@Override
 	public final void run() {
-		while (true) {
-			try {
-				boolean stillOn = executeComponent();
-				if (!stillOn) {
-					return;
+		ComponentCore last = null;
+		int idle = 0;
+		while (scheduler.isRunning()) {
+			ComponentCore core = takeWork(last);
+			if (core == null) {
+				core = scheduler.stealWork(this);
+				if (core != null) {
+					workStealingCount++;
 				}
-			} finally {
-				// run forever
 			}
-		}
-	}
-
-	private final boolean executeComponent() {
-		ComponentCore core = null;
-		do {
-			// try to do local work
-			core = workQueue.poll();
 			if (core == null) {
-				// got no more work; should I quit?
-				if (shouldQuit.get()) {
-					return false;
+				last = null;
+				if (idle < SPINS_BEFORE_PARK) {
+					idle++;
+					Thread.yield();
+				} else {
+					park();
+					idle = 0;
 				}
-
-				// try to steal work from other workers
-				workStealingCount++;
-				core = scheduler.stealWork(wid);
-				if (core == null) {
-					// there is no work in the system
-					sleepCount++;
-					scheduler.waitForWork(this);
-				}
-			} else {
-				workCount.decrementAndGet();
+				continue;
 			}
-		} while (core == null);
-
-		executionCount++;
-		scheduler.execute(core, wid);
-		// core.execute(wid);
+			idle = 0;
+			executionCount++;
+			scheduler.execute(core, this);
+			last = core;
+		}
+	}
 
-		return true;
+	private ComponentCore takeWork(ComponentCore last) {
+		boolean fair = (executionCount & FAIRNESS_MASK) == 0;
+		ComponentCore core = fair ? inbox.poll() : null;
+		if (core != null) {
+			return core;
+		}
+		core = deque.pop();
+		if ((core != null) && (fair || (core == last))) {
+			// don't let a component that rescheduled itself hog the worker
+			ComponentCore oldest = deque.steal();
+			if (oldest != null) {
+				deque.push(core);
+				core = oldest;
+			}
+		}
+		if (core == null) {
+			core = inbox.poll();
+		}
+		return core;
 	}
 
+	/**
+	 * Called by any thread but the worker itself.
+	 * 
+	 * @return a component to run elsewhere, or {@code null}
+	 */
 	final ComponentCore getWork() {
-		ComponentCore core = workQueue.poll();
-		if (core != null) {
-			workCount.decrementAndGet();
+		ComponentCore core = deque.steal();
+		if (core == null) {
+			core = inbox.poll();
 		}
 		return core;
 	}
 
+	/**
+	 * Only called by the worker itself.
+	 * 
+	 * @return whether work was already queued, i.e. another worker could
+	 *         help
+	 */
+	final boolean addLocalWork(ComponentCore core) {
+		boolean surplus = !deque.isEmpty();
+		deque.push(core);
+		return surplus;
+	}
+
 	final void addWork(ComponentCore core) {
-		workQueue.offer(core);
-		workCount.incrementAndGet();
-		workAvailable.set(true);
+		inbox.offer(core);
+	}
+
+	final boolean hasWork() {
+		return !deque.isEmpty() || !inbox.isEmpty();
 	}
 
 	/**
@@ -137,7 +170,7 @@ public class Worker extends Thread {
 	 * @return the work count
 	 */
 	public final int getWorkCount() {
-		return workCount.get();
+		return deque.size() + inbox.size();
 	}
 
 	/**
@@ -149,20 +182,19 @@ public class Worker extends Thread {
 		return wid;
 	}
 
-	final void quitWhenNoMoreWork() {
-		shouldQuit.set(true);
-	}
-	
-	/**
-	 * The caller is expected to hold the object lock on entry
-	 */
-	void waitForWork() {
+	private void park() {
+		// announce before the last look, so work queued meanwhile wakes us
+		sleeping = true;
+		scheduler.sleeping(1);
 		try {
-			if (!workAvailable.compareAndSet(true, false)) {
-				this.wait();
+			if (!hasWork() && !scheduler.anyWork() && scheduler.isRunning()) {
+				sleepCount++;
+				scheduler.slept();
+				LockSupport.park(this);
 			}
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		} finally {
+			scheduler.sleeping(-1);
+			sleeping = false;
 		}
 	}
 }
@@ -0,0 +1,44 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.UUID;
+
+/**
+ * Generates the identifiers the runtime hands out, e.g. for components,
+ * timeouts and message notifications.
+ * <p>
+ * The factory in use is set with {@value Identifiers#KEY} in the config, see
+ * {@link Identifiers}. Implementations must be thread-safe and should be
+ * cheap, as some identifiers are created for every event.
+ */
+public interface IdentifierFactory {
+
+    /**
+     * @return a new identifier, unique at least within this JVM
+     */
+    public UUID uuid();
+
+    /**
+     * @return a new identifier, unique at least within this JVM
+     */
+    public Identifier id();
+}
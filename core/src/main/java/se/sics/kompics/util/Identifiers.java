@@ -0,0 +1,154 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.config.Config;
+
+/**
+ * The built-in {@link IdentifierFactory identifier factories} and access to
+ * the one in use.
+ * <p>
+ * {@value #KEY} selects the factory when the runtime is started:
+ * <ul>
+ * <li>{@code random} (default): random version 4 UUIDs from
+ * {@link ThreadLocalRandom}.</li>
+ * <li>{@code sequential}: a counter below a random per-JVM prefix. Cheapest,
+ * but identifiers from different JVMs only differ by their prefix.</li>
+ * <li>{@code secure}: {@link UUID#randomUUID()}, which goes through
+ * {@link java.security.SecureRandom}. Only needed if identifiers must not be
+ * guessable.</li>
+ * <li>the name of a class implementing {@link IdentifierFactory} with a
+ * public no-argument constructor.</li>
+ * </ul>
+ */
+public final class Identifiers {
+
+    public static final String KEY = "kompics.identifiers";
+
+    public static final IdentifierFactory SECURE = new UUIDFactory() {
+
+        @Override
+        public UUID uuid() {
+            return UUID.randomUUID();
+        }
+    };
+
+    public static final IdentifierFactory RANDOM = new UUIDFactory() {
+
+        @Override
+        public UUID uuid() {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            long msb = (r.nextLong() & ~0xF000L) | 0x4000L; // version 4
+            long lsb = (r.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+            return new UUID(msb, lsb);
+        }
+    };
+
+    public static final IdentifierFactory SEQUENTIAL = new UUIDFactory() {
+
+        private final long prefix = UUID.randomUUID().getMostSignificantBits();
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public UUID uuid() {
+            return new UUID(prefix, counter.incrementAndGet());
+        }
+    };
+
+    private static volatile IdentifierFactory factory = RANDOM;
+
+    private Identifiers() {
+    }
+
+    /**
+     * @return the factory in use
+     */
+    public static IdentifierFactory factory() {
+        return factory;
+    }
+
+    /**
+     * Replaces the factory in use.
+     * <p>
+     * Identifiers handed out before are not affected, so this should happen
+     * before any components are created.
+     * <p>
+     * @param f the new factory
+     */
+    public static void setFactory(IdentifierFactory f) {
+        if (f == null) {
+            throw new NullPointerException("factory");
+        }
+        factory = f;
+    }
+
+    /**
+     * @return a new identifier from the factory in use
+     */
+    public static UUID uuid() {
+        return factory.uuid();
+    }
+
+    /**
+     * @return a new identifier from the factory in use
+     */
+    public static Identifier id() {
+        return factory.id();
+    }
+
+    /**
+     * Loads the factory selected by {@value #KEY}.
+     * <p>
+     * @param conf the config
+     * @return the factory
+     */
+    public static IdentifierFactory fromConfig(Config conf) {
+        String name = conf.getValueOrDefault(KEY, "random");
+        switch (name) {
+            case "random":
+                return RANDOM;
+            case "sequential":
+                return SEQUENTIAL;
+            case "secure":
+                return SECURE;
+            default:
+                try {
+                    Class<?> c = Class.forName(name);
+                    return (IdentifierFactory) c.newInstance();
+                } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException ex) {
+                    throw new ConfigurationException("Invalid value for " + KEY + ": " + name
+                            + " (expected random, sequential, secure or an IdentifierFactory class)", ex);
+                }
+        }
+    }
+
+    private static abstract class UUIDFactory implements IdentifierFactory {
+
+        @Override
+        public Identifier id() {
+            return new UUIDIdentifier(uuid());
+        }
+    }
+}
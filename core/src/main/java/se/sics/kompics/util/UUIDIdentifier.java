@@ -0,0 +1,68 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import java.util.UUID;
+
+/**
+ * An {@link Identifier} backed by a {@link UUID}.
+ */
+public class UUIDIdentifier implements Identifier {
+
+    public final UUID id;
+
+    public UUIDIdentifier(UUID id) {
+        this.id = id;
+    }
+
+    @Override
+    public int partition(int nrPartitions) {
+        return (hashCode() & Integer.MAX_VALUE) % nrPartitions;
+    }
+
+    @Override
+    public int compareTo(Identifier o) {
+        UUIDIdentifier that = (UUIDIdentifier) o;
+        return this.id.compareTo(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final UUIDIdentifier other = (UUIDIdentifier) obj;
+        return this.id.equals(other.id);
+    }
+
+    @Override
+    public String toString() {
+        return id.toString();
+    }
+}
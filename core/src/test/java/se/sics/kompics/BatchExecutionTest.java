@@ -0,0 +1,126 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class BatchExecutionTest {
+
+    private static final int EVENTS = 100000;
+    private static final Semaphore done = new Semaphore(0);
+    private static final AtomicInteger outOfOrder = new AtomicInteger(0);
+
+    @Test
+    public void batchesKeepOrder() throws InterruptedException {
+        outOfOrder.set(0);
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.BATCH_SIZE_KEY + " = 64").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class, 4);
+            try {
+                Assert.assertEquals(64, Kompics.maxNumOfExecutedEvents.get());
+                Assert.assertTrue("Not all events were handled in time", done.tryAcquire(10, TimeUnit.SECONDS));
+                Assert.assertEquals(0, outOfOrder.get());
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    public static class Msg implements KompicsEvent {
+
+        final int seq;
+
+        public Msg(int seq) {
+            this.seq = seq;
+        }
+    }
+
+    public static class MsgPort extends PortType {
+
+        {
+            request(Msg.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component sender = create(Sender.class, Init.NONE);
+            Component receiver = create(Receiver.class, Init.NONE);
+            connect(sender.getNegative(MsgPort.class), receiver.getPositive(MsgPort.class), Channel.TWO_WAY);
+        }
+    }
+
+    public static class Sender extends ComponentDefinition {
+
+        Positive<MsgPort> port = requires(MsgPort.class);
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                for (int i = 0; i < EVENTS; i++) {
+                    trigger(new Msg(i), port);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Receiver extends ComponentDefinition {
+
+        Negative<MsgPort> port = provides(MsgPort.class);
+        private int next = 0;
+
+        Handler<Msg> msgHandler = new Handler<Msg>() {
+
+            @Override
+            public void handle(Msg event) {
+                if (event.seq != next) {
+                    outOfOrder.incrementAndGet();
+                }
+                next = event.seq + 1;
+                if (next == EVENTS) {
+                    done.release();
+                }
+            }
+        };
+
+        {
+            subscribe(msgHandler, port);
+        }
+    }
+}
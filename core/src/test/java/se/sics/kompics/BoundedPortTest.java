@@ -0,0 +1,238 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Fault.ResolveAction;
+import se.sics.kompics.scheduler.AffinityScheduler;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
+@RunWith(JUnit4.class)
+public class BoundedPortTest {
+
+    private static final int CAPACITY = 10;
+    private static volatile OverflowPolicy policy;
+    private static volatile int sent;
+    private static volatile boolean bounded = true;
+    private static volatile ResolveAction resolution = ResolveAction.RESOLVED;
+    private static volatile Component.State sourceState;
+    private static final BlockingQueue<Integer> received = new LinkedBlockingQueue<Integer>();
+    private static final BlockingQueue<Throwable> faults = new LinkedBlockingQueue<Throwable>();
+    private static final long timeout = 5000;
+    private static final TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    @Test
+    public void dropNewest() throws InterruptedException {
+        List<Integer> got = run(OverflowPolicy.DROP_NEWEST, 100, 1);
+        for (int i = 0; i < CAPACITY; i++) {
+            Assert.assertEquals(Integer.valueOf(i), got.get(i));
+        }
+    }
+
+    @Test
+    public void dropOldest() throws InterruptedException {
+        List<Integer> got = run(OverflowPolicy.DROP_OLDEST, 100, 1);
+        for (int i = 0; i < CAPACITY; i++) {
+            Assert.assertEquals(Integer.valueOf(100 - CAPACITY + i), got.get(i));
+        }
+    }
+
+    @Test
+    public void fault() throws InterruptedException {
+        resolution = ResolveAction.IGNORE;
+        try {
+            List<Integer> got = run(OverflowPolicy.FAULT, 100, 1);
+            for (int i = 0; i < CAPACITY; i++) {
+                Assert.assertEquals(Integer.valueOf(i), got.get(i));
+            }
+        } finally {
+            resolution = ResolveAction.RESOLVED;
+        }
+        Throwable t = faults.poll(timeout, timeUnit);
+        Assert.assertTrue("Expected an overflow fault, got " + t, t instanceof PortOverflowException);
+        Assert.assertEquals(Component.State.FAULTY, sourceState);
+        Assert.assertNull("Only one fault per overflow expected", faults.poll());
+    }
+
+    @Test
+    public void faultDestroy() throws InterruptedException {
+        policy = OverflowPolicy.FAULT;
+        resolution = ResolveAction.DESTROY;
+        sent = 100;
+        received.clear();
+        faults.clear();
+        Kompics.createAndStart(Parent.class, 1);
+        try {
+            Throwable t = faults.poll(timeout, timeUnit);
+            Assert.assertTrue("Expected an overflow fault, got " + t, t instanceof PortOverflowException);
+            Assert.assertEquals(Component.State.FAULTY, sourceState);
+            // the consumer reports the overflow before handling anything
+            Assert.assertNull("Destroyed consumer handled an event", received.poll(200, timeUnit));
+        } finally {
+            Kompics.shutdown();
+            resolution = ResolveAction.RESOLVED;
+        }
+    }
+
+    @Test
+    public void block() throws InterruptedException {
+        int n = 1000;
+        policy = OverflowPolicy.BLOCK;
+        sent = n;
+        received.clear();
+        Kompics.createAndStart(Parent.class, 2);
+        try {
+            for (int i = 0; i < n; i++) {
+                Integer id = received.poll(timeout, timeUnit);
+                Assert.assertEquals(Integer.valueOf(i), id);
+            }
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    @Test
+    public void blockWithoutCompensation() throws InterruptedException {
+        // the producer's worker is the only one, so waiting would starve the consumer
+        Scheduler[] schedulers = {new AffinityScheduler(1), new WorkStealingScheduler(1), new ThreadPoolScheduler(1)};
+        for (Scheduler s : schedulers) {
+            int n = 100;
+            policy = OverflowPolicy.BLOCK;
+            sent = n;
+            bounded = false;
+            received.clear();
+            Kompics.setScheduler(s);
+            Kompics.createAndStart(Parent.class, 1);
+            try {
+                for (int i = 0; i < n; i++) {
+                    Integer id = received.poll(timeout, timeUnit);
+                    Assert.assertEquals(s.getClass().getSimpleName(), Integer.valueOf(i), id);
+                }
+            } finally {
+                Kompics.shutdown();
+                bounded = true;
+            }
+        }
+    }
+
+    private static List<Integer> run(OverflowPolicy p, int n, int workers) throws InterruptedException {
+        policy = p;
+        sent = n;
+        received.clear();
+        faults.clear();
+        // a single worker makes sure the producer fills the queue before the consumer runs
+        Kompics.createAndStart(Parent.class, workers);
+        List<Integer> got = new ArrayList<Integer>();
+        try {
+            for (int i = 0; i < CAPACITY; i++) {
+                Integer id = received.poll(timeout, timeUnit);
+                Assert.assertNotNull("Timeout waiting for event " + i, id);
+                got.add(id);
+            }
+            Assert.assertNull("Received more events than the port can hold", received.poll(200, timeUnit));
+        } finally {
+            Kompics.shutdown();
+        }
+        return got;
+    }
+
+    public static class TestEvent implements KompicsEvent {
+
+        final int id;
+
+        public TestEvent(int id) {
+            this.id = id;
+        }
+    }
+
+    public static class TestPort extends PortType {
+
+        {
+            request(TestEvent.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component producer = create(Producer.class, Init.NONE);
+            Component consumer = create(Consumer.class, Init.NONE);
+            connect(producer.getNegative(TestPort.class), consumer.getPositive(TestPort.class), Channel.TWO_WAY);
+        }
+
+        @Override
+        public ResolveAction handleFault(Fault fault) {
+            sourceState = fault.getSourceCore().state();
+            faults.offer(fault.getCause());
+            return resolution;
+        }
+    }
+
+    public static class Producer extends ComponentDefinition {
+
+        Positive<TestPort> port = requires(TestPort.class);
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                for (int i = 0; i < sent; i++) {
+                    trigger(new TestEvent(i), port);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Consumer extends ComponentDefinition {
+
+        Negative<TestPort> port = provides(TestPort.class);
+
+        Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+            @Override
+            public void handle(TestEvent event) {
+                int depth = ((JavaPort<TestPort>) port).queueDepth();
+                if (bounded && (depth > CAPACITY)) {
+                    throw new IllegalStateException("Queue depth " + depth + " exceeds capacity");
+                }
+                received.offer(event.id);
+            }
+        };
+
+        {
+            bound(port, CAPACITY, policy);
+            subscribe(testHandler, port);
+        }
+    }
+}
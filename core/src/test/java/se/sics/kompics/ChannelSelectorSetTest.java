@@ -0,0 +1,211 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChannelSelectorSetTest {
+
+    @Test
+    public void selectsByValue() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        DummyChannel a = new DummyChannel(), b = new DummyChannel(), c = new DummyChannel();
+        set.addChannelSelector(a, new KeySelector(1));
+        set.addChannelSelector(b, new KeySelector(1));
+        set.addChannelSelector(c, new KeySelector(2));
+
+        ChannelCore<?>[] ones = set.select(new Keyed(1));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{a, b}, ones);
+        Assert.assertArrayEquals(new ChannelCore<?>[]{c}, set.select(new Keyed(2)));
+        Assert.assertEquals(0, set.select(new Keyed(3)).length);
+        // the compiled index is reused, not rebuilt
+        Assert.assertSame(ones, set.select(new Keyed(1)));
+    }
+
+    @Test
+    public void selectsForSubtypes() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        DummyChannel a = new DummyChannel();
+        set.addChannelSelector(a, new KeySelector(1));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{a}, set.select(new SubKeyed(1)));
+        Assert.assertEquals(0, set.select(new Other()).length);
+    }
+
+    @Test
+    public void combinesSelectorTypesWithoutDuplicates() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        DummyChannel a = new DummyChannel(), b = new DummyChannel();
+        set.addChannelSelector(a, new KeySelector(1));
+        set.addChannelSelector(b, new ParitySelector(true));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{a}, set.select(new Keyed(1)));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{b}, set.select(new Keyed(2)));
+        Assert.assertEquals(0, set.select(new Keyed(3)).length);
+    }
+
+    @Test
+    public void changesRecompile() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        DummyChannel a = new DummyChannel(), b = new DummyChannel(), c = new DummyChannel();
+        set.addChannelSelector(a, new KeySelector(1));
+        Assert.assertEquals(1, set.select(new SubKeyed(1)).length);
+
+        set.addChannelSelector(b, new KeySelector(1));
+        Assert.assertEquals(2, set.select(new SubKeyed(1)).length);
+        set.addChannelSelector(c, new ParitySelector(false));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{a, b, c}, set.select(new SubKeyed(1)));
+
+        set.removeChannel(a);
+        Assert.assertArrayEquals(new ChannelCore<?>[]{b, c}, set.select(new SubKeyed(1)));
+        set.removeChannel(c);
+        Assert.assertArrayEquals(new ChannelCore<?>[]{b}, set.select(new SubKeyed(1)));
+        set.removeChannel(b);
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.select(new SubKeyed(1)).length);
+    }
+
+    @Test
+    public void duplicateAdds() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        DummyChannel a = new DummyChannel(), b = new DummyChannel();
+        set.addChannelSelector(a, new KeySelector(1));
+        set.addChannelSelector(a, new KeySelector(1));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{a}, set.select(new Keyed(1)));
+
+        set.removeChannel(a);
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.select(new Keyed(1)).length);
+
+        // the selector type was dropped and comes back cleanly
+        set.addChannelSelector(b, new KeySelector(1));
+        Assert.assertArrayEquals(new ChannelCore<?>[]{b}, set.select(new Keyed(1)));
+        set.removeChannel(b);
+        Assert.assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void manySelectorChannels() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        int n = 100000;
+        DummyChannel[] channels = new DummyChannel[n];
+        for (int i = 0; i < n; i++) {
+            channels[i] = new DummyChannel();
+            set.addChannelSelector(channels[i], new KeySelector(i));
+        }
+        for (int i = 0; i < n; i += 1000) {
+            Assert.assertArrayEquals(new ChannelCore<?>[]{channels[i]}, set.select(new Keyed(i)));
+        }
+        for (int i = 0; i < n; i++) {
+            set.removeChannel(channels[i]);
+        }
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.select(new Keyed(0)).length);
+    }
+
+    public static class Keyed implements KompicsEvent {
+
+        final int key;
+
+        public Keyed(int key) {
+            this.key = key;
+        }
+    }
+
+    public static class SubKeyed extends Keyed {
+
+        public SubKeyed(int key) {
+            super(key);
+        }
+    }
+
+    public static class Other implements KompicsEvent {
+    }
+
+    public static class KeyPort extends PortType {
+
+        {
+            indication(Keyed.class);
+            indication(Other.class);
+        }
+    }
+
+    static class KeySelector extends ChannelSelector<Keyed, Integer> {
+
+        KeySelector(int key) {
+            super(Keyed.class, key, true);
+        }
+
+        @Override
+        public Integer getValue(Keyed event) {
+            return event.key;
+        }
+    }
+
+    static class ParitySelector extends ChannelSelector<Keyed, Boolean> {
+
+        ParitySelector(boolean even) {
+            super(Keyed.class, even, true);
+        }
+
+        @Override
+        public Boolean getValue(Keyed event) {
+            return (event.key % 2) == 0;
+        }
+    }
+
+    static class DummyChannel implements ChannelCore<KeyPort> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<KeyPort> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<KeyPort> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public KeyPort getPortType() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class DedicatedThreadTest {
+
+    private static final int PINGS = 10000;
+    private static final Semaphore done = new Semaphore(0);
+    private static final Set<Thread> pongerThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    @Test
+    public void spinning() throws InterruptedException {
+        // a thread that never yields needs a core of its own
+        Assume.assumeTrue(Runtime.getRuntime().availableProcessors() > 1);
+        run(Backoff.SPIN);
+    }
+
+    @Test
+    public void parking() throws InterruptedException {
+        run(Backoff.PARK);
+    }
+
+    @Test
+    public void configuredBackoff() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.dedicated.spins = 10\nkompics.dedicated.yields = 10").withFallback(ConfigFactory.load())));
+        try {
+            run(null);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidBackoff() {
+        Backoff.fromConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.dedicated.spins = -1").withFallback(ConfigFactory.load())));
+    }
+
+    @Test
+    public void failedConstructor() {
+        try {
+            Kompics.createAndStart(Failing.class, 1);
+            Assert.fail("Component creation should have failed");
+        } catch (RuntimeException e) {
+            // expected
+        } finally {
+            Kompics.shutdown();
+        }
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            Assert.assertFalse("Dedicated thread of a failed component is running", t instanceof DedicatedThread);
+        }
+    }
+
+    private static volatile Backoff backoff;
+
+    private void run(Backoff b) throws InterruptedException {
+        backoff = b;
+        pongerThreads.clear();
+        Kompics.createAndStart(Parent.class, 2);
+        try {
+            Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+        Assert.assertEquals(1, pongerThreads.size());
+        Thread t = pongerThreads.iterator().next();
+        Assert.assertTrue(t instanceof DedicatedThread);
+        Assert.assertTrue(t.isDaemon());
+        Assert.assertFalse("Dedicated thread survived shutdown", t.isAlive());
+    }
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class Pong implements KompicsEvent {
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component pinger = create(Pinger.class, Init.NONE);
+            Component ponger = create(Ponger.class, Init.NONE);
+            connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(), ppp);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                received++;
+                if (received == PINGS) {
+                    done.release();
+                } else {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Failing extends ComponentDefinition {
+
+        public Failing() {
+            dedicatedThread();
+            throw new IllegalStateException("failing on purpose");
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                pongerThreads.add(Thread.currentThread());
+                trigger(new Pong(), ppp);
+            }
+        };
+
+        {
+            if (backoff == null) {
+                dedicatedThread();
+            } else {
+                dedicatedThread(backoff);
+            }
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
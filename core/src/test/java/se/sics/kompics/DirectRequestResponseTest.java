@@ -65,6 +65,14 @@ public class DirectRequestResponseTest {
         Kompics.shutdown();
     }
 
+    @Test
+    public void recycleTest() {
+        Kompics.createAndStart(RecyclingParent.class);
+        waitFor(START);
+        waitFor(END);
+        Kompics.shutdown();
+    }
+
     public static class Down extends Direct.Request {
 
         public final long id;
@@ -93,11 +101,23 @@ public class DirectRequestResponseTest {
         }
     }
 
+    public static class Ping extends Direct.Request<Pong> {
+
+        public long id;
+    }
+
+    public static class Pong implements Direct.Response {
+
+        public long id;
+    }
+
     public static class PPPort extends PortType {
 
         {
             request(Down.class);
+            request(Ping.class);
             indication(Up.class);
+            indication(Pong.class);
         }
     }
 
@@ -168,9 +188,69 @@ public class DirectRequestResponseTest {
                 answer(event, new Up(event.id));
             }
         };
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                event.getResponse().id = event.id;
+                answer(event);
+            }
+        };
 
         {
             subscribe(downHandler, p);
+            subscribe(pingHandler, p);
+        }
+    }
+
+    public static class RecyclingParent extends ComponentDefinition {
+
+        Component pinger = create(RecyclingPinger.class, Init.NONE);
+        Component ponger = create(Ponger.class, Init.NONE);
+
+        {
+            connect(pinger.getNegative(PPPort.class), ponger.getPositive(PPPort.class));
+        }
+    }
+
+    public static class RecyclingPinger extends ComponentDefinition {
+
+        Positive<PPPort> p = requires(PPPort.class);
+
+        private final Ping ping = new Ping();
+        private final Pong pong = new Pong();
+        private long count = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                stringQ.offer(START);
+                ping.setResponse(pong);
+                ping.id = count;
+                trigger(ping, p);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                Assert.assertSame(pong, event);
+                Assert.assertEquals(count, event.id);
+                count++;
+                if (count < num) {
+                    ping.recycle();
+                    ping.id = count;
+                    trigger(ping, p);
+                } else {
+                    stringQ.offer(END);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, p);
         }
     }
 
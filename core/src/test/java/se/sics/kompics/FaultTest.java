@@ -33,6 +33,8 @@ public class FaultTest {
     private static final String PARENT_HANDLED = "PARENT_HANDLED";
     private static final String TOP_HANDLED = "TOP_HANDLED";
     private static final String GC_STARTED = "GC_STARTED";
+    private static final String RESUMED = "RESUMED";
+    private static final String HANDLED = "HANDLED";
     //private static final String TMSG = "TMSG";
 
     @Test
@@ -73,6 +75,24 @@ public class FaultTest {
         LOG.info("Ignore Test: Kompics shut down.");
     }
 
+    @Test
+    public void resumeWithPendingWorkTest() {
+        LOG.info("Resume Test: Starting Kompics...");
+        Kompics.createAndStart(ResumingParent.class, 1, 50);
+        LOG.info("Resume Test: Waiting for resume...");
+        waitFor(RESUMED);
+        LOG.info("Resume Test: Waiting for the event queued behind the fault...");
+        waitFor(HANDLED);
+        LOG.info("Resume Test: Shutting down Kompics...");
+        Kompics.shutdown();
+        try {
+            Kompics.waitForTermination();
+        } catch (InterruptedException ex) {
+            Assert.fail(ex.getMessage());
+        }
+        LOG.info("Resume Test: Kompics shut down.");
+    }
+
     @Test
     public void parentFaultTest() {
         Kompics.setFaultHandler(new FaultHandler() {
@@ -111,6 +131,65 @@ public class FaultTest {
         }
     }
 
+    public static class ResumingParent extends ComponentDefinition {
+
+        Component child = create(FlakyComponent.class, Init.NONE);
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                // both are queued before the child runs, so they share a batch
+                trigger(new TestEvent(), child.provided(TestPort.class));
+                trigger(new TestEvent(), child.provided(TestPort.class));
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+
+        @Override
+        public ResolveAction handleFault(Fault fault) {
+            return ResolveAction.IGNORE;
+        }
+    }
+
+    public static class FlakyComponent extends ComponentDefinition {
+
+        Negative<TestPort> testport = provides(TestPort.class);
+        private int starts = 0;
+        private boolean failed = false;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                starts++;
+                if (starts > 1) {
+                    stringQ.offer(RESUMED);
+                }
+            }
+        };
+
+        Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+            @Override
+            public void handle(TestEvent event) {
+                if (!failed) {
+                    failed = true;
+                    throw new TestError();
+                }
+                stringQ.offer(HANDLED);
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(testHandler, testport);
+        }
+    }
+
     public static class ParentComponent extends ComponentDefinition {
 
         Component child;
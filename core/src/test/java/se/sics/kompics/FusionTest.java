@@ -0,0 +1,168 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class FusionTest {
+
+    private static final int STAGES = 5;
+    private static final int[] depths = new int[STAGES];
+    private static final Semaphore done = new Semaphore(0);
+    private static final AtomicInteger concurrent = new AtomicInteger();
+    private static volatile boolean overlapped = false;
+    private static volatile Pipeline pipeline;
+
+    @Test
+    public void disabledByDefault() throws InterruptedException {
+        Kompics.resetConfig();
+        run(1);
+        Assert.assertArrayEquals(new int[]{0, 0, 0, 0, 0}, depths);
+    }
+
+    @Test
+    public void fusesUpToTheDepthBound() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.FUSION_KEY + " = 2").withFallback(ConfigFactory.load())));
+        try {
+            run(1);
+            // the source triggers from outside any component, so the first stage is
+            // scheduled, fuses the next two and then the chain starts over
+            Assert.assertArrayEquals(new int[]{1, 2, 3, 1, 2}, depths);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test
+    public void oneHandlerAtATime() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.FUSION_KEY + " = 8").withFallback(ConfigFactory.load())));
+        try {
+            overlapped = false;
+            run(1000);
+            Assert.assertFalse("A component ran two handlers at once", overlapped);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    private static void run(int tokens) throws InterruptedException {
+        Kompics.createAndStart(Pipeline.class, 2);
+        try {
+            while (pipeline.getComponentCore().state() != Component.State.ACTIVE) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < tokens; i++) {
+                pipeline.send();
+            }
+            Assert.assertTrue("Tokens did not reach the end", done.tryAcquire(tokens, 10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    public static class Token implements KompicsEvent {
+    }
+
+    public static class TokenPort extends PortType {
+
+        {
+            indication(Token.class);
+        }
+    }
+
+    public static class Pipeline extends ComponentDefinition {
+
+        private final Component source = create(Source.class, Init.NONE);
+
+        {
+            pipeline = this;
+            Component previous = source;
+            for (int i = 0; i < STAGES; i++) {
+                Component stage = create(Stage.class, new StageInit(i));
+                connect(previous.getPositive(TokenPort.class), stage.getNegative(TokenPort.class));
+                previous = stage;
+            }
+        }
+
+        void send() {
+            ((Source) source.getComponent()).send();
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        private final Negative<TokenPort> out = provides(TokenPort.class);
+
+        void send() {
+            trigger(new Token(), out);
+        }
+    }
+
+    public static class StageInit extends Init<Stage> {
+
+        final int index;
+
+        public StageInit(int index) {
+            this.index = index;
+        }
+    }
+
+    public static class Stage extends ComponentDefinition {
+
+        private final Positive<TokenPort> in = requires(TokenPort.class);
+        private final Negative<TokenPort> out = provides(TokenPort.class);
+        private final int index;
+        private final AtomicInteger running = new AtomicInteger();
+
+        Handler<Token> tokenHandler = new Handler<Token>() {
+
+            @Override
+            public void handle(Token event) {
+                if (running.incrementAndGet() > 1) {
+                    overlapped = true;
+                }
+                depths[index] = Fusion.current().executing;
+                if (index == STAGES - 1) {
+                    done.release();
+                } else {
+                    trigger(event, out);
+                }
+                running.decrementAndGet();
+            }
+        };
+
+        public Stage(StageInit init) {
+            this.index = init.index;
+            subscribe(tokenHandler, in);
+        }
+    }
+}
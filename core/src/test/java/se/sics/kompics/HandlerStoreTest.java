@@ -0,0 +1,129 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.HandlerStore.HandlerList;
+
+@RunWith(JUnit4.class)
+public class HandlerStoreTest {
+
+    public static class Base implements KompicsEvent {
+    }
+
+    public static class Sub extends Base {
+    }
+
+    private static class Noop<E extends KompicsEvent> extends Handler<E> {
+
+        Noop(Class<E> eventType) {
+            super(eventType);
+        }
+
+        @Override
+        public void handle(E event) {
+        }
+    }
+
+    @Test
+    public void resolvesSupertypeHandlers() {
+        HandlerStore store = new HandlerStore();
+        Handler<Base> baseH = new Noop<Base>(Base.class);
+        Handler<Sub> subH = new Noop<Sub>(Sub.class);
+        store.subscribe(baseH);
+        store.subscribe(subH);
+
+        HandlerList forSub = store.getSubscriptions(new Sub());
+        Assert.assertEquals(2, forSub.length);
+        Assert.assertSame(baseH, forSub.subscriptions[0]);
+        Assert.assertSame(subH, forSub.subscriptions[1]);
+
+        HandlerList forBase = store.getSubscriptions(new Base());
+        Assert.assertEquals(1, forBase.length);
+        Assert.assertSame(baseH, forBase.subscriptions[0]);
+
+        // repeated lookups are served from the cache
+        Assert.assertSame(forSub, store.getSubscriptions(new Sub()));
+    }
+
+    @Test
+    public void subscriptionChangesInvalidate() {
+        HandlerStore store = new HandlerStore();
+        Assert.assertFalse(store.hasSubscription(new Sub()));
+        Assert.assertEquals(0, store.getSubscriptions(new Sub()).length);
+
+        Handler<Base> baseH = new Noop<Base>(Base.class);
+        store.subscribe(baseH);
+        Assert.assertTrue(store.hasSubscription(new Sub()));
+        Assert.assertEquals(1, store.getSubscriptions(new Sub()).length);
+
+        Handler<Base> baseH2 = new Noop<Base>(Base.class);
+        store.subscribe(baseH2);
+        Assert.assertEquals(2, store.getSubscriptions(new Sub()).length);
+
+        Assert.assertTrue(store.unsubscribe(baseH));
+        HandlerList after = store.getSubscriptions(new Sub());
+        Assert.assertEquals(1, after.length);
+        Assert.assertSame(baseH2, after.subscriptions[0]);
+
+        Assert.assertTrue(store.unsubscribe(baseH2));
+        Assert.assertFalse(store.hasSubscription(new Sub()));
+        Assert.assertFalse(store.unsubscribe(baseH2));
+    }
+
+    @Test
+    public void lookupsDuringChanges() throws InterruptedException {
+        final HandlerStore store = new HandlerStore();
+        final Handler<Base> baseH = new Noop<Base>(Base.class);
+        final Handler<Sub> subH = new Noop<Sub>(Sub.class);
+        store.subscribe(baseH);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        store.subscribe(subH);
+                        store.unsubscribe(subH);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        writer.start();
+        Sub event = new Sub();
+        while (writer.isAlive()) {
+            HandlerList hl = store.getSubscriptions(event);
+            // every lookup sees one complete version of the subscriptions
+            Assert.assertTrue(hl.length == 1 || hl.length == 2);
+            Assert.assertSame(baseH, hl.subscriptions[0]);
+        }
+        writer.join();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(1, store.getSubscriptions(event).length);
+    }
+}
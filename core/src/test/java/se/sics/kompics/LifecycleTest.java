@@ -0,0 +1,165 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class LifecycleTest {
+
+    private static final int LEAVES = 5000;
+    private static final AtomicInteger started = new AtomicInteger();
+    private static final AtomicInteger tornDown = new AtomicInteger();
+    private static final Semaphore destroyed = new Semaphore(0);
+    private static volatile Root root;
+
+    @Test
+    public void wideTreeOneByOne() throws InterruptedException {
+        Kompics.resetConfig();
+        startAndKill();
+    }
+
+    @Test
+    public void wideTreeInParallel() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.LIFECYCLE_PARALLEL_KEY + " = 128").withFallback(ConfigFactory.load())));
+        try {
+            startAndKill();
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test
+    public void destroySubtree() throws InterruptedException {
+        Kompics.resetConfig();
+        started.set(0);
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            awaitActive();
+            Component group = root.group;
+            ComponentCore[] leaves = ((ComponentCore) group).childrenSnapshot();
+            Assert.assertEquals(LEAVES, leaves.length);
+            root.stopGroup();
+            Assert.assertTrue("Group was not destroyed in time", destroyed.tryAcquire(10, TimeUnit.SECONDS));
+            Assert.assertEquals(Component.State.DESTROYED, group.state());
+            for (ComponentCore leaf : leaves) {
+                Assert.assertEquals(Component.State.DESTROYED, leaf.state());
+            }
+            Assert.assertEquals(0, ((ComponentCore) group).childrenSnapshot().length);
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidFanout() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.LIFECYCLE_PARALLEL_KEY + " = -1").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Root.class);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    private static void startAndKill() throws InterruptedException {
+        started.set(0);
+        tornDown.set(0);
+        Kompics.createAndStart(Root.class, 2);
+        try {
+            awaitActive();
+            Assert.assertEquals(LEAVES, started.get());
+        } finally {
+            Kompics.shutdown();
+        }
+        Assert.assertEquals(LEAVES, tornDown.get());
+    }
+
+    private static void awaitActive() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (root.getComponentCore().state() != Component.State.ACTIVE) {
+            Assert.assertTrue("Tree did not start in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        final Component group = create(Group.class, Init.NONE);
+
+        Handler<Stopped> stoppedHandler = new Handler<Stopped>() {
+
+            @Override
+            public void handle(Stopped event) {
+                // what a DESTROY fault resolution does with the faulty subtree
+                getComponentCore().destroyTree((ComponentCore) group);
+                destroyed.release();
+            }
+        };
+
+        {
+            root = this;
+            subscribe(stoppedHandler, control);
+        }
+
+        void stopGroup() {
+            trigger(Stop.event, group.control());
+        }
+    }
+
+    public static class Group extends ComponentDefinition {
+
+        {
+            for (int i = 0; i < LEAVES; i++) {
+                create(Leaf.class, Init.NONE);
+            }
+        }
+    }
+
+    public static class Leaf extends ComponentDefinition {
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                started.incrementAndGet();
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+
+        @Override
+        public void tearDown() {
+            tornDown.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.typesafe.config.ConfigFactory;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class MDCModeTest {
+
+    private static final Semaphore done = new Semaphore(0);
+    private static volatile String cidInHandler;
+
+    @Test
+    public void lazyOnlyWhenLogging() throws InterruptedException {
+        Map<String, String> mdc = logOnce(MDCMode.LAZY);
+        Assert.assertNull("MDC was installed without logging", cidInHandler);
+        Assert.assertNotNull(mdc.get(ComponentDefinition.MDC_KEY_CID));
+        Assert.assertEquals("ACTIVE", mdc.get(ComponentDefinition.MDC_KEY_CSTATE));
+        Assert.assertEquals("v", mdc.get("custom"));
+    }
+
+    @Test
+    public void eagerAlways() throws InterruptedException {
+        Map<String, String> mdc = logOnce(MDCMode.EAGER);
+        Assert.assertNotNull(cidInHandler);
+        Assert.assertNotNull(mdc.get(ComponentDefinition.MDC_KEY_CID));
+        Assert.assertEquals("v", mdc.get("custom"));
+    }
+
+    @Test
+    public void offNever() throws InterruptedException {
+        Map<String, String> mdc = logOnce(MDCMode.OFF);
+        Assert.assertNull(cidInHandler);
+        Assert.assertNull(mdc.get(ComponentDefinition.MDC_KEY_CID));
+    }
+
+    @Test
+    public void invalidMode() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                ComponentDefinition.MDC_MODE_KEY + " = bogus").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Logging.class);
+            Kompics.shutdown();
+            Assert.fail("Invalid MDC mode was accepted");
+        } catch (ConfigurationException ex) {
+            // expected
+        } finally {
+            // throws if the failed start left Kompics running
+            Kompics.resetConfig();
+        }
+    }
+
+    private static Map<String, String> logOnce(MDCMode mode) throws InterruptedException {
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+        appender.start();
+        ch.qos.logback.classic.Logger log = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logging.class);
+        log.addAppender(appender);
+        cidInHandler = "unset";
+        setMode(mode);
+        try {
+            Kompics.createAndStart(Logging.class);
+            try {
+                Assert.assertTrue(done.tryAcquire(5, TimeUnit.SECONDS));
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+            log.detachAppender(appender);
+        }
+        for (ILoggingEvent e : appender.list) {
+            if ("marker".equals(e.getMessage())) {
+                return e.getMDCPropertyMap();
+            }
+        }
+        Assert.fail("Log statement was not emitted");
+        return null;
+    }
+
+    private static void setMode(MDCMode mode) {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                ComponentDefinition.MDC_MODE_KEY + " = " + mode.name().toLowerCase()).withFallback(ConfigFactory.load())));
+    }
+
+    public static class Logging extends ComponentDefinition {
+
+        {
+            loggingCtxPutAlways("custom", "v");
+        }
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                cidInHandler = MDC.get(MDC_KEY_CID);
+                logger.info("marker");
+                done.release();
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+}
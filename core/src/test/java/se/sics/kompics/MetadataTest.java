@@ -0,0 +1,135 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.reflect.InvocationTargetException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MetadataTest {
+
+    @Test
+    public void generatedHandlerTypes() {
+        Assert.assertSame(Ping.class, Metadata.handlerType(PingHandler.class, 0));
+        Assert.assertTrue(MetadataTest_KompicsMetadata.handlerLookups > 0);
+    }
+
+    @Test
+    public void reflectedHandlerTypes() {
+        Handler<Ping> anonymous = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+            }
+        };
+        Assert.assertSame(Ping.class, Metadata.handlerType(anonymous.getClass(), 0));
+        try {
+            Metadata.handlerType(anonymous.getClass(), 1);
+            Assert.fail("Handlers have only one parameter");
+        } catch (RuntimeException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void generatedFactories() throws Exception {
+        int before = MetadataTest_KompicsMetadata.creations;
+        Node plain = Metadata.create(Node.class, Init.NONE);
+        Assert.assertEquals(0, plain.value);
+        Node withInit = Metadata.create(Node.class, new NodeInit(42));
+        Assert.assertEquals(42, withInit.value);
+        Assert.assertEquals(before + 2, MetadataTest_KompicsMetadata.creations);
+    }
+
+    @Test
+    public void generatedFactoryFailures() throws Exception {
+        try {
+            Metadata.create(Node.class, new NodeInit(-1));
+            Assert.fail("Node rejects negative values");
+        } catch (InvocationTargetException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void reflectedFactories() throws Exception {
+        Unlisted u = Metadata.create(Unlisted.class, null);
+        Assert.assertNotNull(u);
+    }
+
+    @Test
+    public void reflectedFactoryFailures() throws Exception {
+        try {
+            Metadata.create(Broken.class, null);
+            Assert.fail("Broken can't be created");
+        } catch (InvocationTargetException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class PingHandler extends Handler<Ping> {
+
+        @Override
+        public void handle(Ping event) {
+        }
+    }
+
+    public static class Node extends ComponentDefinition {
+
+        final int value;
+
+        public Node() {
+            this.value = 0;
+        }
+
+        public Node(NodeInit init) {
+            if (init.value < 0) {
+                throw new IllegalArgumentException("Negative value: " + init.value);
+            }
+            this.value = init.value;
+        }
+    }
+
+    public static class NodeInit extends Init<Node> {
+
+        final int value;
+
+        public NodeInit(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class Unlisted extends ComponentDefinition {
+    }
+
+    public static class Broken extends ComponentDefinition {
+
+        public Broken() {
+            throw new IllegalStateException("Broken");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * What the processor generates for {@link MetadataTest}, plus counters.
+ */
+public final class MetadataTest_KompicsMetadata implements KompicsMetadata {
+
+    static volatile int handlerLookups = 0;
+    static volatile int creations = 0;
+
+    @Override
+    public Class<?>[] handlerParameters(Class<?> handlerClass) {
+        handlerLookups++;
+        if (handlerClass == MetadataTest.PingHandler.class) {
+            return new Class<?>[]{MetadataTest.Ping.class};
+        }
+        return null;
+    }
+
+    @Override
+    public ComponentDefinition create(Class<?> definition, Init<?> init) {
+        if (definition == MetadataTest.Node.class) {
+            if (init == null) {
+                creations++;
+                return new MetadataTest.Node();
+            }
+            if ((init != null) && (init.getClass() == MetadataTest.NodeInit.class)) {
+                creations++;
+                return new MetadataTest.Node((MetadataTest.NodeInit) init);
+            }
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+import se.sics.kompics.metrics.ComponentMetrics;
+import se.sics.kompics.metrics.JmxExporter;
+import se.sics.kompics.metrics.MetricsRegistry;
+
+@RunWith(JUnit4.class)
+public class MetricsTest {
+
+    @Test
+    public void disabledByDefault() throws InterruptedException {
+        Kompics.resetConfig();
+        Kompics.createAndStart(Parent.class);
+        try {
+            Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(10, TimeUnit.SECONDS));
+            Assert.assertFalse(Kompics.getMetrics().isPresent());
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    @Test
+    public void componentAndSchedulerMetrics() throws Exception {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.metrics.enabled = true\n"
+                + "kompics.metrics.sampleInterval = 1\n"
+                + "kompics.metrics.exporters = [jmx]").withFallback(ConfigFactory.load())));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName components = new ObjectName(JmxExporter.DOMAIN + ":type=Component,*");
+        try {
+            Kompics.createAndStart(Parent.class, 2);
+            MetricsRegistry registry;
+            ComponentMetrics ponger = null;
+            try {
+                Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(10, TimeUnit.SECONDS));
+                registry = Kompics.getMetrics().get();
+                Assert.assertEquals(3, server.queryNames(components, null).size());
+                Assert.assertEquals(3, registry.components().size());
+                for (ComponentMetrics m : registry.components()) {
+                    if (m.getName().equals(Ponger.class.getName())) {
+                        ponger = m;
+                    }
+                }
+            } finally {
+                Kompics.shutdown();
+            }
+            Assert.assertFalse(Kompics.getMetrics().isPresent());
+            Assert.assertTrue(server.queryNames(components, null).isEmpty());
+            Assert.assertNotNull(ponger);
+
+            // all pings plus the start event
+            Assert.assertTrue(ponger.getEventsHandled() >= PINGS + 1);
+            Assert.assertTrue(ponger.getActivations() > 0);
+            Assert.assertTrue(ponger.handlerTime().count() > 0);
+            Assert.assertTrue(ponger.queueDelay().count() > 0);
+            Map<String, Integer> depths = ponger.getQueueDepths();
+            Assert.assertEquals(Integer.valueOf(0), depths.get("control"));
+            Assert.assertEquals(Integer.valueOf(0), depths.get("-" + PingPongPort.class.getName()));
+            Assert.assertTrue(registry.scheduler().getExecutions() >= ponger.getActivations());
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test
+    public void enabledWithoutExporters() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.metrics.enabled = true").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+            try {
+                Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(10, TimeUnit.SECONDS));
+                Assert.assertEquals(3, Kompics.getMetrics().get().components().size());
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test
+    public void invalidConfigDoesNotStart() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.metrics.enabled = true\nkompics.metrics.exporters = [\"no.such.Exporter\"]").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+            Kompics.shutdown();
+            Assert.fail("Invalid exporter was accepted");
+        } catch (ConfigurationException ex) {
+            // expected
+        } finally {
+            // throws if the failed start left Kompics running
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidSampleInterval() {
+        MetricsRegistry.fromConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.metrics.enabled = true\nkompics.metrics.sampleInterval = 3").withFallback(ConfigFactory.load())));
+    }
+
+    private static final int PINGS = 1000;
+    private static final Semaphore done = new Semaphore(0);
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class Pong implements KompicsEvent {
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component pinger = create(Pinger.class, Init.NONE);
+            Component ponger = create(Ponger.class, Init.NONE);
+            connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(), ppp);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                received++;
+                if (received == PINGS) {
+                    done.release();
+                } else {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(new Pong(), ppp);
+            }
+        };
+
+        {
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
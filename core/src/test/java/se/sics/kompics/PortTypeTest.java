@@ -0,0 +1,109 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PortTypeTest {
+
+    public static class Req implements KompicsEvent {
+    }
+
+    public static class SubReq extends Req {
+    }
+
+    public static class Ind implements KompicsEvent {
+    }
+
+    public static class Both implements KompicsEvent {
+    }
+
+    public static class TestPort extends PortType {
+
+        {
+            request(Req.class);
+            indication(Ind.class);
+            request(Both.class);
+            indication(Both.class);
+        }
+    }
+
+    public static class RacedPort extends PortType {
+
+        {
+            request(Req.class);
+        }
+    }
+
+    @Test
+    public void directions() {
+        TestPort pt = PortType.getPortType(TestPort.class);
+        for (int i = 0; i < 2; i++) { // second round is answered from the memo
+            Assert.assertTrue(pt.hasNegative(Req.class));
+            Assert.assertFalse(pt.hasPositive(Req.class));
+            Assert.assertTrue(pt.hasNegative(SubReq.class));
+            Assert.assertFalse(pt.hasPositive(SubReq.class));
+            Assert.assertTrue(pt.hasPositive(Ind.class));
+            Assert.assertFalse(pt.hasNegative(Ind.class));
+            Assert.assertTrue(pt.hasEvent(true, Both.class));
+            Assert.assertTrue(pt.hasEvent(false, Both.class));
+            Assert.assertFalse(pt.hasEvent(true, Start.class));
+            Assert.assertFalse(pt.hasEvent(false, Start.class));
+        }
+    }
+
+    @Test
+    public void concurrentLookupsShareOneInstance() throws InterruptedException {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Set<PortType> seen = Collections.newSetFromMap(new ConcurrentHashMap<PortType, Boolean>());
+        Thread[] ts = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            ts[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    seen.add(PortType.getPortType(RacedPort.class));
+                }
+            };
+            ts[i].start();
+        }
+        start.countDown();
+        for (Thread t : ts) {
+            t.join();
+        }
+        Assert.assertEquals(1, seen.size());
+        Assert.assertSame(seen.iterator().next(), PortType.getPortType(RacedPort.class));
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class PriorityTest {
+
+    private static final int BULK = 100;
+    private static final List<KompicsEvent> handled = Collections.synchronizedList(new ArrayList<KompicsEvent>());
+    private static final Semaphore done = new Semaphore(0);
+    private static volatile CountDownLatch entered;
+    private static volatile CountDownLatch release;
+    private static volatile boolean overridePriority;
+    private static volatile Parent parent;
+
+    @Test
+    public void prioritizedPortGoesFirst() throws InterruptedException {
+        overridePriority = false;
+        run();
+        // the first data event was already running, the urgent one overtakes all others
+        Assert.assertTrue(handled.get(0) instanceof Data);
+        Assert.assertTrue(handled.get(1) instanceof Urgent);
+    }
+
+    @Test
+    public void portOverridesType() throws InterruptedException {
+        overridePriority = true;
+        run();
+        Assert.assertTrue(handled.get(BULK) instanceof Urgent);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidPrioritizedType() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.PRIORITIZED_KEY + " = [\"java.lang.String\"]").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    private static void run() throws InterruptedException {
+        Kompics.resetConfig();
+        handled.clear();
+        entered = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        Kompics.createAndStart(Parent.class, 2);
+        try {
+            while (parent.getComponentCore().state() != Component.State.ACTIVE) {
+                Thread.sleep(10);
+            }
+            Source source = (Source) parent.source.getComponent();
+            source.sendData();
+            Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+            // the sink is busy now, so all of these queue up
+            for (int i = 1; i < BULK; i++) {
+                source.sendData();
+            }
+            source.sendUrgent();
+            release.countDown();
+            Assert.assertTrue("Events were not handled in time", done.tryAcquire(BULK + 1, 10, TimeUnit.SECONDS));
+            Assert.assertEquals(BULK + 1, handled.size());
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    public static class Data implements KompicsEvent {
+    }
+
+    public static class Urgent implements KompicsEvent {
+    }
+
+    public static class DataPort extends PortType {
+
+        {
+            indication(Data.class);
+        }
+    }
+
+    public static class UrgentPort extends PortType {
+
+        {
+            indication(Urgent.class);
+            prioritized();
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        final Component source = create(Source.class, Init.NONE);
+        final Component sink = create(Sink.class, Init.NONE);
+
+        {
+            parent = this;
+            connect(source.getPositive(DataPort.class), sink.getNegative(DataPort.class));
+            connect(source.getPositive(UrgentPort.class), sink.getNegative(UrgentPort.class));
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        private final Negative<DataPort> data = provides(DataPort.class);
+        private final Negative<UrgentPort> urgent = provides(UrgentPort.class);
+
+        void sendData() {
+            trigger(new Data(), data);
+        }
+
+        void sendUrgent() {
+            trigger(new Urgent(), urgent);
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        private final Positive<DataPort> data = requires(DataPort.class);
+        private final Positive<UrgentPort> urgent = requires(UrgentPort.class);
+
+        Handler<Data> dataHandler = new Handler<Data>() {
+
+            @Override
+            public void handle(Data event) {
+                if (handled.isEmpty()) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                handled.add(event);
+                done.release();
+            }
+        };
+        Handler<Urgent> urgentHandler = new Handler<Urgent>() {
+
+            @Override
+            public void handle(Urgent event) {
+                handled.add(event);
+                done.release();
+            }
+        };
+
+        {
+            subscribe(dataHandler, data);
+            subscribe(urgentHandler, urgent);
+            if (overridePriority) {
+                prioritize(urgent, false);
+            }
+        }
+    }
+}
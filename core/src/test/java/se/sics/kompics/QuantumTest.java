@@ -0,0 +1,176 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+import se.sics.kompics.metrics.ComponentMetrics;
+import se.sics.kompics.metrics.MetricsRegistry;
+
+@RunWith(JUnit4.class)
+public class QuantumTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void cheapHandlersGrowWithBacklog() {
+        Quantum q = new Quantum(MS, 64);
+        Assert.assertEquals(1, q.events());
+        q.update(1, 1000, true);
+        Assert.assertEquals(2, q.events());
+        q.update(2, 2000, true);
+        Assert.assertEquals(4, q.events());
+        for (int i = 0; i < 10; i++) {
+            q.update(q.events(), 1000L * q.events(), true);
+        }
+        Assert.assertEquals(64, q.events());
+    }
+
+    @Test
+    public void noGrowthWithoutBacklog() {
+        Quantum q = new Quantum(MS, 64);
+        q.update(1, 1000, false);
+        Assert.assertEquals(1, q.events());
+    }
+
+    @Test
+    public void expensiveHandlersShrink() {
+        Quantum q = new Quantum(MS, 64);
+        for (int i = 0; i < 10; i++) {
+            q.update(q.events(), 1000L * q.events(), true);
+        }
+        Assert.assertEquals(64, q.events());
+        for (int i = 0; i < 20; i++) {
+            q.update(q.events(), 10 * MS * q.events(), true);
+        }
+        Assert.assertEquals(1, q.events());
+    }
+
+    @Test
+    public void adaptsAtRuntime() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.QUANTUM_KEY + " = 10000\n"
+                + Kompics.QUANTUM_MAX_EVENTS_KEY + " = 16\n"
+                + "kompics.metrics.enabled = true").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class, 1);
+            try {
+                Assert.assertTrue("Events were not handled in time", done.tryAcquire(10, TimeUnit.SECONDS));
+                MetricsRegistry registry = Kompics.getMetrics().get();
+                ComponentMetrics sink = null;
+                for (ComponentMetrics m : registry.components()) {
+                    if (m.getName().equals(Sink.class.getName())) {
+                        sink = m;
+                    }
+                }
+                Assert.assertNotNull(sink);
+                // a backlog of cheap events grew the quantum to its bound
+                Assert.assertEquals(16, sink.getQuantum());
+                Assert.assertTrue(sink.getActivations() < EVENTS);
+                Assert.assertTrue(sink.scheduleDelay().count() > 0);
+                Assert.assertTrue(sink.getScheduleDelayMax() >= sink.getScheduleDelayP99() / 2);
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidQuantum() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.QUANTUM_MAX_EVENTS_KEY + " = 0").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    private static final int EVENTS = 10000;
+    private static final Semaphore done = new Semaphore(0);
+
+    public static class Item implements KompicsEvent {
+    }
+
+    public static class ItemPort extends PortType {
+
+        {
+            indication(Item.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component source = create(Source.class, Init.NONE);
+            Component sink = create(Sink.class, Init.NONE);
+            connect(source.getPositive(ItemPort.class), sink.getNegative(ItemPort.class));
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        Negative<ItemPort> items = provides(ItemPort.class);
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                for (int i = 0; i < EVENTS; i++) {
+                    trigger(new Item(), items);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        Positive<ItemPort> items = requires(ItemPort.class);
+        private int received = 0;
+
+        Handler<Item> itemHandler = new Handler<Item>() {
+
+            @Override
+            public void handle(Item event) {
+                received++;
+                if (received == EVENTS) {
+                    done.release();
+                }
+            }
+        };
+
+        {
+            subscribe(itemHandler, items);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package se.sics.kompics;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutedRequestResponseTest {
+
+    static class TestRequest extends RoutedRequest {
+
+        final int id;
+
+        public TestRequest(int id) {
+            this.id = id;
+        }
+    }
+
+    static class TestResponse extends RoutedResponse {
+
+        final int id;
+
+        public TestResponse(TestRequest request, int id) {
+            super(request);
+            this.id = id;
+        }
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            negative(TestRequest.class);
+            positive(TestResponse.class);
+        }
+    }
+
+    static class TestRoot extends ComponentDefinition {
+
+        private final Component server = create(TestServer.class, Init.NONE);
+        private final Component caller = create(TestCaller.class, Init.NONE);
+        private final Component bystander = create(TestBystander.class, Init.NONE);
+
+        {
+            connect(server.getPositive(TestPort.class), caller.getNegative(TestPort.class));
+            connect(server.getPositive(TestPort.class), bystander.getNegative(TestPort.class));
+        }
+    }
+
+    static class TestCaller extends ComponentDefinition {
+
+        Positive<TestPort> testPort = requires(TestPort.class);
+        private int next = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new TestRequest(next), testPort);
+            }
+        };
+
+        Handler<TestResponse> testResponse = new Handler<TestResponse>() {
+
+            @Override
+            public void handle(TestResponse event) {
+                Assert.assertEquals(next, event.id);
+                next++;
+                semaphore.release(1);
+                if (next < EVENT_COUNT) {
+                    trigger(new TestRequest(next), testPort);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(testResponse, testPort);
+        }
+    }
+
+    static class TestBystander extends ComponentDefinition {
+
+        Positive<TestPort> testPort = requires(TestPort.class);
+
+        Handler<TestResponse> testResponse = new Handler<TestResponse>() {
+
+            @Override
+            public void handle(TestResponse event) {
+                misrouted.incrementAndGet();
+            }
+        };
+
+        {
+            subscribe(testResponse, testPort);
+        }
+    }
+
+    static class TestServer extends ComponentDefinition {
+
+        Negative<TestPort> testPort = provides(TestPort.class);
+        Component child = create(TestWorker.class, Init.NONE);
+
+        {
+            connect(testPort, child.getPositive(TestPort.class));
+        }
+    }
+
+    static class TestWorker extends ComponentDefinition {
+
+        Negative<TestPort> testPort = provides(TestPort.class);
+
+        Handler<TestRequest> testRequest = new Handler<TestRequest>() {
+
+            @Override
+            public void handle(TestRequest event) {
+                trigger(new TestResponse(event, event.id), testPort);
+            }
+        };
+
+        {
+            subscribe(testRequest, testPort);
+        }
+    }
+
+    static class ScheduleTick extends RoutedRequest {
+
+        Tick tick;
+    }
+
+    static class Tick extends RoutedResponse {
+
+        final Object owner;
+
+        public Tick(ScheduleTick request, Object owner) {
+            super(request);
+            this.owner = owner;
+        }
+    }
+
+    static class TickPort extends PortType {
+
+        {
+            negative(ScheduleTick.class);
+            positive(Tick.class);
+        }
+    }
+
+    static class TickRoot extends ComponentDefinition {
+
+        private final Component ticker = create(TestTicker.class, Init.NONE);
+        private final Component first = create(TickRequester.class, Init.NONE);
+        private final Component second = create(TickRequester.class, Init.NONE);
+
+        {
+            connect(ticker.getPositive(TickPort.class), first.getNegative(TickPort.class));
+            connect(ticker.getPositive(TickPort.class), second.getNegative(TickPort.class));
+        }
+    }
+
+    static class TestTicker extends ComponentDefinition {
+
+        Negative<TickPort> tickPort = provides(TickPort.class);
+
+        Handler<ScheduleTick> scheduleHandler = new Handler<ScheduleTick>() {
+
+            @Override
+            public void handle(ScheduleTick event) {
+                trigger(event.tick, tickPort);
+            }
+        };
+
+        {
+            subscribe(scheduleHandler, tickPort);
+        }
+    }
+
+    static class TickRequester extends ComponentDefinition {
+
+        Positive<TickPort> tickPort = requires(TickPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                schedule();
+            }
+        };
+
+        Handler<Tick> tickHandler = new Handler<Tick>() {
+
+            @Override
+            public void handle(Tick event) {
+                if (event.owner != TickRequester.this) {
+                    misrouted.incrementAndGet();
+                    return;
+                }
+                received++;
+                semaphore.release(1);
+                if (received < EVENT_COUNT) {
+                    schedule();
+                }
+            }
+        };
+
+        // like timeouts, the response exists before the request is triggered
+        private void schedule() {
+            ScheduleTick st = new ScheduleTick();
+            st.tick = new Tick(st, this);
+            trigger(st, tickPort);
+        }
+
+        {
+            subscribe(startHandler, control);
+            subscribe(tickHandler, tickPort);
+        }
+    }
+
+    private static final int EVENT_COUNT = 100;
+    private static Semaphore semaphore;
+    private static AtomicInteger misrouted;
+
+    @Test
+    public void testRoutedRequestResponse() throws Exception {
+        semaphore = new Semaphore(0);
+        misrouted = new AtomicInteger(0);
+
+        Kompics.createAndStart(TestRoot.class, 1);
+
+        Assert.assertTrue(semaphore.tryAcquire(EVENT_COUNT, 5, TimeUnit.SECONDS));
+
+        Kompics.shutdown();
+        Assert.assertEquals(0, misrouted.get());
+    }
+
+    @Test
+    public void testResponseCreatedBeforeRequest() throws Exception {
+        semaphore = new Semaphore(0);
+        misrouted = new AtomicInteger(0);
+
+        Kompics.createAndStart(TickRoot.class, 1);
+
+        Assert.assertTrue(semaphore.tryAcquire(2 * EVENT_COUNT, 5, TimeUnit.SECONDS));
+
+        Kompics.shutdown();
+        Assert.assertEquals(0, misrouted.get());
+    }
+
+    @Test
+    public void testEventKinds() {
+        Assert.assertEquals(EventKind.ROUTED_REQUEST, EventKind.of(new TestRequest(0)));
+        Assert.assertEquals(EventKind.ROUTED_RESPONSE, EventKind.of(new TestResponse(new TestRequest(0), 0)));
+        Assert.assertEquals(EventKind.PLAIN, EventKind.of(Start.event));
+        Assert.assertEquals(EventKind.LEGACY_REQUEST, EventKind.kindOf(ChannelRequestResponseTest.TestRequest.class));
+        Assert.assertEquals(EventKind.LEGACY_RESPONSE, EventKind.kindOf(ChannelRequestResponseTest.TestResponse.class));
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class SpinlockQueueTest {
+
+    @Test
+    public void ringKeepsFifoOrderAcrossSpill() {
+        SpinlockQueue<Integer> q = new SpinlockQueue<Integer>(4);
+        for (int i = 0; i < 10; i++) {
+            q.offer(i);
+        }
+        Assert.assertEquals(10, q.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        // ring has space again, but new elements must queue behind the spilled ones
+        q.offer(10);
+        for (int i = 5; i <= 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        Assert.assertNull(q.poll());
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void ringRemove() {
+        SpinlockQueue<String> q = new SpinlockQueue<String>(8);
+        String a = "a", b = "b", c = "c";
+        q.offer(a);
+        q.offer(b);
+        q.offer(c);
+        q.remove(b);
+        Assert.assertSame(a, q.peek());
+        Assert.assertSame(a, q.poll());
+        Assert.assertSame(c, q.poll());
+        Assert.assertNull(q.peek());
+    }
+
+    @Test
+    public void ringMultipleProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final SpinlockQueue<long[]> q = new SpinlockQueue<long[]>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int pid = p;
+            threads[p] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (long i = 0; i < perProducer; i++) {
+                        q.offer(new long[]{pid, i});
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] e = q.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            int pid = (int) e[0];
+            Assert.assertEquals("Out of order element from producer " + pid, next[pid], e[1]);
+            next[pid]++;
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void ringBackedComponents() throws InterruptedException {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.port.queue = mpsc-ring\nkompics.port.queueCapacity = 8").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+            try {
+                Assert.assertTrue(Kompics.portQueues.isBounded());
+                Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(10, TimeUnit.SECONDS));
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    @Test
+    public void invalidQueueConfig() {
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                "kompics.port.queue = bogus").withFallback(ConfigFactory.load())));
+        try {
+            Kompics.createAndStart(Parent.class);
+            Kompics.shutdown();
+            Assert.fail("Invalid queue type was accepted");
+        } catch (ConfigurationException ex) {
+            // expected
+        } finally {
+            // throws if the failed start left Kompics running
+            Kompics.resetConfig();
+        }
+    }
+
+    private static final int PINGS = 10000;
+    private static final Semaphore done = new Semaphore(0);
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class Pong implements KompicsEvent {
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component pinger = create(Pinger.class, Init.NONE);
+            Component ponger = create(Ponger.class, Init.NONE);
+            connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                // more than the ring capacity in flight at once
+                for (int i = 0; i < 32; i++) {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                received++;
+                if (received == PINGS) {
+                    done.release();
+                } else if (received <= PINGS - 32) {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(new Pong(), ppp);
+            }
+        };
+
+        {
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ConfigUpdate;
+import se.sics.kompics.config.TypesafeConfig;
+import se.sics.kompics.config.ValueMerger;
+import se.sics.kompics.config.ValueOptions;
+
+@RunWith(JUnit4.class)
+public class UpdateCoalescingTest {
+
+    private static final int UPDATES = 50;
+    private static final String KEY = "burst.value";
+    private static final AtomicInteger readerUpdates = new AtomicInteger(0);
+    private static final AtomicInteger ignorantUpdates = new AtomicInteger(0);
+    private static final Semaphore done = new Semaphore(0);
+
+    @Test
+    public void mergesReplacingValues() {
+        Config conf = TypesafeConfig.load();
+        UUID author = UUID.randomUUID();
+        Config.Builder first = conf.modify(author);
+        first.setValue(KEY, 1);
+        first.setValue("burst.other", "a");
+        Config.Builder second = conf.modify(author);
+        second.setValue(KEY, 2);
+        ConfigUpdate merged = first.finalise().coalesce(second.finalise()).get();
+        Config.Impl applied = (Config.Impl) conf.copy(false);
+        applied.apply(merged, ValueMerger.NONE);
+        Assert.assertEquals(Integer.valueOf(2), applied.getValue(KEY, Integer.class));
+        Assert.assertEquals("a", applied.getValue("burst.other", String.class));
+        Assert.assertTrue(merged.touches(Collections.singleton("burst.")));
+        Assert.assertFalse(merged.touches(Collections.singleton("other.")));
+
+        Config.Builder appending = conf.modify(author);
+        appending.setValue(KEY, 3, ValueOptions.usingMerger(ValueMerger.APPEND));
+        Assert.assertFalse(merged.coalesce(appending.finalise()).isPresent());
+    }
+
+    @Test
+    public void burstIsHandledOnce() throws InterruptedException {
+        readerUpdates.set(0);
+        ignorantUpdates.set(0);
+        Kompics.setConfig(TypesafeConfig.load(ConfigFactory.parseString(
+                Kompics.COALESCE_UPDATES_KEY + " = true").withFallback(ConfigFactory.load())));
+        try {
+            // a single worker, so the children can't run during the burst
+            Kompics.createAndStart(Root.class, 1);
+            try {
+                Assert.assertTrue("Updates were not handled in time", done.tryAcquire(10, TimeUnit.SECONDS));
+                Thread.sleep(100);
+                Assert.assertEquals(1, readerUpdates.get());
+                Assert.assertEquals(0, ignorantUpdates.get());
+                // handled updates don't stay behind
+                Assert.assertTrue(reader.pendingUpdates.isEmpty());
+            } finally {
+                Kompics.shutdown();
+            }
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
+
+    private static volatile ComponentCore reader;
+
+    public static class Root extends ComponentDefinition {
+
+        {
+            reader = (ComponentCore) create(Reader.class, Init.NONE);
+            create(Ignorant.class, Init.NONE);
+
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (int i = 0; i < UPDATES; i++) {
+                        Config.Builder builder = config().modify(id());
+                        builder.setValue(KEY, i);
+                        updateConfig(builder.finalise());
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Reader extends ComponentDefinition {
+
+        @Override
+        public UpdateAction handleUpdate(ConfigUpdate update) {
+            readerUpdates.incrementAndGet();
+            return UpdateAction.DEFAULT;
+        }
+
+        @Override
+        public void postUpdate() {
+            if (config().getValueOrDefault(KEY, -1) == UPDATES - 1) {
+                done.release();
+            }
+        }
+    }
+
+    public static class Ignorant extends ComponentDefinition {
+
+        @Override
+        public Set<String> configPrefixes() {
+            return Collections.singleton("other.");
+        }
+
+        @Override
+        public UpdateAction handleUpdate(ConfigUpdate update) {
+            ignorantUpdates.incrementAndGet();
+            return UpdateAction.DEFAULT;
+        }
+    }
+}
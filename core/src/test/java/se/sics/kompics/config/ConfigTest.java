@@ -127,4 +127,81 @@ public class ConfigTest {
         long lll = configB.getValue("config.testl", Long.class);
         assertEquals(10l, lll);
     }
+
+    @Test
+    public void keyTests() {
+        ConfigKey<Long> testl = ConfigKey.of("config.testl", Long.class);
+        ConfigKey<Long> missing = ConfigKey.of("config.notThere", Long.class);
+        ConfigKey<Long> wrong = ConfigKey.of("config.test", Long.class);
+        Config.Impl conf = (Config.Impl) TypesafeConfig.load();
+        assertEquals(Long.valueOf(5), conf.getValue(testl));
+        // cached now, and still the same
+        assertEquals(Long.valueOf(5), conf.getValue(testl));
+        assertEquals("5", conf.getValue("config.testl", String.class));
+        assertEquals(Long.valueOf(5), conf.getValueOrDefault(testl, 1l));
+        assertEquals(null, conf.getValue(missing));
+        assertEquals(Long.valueOf(1), conf.getValueOrDefault(missing, 1l));
+        assertEquals(Long.valueOf(1), conf.getValueOrDefault(wrong, 1l));
+        try {
+            Long l = conf.getValue(wrong);
+            fail("Value " + l + " is not actually a long");
+        } catch (ClassCastException ex) {
+            System.out.println("Thrown exception was: \n" + ex);
+        }
+
+        Config.Builder builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.testl", 10l);
+        builder.setValue("config.notThere", 3l);
+        assertEquals(Long.valueOf(10), builder.getValue(testl));
+        assertEquals(Long.valueOf(5), conf.getValue(testl));
+        ConfigUpdate up = builder.finalise();
+        Config.Impl copy = (Config.Impl) conf.copy(false);
+        conf.apply(up, ValueMerger.NONE);
+        // the update replaced the cached values
+        assertEquals(Long.valueOf(10), conf.getValue(testl));
+        assertEquals(Long.valueOf(10), conf.getValue("config.testl", Long.class));
+        assertEquals(Long.valueOf(3), conf.getValueOrDefault(missing, 1l));
+        assertEquals(Long.valueOf(5), copy.getValue(testl));
+        assertEquals(null, copy.getValue(missing));
+
+        // plain string reads don't intern their keys
+        int slots = ConfigKey.slots();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(null, conf.getValue("config.peer." + i, Long.class));
+        }
+        assertEquals(slots, ConfigKey.slots());
+    }
+
+    @Test
+    public void layeredCopyTests() {
+        Config.Impl conf = (Config.Impl) TypesafeConfig.load();
+        Config.Builder builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.shared", new StringBuilder("a"));
+        builder.setValue("config.cloned", new StringBuilder("a"), ValueOptions.deepCopy(new Cloner() {
+
+            @Override
+            public Object clone(Object o) {
+                return new StringBuilder(o.toString());
+            }
+        }));
+        conf.apply(builder.finalise(), ValueMerger.NONE);
+
+        Config.Impl child = (Config.Impl) conf.copy(false);
+        StringBuilder shared = conf.getValue("config.shared", StringBuilder.class);
+        assertTrue(shared == child.getValue("config.shared", StringBuilder.class));
+        StringBuilder cloned = conf.getValue("config.cloned", StringBuilder.class);
+        assertFalse(cloned == child.getValue("config.cloned", StringBuilder.class));
+        assertEquals("a", child.getValue("config.cloned", StringBuilder.class).toString());
+
+        // many updates on the child, none of which the parent sees
+        for (long i = 0; i < 3 * ConfigSnapshot.MAX_DEPTH; i++) {
+            Config.Builder b = child.modify(UUID.randomUUID());
+            b.setValue("config.testl", i);
+            child.apply(b.finalise(), ValueMerger.NONE);
+            assertEquals(Long.valueOf(i), child.getValue("config.testl", Long.class));
+        }
+        assertEquals(Long.valueOf(5), conf.getValue("config.testl", Long.class));
+        assertEquals("testValue", child.getValue("config.test", String.class));
+        assertTrue(shared == child.getValue("config.shared", StringBuilder.class));
+    }
 }
@@ -0,0 +1,155 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+
+@RunWith(JUnit4.class)
+public class AffinitySchedulerTest {
+
+    private static final int PAIRS = 8;
+    private static final int PINGS = 2000;
+    private static final Semaphore done = new Semaphore(0);
+    private static final Map<ComponentDefinition, Set<Thread>> threads = new ConcurrentHashMap<ComponentDefinition, Set<Thread>>();
+
+    @Test
+    public void componentsStayOnHomeWorker() throws InterruptedException {
+        threads.clear();
+        Kompics.setScheduler(new AffinityScheduler(4));
+        Kompics.createAndStart(Parent.class);
+        try {
+            Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(PAIRS, 10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+        Set<Thread> used = new HashSet<Thread>();
+        for (Map.Entry<ComponentDefinition, Set<Thread>> e : threads.entrySet()) {
+            Assert.assertEquals("Component " + e.getKey() + " moved between workers", 1, e.getValue().size());
+            used.addAll(e.getValue());
+        }
+        Assert.assertEquals(2 * PAIRS, threads.size());
+        Assert.assertTrue("Components were not spread over the workers", used.size() > 1);
+    }
+
+    private static void record(ComponentDefinition def) {
+        Set<Thread> s = threads.get(def);
+        if (s == null) {
+            s = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+            threads.put(def, s);
+        }
+        s.add(Thread.currentThread());
+    }
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class Pong implements KompicsEvent {
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            for (int i = 0; i < PAIRS; i++) {
+                Component pinger = create(Pinger.class, Init.NONE);
+                Component ponger = create(Ponger.class, Init.NONE);
+                connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+            }
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(), ppp);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                record(Pinger.this);
+                received++;
+                if (received == PINGS) {
+                    done.release();
+                } else {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                record(Ponger.this);
+                trigger(new Pong(), ppp);
+            }
+        };
+
+        {
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Start;
+
+@RunWith(JUnit4.class)
+public class VirtualThreadSchedulerTest {
+
+    private static final int COMPONENTS = 200;
+    private static final long BLOCK_MILLIS = 50;
+    private static final Semaphore done = new Semaphore(0);
+    private static volatile Parent parent;
+
+    @Test
+    public void blockingHandlersDoNotStallEachOther() throws InterruptedException {
+        // enough platform threads on older JVMs for the handlers to overlap
+        Kompics.setScheduler(new VirtualThreadScheduler(COMPONENTS / 4));
+        long start = System.currentTimeMillis();
+        Kompics.createAndStart(Parent.class);
+        try {
+            // run one after the other this would take COMPONENTS * BLOCK_MILLIS = 10s
+            Assert.assertTrue("Blocking handlers did not overlap", done.tryAcquire(COMPONENTS, 5, TimeUnit.SECONDS));
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            // shutdown only kills an active main component
+            while (parent.getComponentCore().state() != Component.State.ACTIVE) {
+                Thread.sleep(10);
+            }
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void noFallbackWithoutOptIn() {
+        Assume.assumeTrue(!VirtualThreadScheduler.virtualThreadsAvailable());
+        new VirtualThreadScheduler(0);
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            parent = this;
+            for (int i = 0; i < COMPONENTS; i++) {
+                create(Sleeper.class, Init.NONE);
+            }
+        }
+    }
+
+    public static class Sleeper extends ComponentDefinition {
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                done.release();
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+        }
+    }
+}
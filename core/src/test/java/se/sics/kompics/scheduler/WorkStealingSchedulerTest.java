@@ -0,0 +1,229 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentCore;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+
+@RunWith(JUnit4.class)
+public class WorkStealingSchedulerTest {
+
+    private static final int PAIRS = 8;
+    private static final int PINGS = 2000;
+    private static final Semaphore done = new Semaphore(0);
+
+    @Test
+    public void ownerIsLifoThievesAreFifo() {
+        WorkDeque deque = new WorkDeque();
+        ComponentCore[] cores = cores(200);
+        for (ComponentCore c : cores) {
+            deque.push(c);
+        }
+        Assert.assertEquals(cores.length, deque.size());
+        Assert.assertSame(cores[cores.length - 1], deque.pop());
+        Assert.assertSame(cores[0], deque.steal());
+        Assert.assertSame(cores[1], deque.steal());
+        Assert.assertSame(cores[cores.length - 2], deque.pop());
+        while (deque.pop() != null) {
+        }
+        Assert.assertTrue(deque.isEmpty());
+        Assert.assertNull(deque.steal());
+    }
+
+    @Test
+    public void everyComponentIsTakenOnce() throws InterruptedException {
+        final WorkDeque deque = new WorkDeque();
+        final ComponentCore[] cores = cores(20000);
+        final Set<ComponentCore> taken = Collections.newSetFromMap(new ConcurrentHashMap<ComponentCore, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger(0);
+        final AtomicInteger remaining = new AtomicInteger(cores.length);
+        final CountDownLatch thievesDone = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            Thread thief = new Thread() {
+
+                @Override
+                public void run() {
+                    while (remaining.get() > 0) {
+                        ComponentCore c = deque.steal();
+                        if (c != null) {
+                            if (!taken.add(c)) {
+                                duplicates.incrementAndGet();
+                            }
+                            remaining.decrementAndGet();
+                        }
+                    }
+                    thievesDone.countDown();
+                }
+            };
+            thief.setDaemon(true);
+            thief.start();
+        }
+        for (int i = 0; i < cores.length; i++) {
+            deque.push(cores[i]);
+            if ((i % 3) == 0) {
+                ComponentCore c = deque.pop();
+                if (c != null) {
+                    if (!taken.add(c)) {
+                        duplicates.incrementAndGet();
+                    }
+                    remaining.decrementAndGet();
+                }
+            }
+        }
+        ComponentCore c;
+        while ((c = deque.pop()) != null) {
+            if (!taken.add(c)) {
+                duplicates.incrementAndGet();
+            }
+            remaining.decrementAndGet();
+        }
+        Assert.assertTrue(thievesDone.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(cores.length, taken.size());
+    }
+
+    @Test
+    public void pingPong() throws InterruptedException {
+        Kompics.setScheduler(new WorkStealingScheduler(4));
+        Kompics.createAndStart(Parent.class);
+        try {
+            Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(PAIRS, 10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    @Test
+    public void singleWorkerDoesNotStarve() throws InterruptedException {
+        Kompics.setScheduler(new WorkStealingScheduler(1));
+        Kompics.createAndStart(Parent.class);
+        try {
+            Assert.assertTrue("Ping-pong did not finish in time", done.tryAcquire(PAIRS, 10, TimeUnit.SECONDS));
+        } finally {
+            Kompics.shutdown();
+        }
+    }
+
+    private static ComponentCore[] cores(int n) {
+        ComponentCore[] cores = new ComponentCore[n];
+        for (int i = 0; i < n; i++) {
+            cores[i] = new Empty().getComponentCore();
+        }
+        return cores;
+    }
+
+    public static class Empty extends ComponentDefinition {
+    }
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class Pong implements KompicsEvent {
+    }
+
+    public static class PingPongPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            for (int i = 0; i < PAIRS; i++) {
+                Component pinger = create(Pinger.class, Init.NONE);
+                Component ponger = create(Ponger.class, Init.NONE);
+                connect(pinger.getNegative(PingPongPort.class), ponger.getPositive(PingPongPort.class));
+            }
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        Positive<PingPongPort> ppp = requires(PingPongPort.class);
+        private int received = 0;
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                trigger(new Ping(), ppp);
+            }
+        };
+        Handler<Pong> pongHandler = new Handler<Pong>() {
+
+            @Override
+            public void handle(Pong event) {
+                received++;
+                if (received == PINGS) {
+                    done.release();
+                } else {
+                    trigger(new Ping(), ppp);
+                }
+            }
+        };
+
+        {
+            subscribe(startHandler, control);
+            subscribe(pongHandler, ppp);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        Negative<PingPongPort> ppp = provides(PingPongPort.class);
+
+        Handler<Ping> pingHandler = new Handler<Ping>() {
+
+            @Override
+            public void handle(Ping event) {
+                trigger(new Pong(), ppp);
+            }
+        };
+
+        {
+            subscribe(pingHandler, ppp);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.util;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.TypesafeConfig;
+
+@RunWith(JUnit4.class)
+public class IdentifiersTest {
+
+    private static final int N = 100000;
+
+    @Test
+    public void unique() {
+        for (IdentifierFactory f : new IdentifierFactory[]{Identifiers.RANDOM, Identifiers.SEQUENTIAL, Identifiers.SECURE}) {
+            Set<UUID> seen = new HashSet<>();
+            for (int i = 0; i < N; i++) {
+                Assert.assertTrue(seen.add(f.uuid()));
+            }
+        }
+    }
+
+    @Test
+    public void randomAreVersion4() {
+        for (int i = 0; i < 1000; i++) {
+            UUID id = Identifiers.RANDOM.uuid();
+            Assert.assertEquals(4, id.version());
+            Assert.assertEquals(2, id.variant());
+        }
+    }
+
+    @Test
+    public void identifiers() {
+        Identifier a = Identifiers.SEQUENTIAL.id();
+        Identifier b = Identifiers.SEQUENTIAL.id();
+        Assert.assertFalse(a.equals(b));
+        Assert.assertTrue(a.compareTo(b) < 0);
+        Assert.assertEquals(a, new UUIDIdentifier(((UUIDIdentifier) a).id));
+        int p = b.partition(7);
+        Assert.assertTrue(p >= 0 && p < 7);
+    }
+
+    @Test
+    public void fromConfig() {
+        Assert.assertSame(Identifiers.RANDOM, Identifiers.fromConfig(config("")));
+        Assert.assertSame(Identifiers.SEQUENTIAL, Identifiers.fromConfig(config("kompics.identifiers = sequential")));
+        Assert.assertSame(Identifiers.SECURE, Identifiers.fromConfig(config("kompics.identifiers = secure")));
+        IdentifierFactory custom = Identifiers.fromConfig(config("kompics.identifiers = \"" + Counting.class.getName() + "\""));
+        Assert.assertTrue(custom instanceof Counting);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void invalidFactory() {
+        Identifiers.fromConfig(config("kompics.identifiers = nonsense"));
+    }
+
+    private static Config config(String s) {
+        return TypesafeConfig.load(ConfigFactory.parseString(s).withFallback(ConfigFactory.load()));
+    }
+
+    public static class Counting implements IdentifierFactory {
+
+        private long next = 0;
+
+        @Override
+        public synchronized UUID uuid() {
+            return new UUID(0, next++);
+        }
+
+        @Override
+        public Identifier id() {
+            return new UUIDIdentifier(uuid());
+        }
+    }
+}
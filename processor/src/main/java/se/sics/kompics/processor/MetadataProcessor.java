@@ -0,0 +1,312 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code se.sics.kompics.KompicsMetadata} implementation for
+ * every top-level class that declares, directly or in nested classes, named
+ * handler classes or component definitions.
+ * <p>
+ * The generated {@code <TopLevelClass>_KompicsMetadata} class sits next to
+ * the top-level class and records the parameter types of each handler's
+ * {@code handle} method and calls the public constructors of each component
+ * definition directly, so the runtime does not have to reflect them.
+ * <p>
+ * Anonymous handler classes are not visible to annotation processors. The
+ * runtime still reflects those, but only once per class. Classes the
+ * generated code could not access, such as private ones, are skipped the
+ * same way.
+ */
+@SupportedAnnotationTypes("*")
+public class MetadataProcessor extends AbstractProcessor {
+
+    /**
+     * Must match {@code se.sics.kompics.KompicsMetadata.SUFFIX}.
+     */
+    static final String SUFFIX = "_KompicsMetadata";
+    private static final String METADATA = "se.sics.kompics.KompicsMetadata";
+    private static final String COMPONENT_DEFINITION = "se.sics.kompics.ComponentDefinition";
+    private static final String HANDLER = "se.sics.kompics.Handler";
+    private static final String MATCHED_HANDLER = "se.sics.kompics.MatchedHandler";
+    private static final String INIT = "se.sics.kompics.Init";
+
+    private Elements elements;
+    private Types types;
+    private TypeMirror componentDefinition;
+    private TypeMirror handler;
+    private TypeMirror matchedHandler;
+    private TypeMirror init;
+    /**
+     * The package of the metadata being generated.
+     */
+    private PackageElement pkg;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (componentDefinition == null) {
+            elements = processingEnv.getElementUtils();
+            types = processingEnv.getTypeUtils();
+            if (elements.getTypeElement(METADATA) == null) {
+                return false; // not compiling against Kompics
+            }
+            componentDefinition = erasure(COMPONENT_DEFINITION);
+            handler = erasure(HANDLER);
+            matchedHandler = erasure(MATCHED_HANDLER);
+            init = erasure(INIT);
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            if (type.getSimpleName().toString().endsWith(SUFFIX)) {
+                continue;
+            }
+            pkg = elements.getPackageOf(type);
+            List<Component> components = new ArrayList<>();
+            List<HandlerClass> handlers = new ArrayList<>();
+            collect(type, components, handlers);
+            if (!components.isEmpty() || !handlers.isEmpty()) {
+                write(type, components, handlers);
+            }
+        }
+        return false;
+    }
+
+    private TypeMirror erasure(String name) {
+        return types.erasure(elements.getTypeElement(name).asType());
+    }
+
+    private void collect(TypeElement type, List<Component> components, List<HandlerClass> handlers) {
+        if (!accessible(type)) {
+            return;
+        }
+        if ((type.getKind() == ElementKind.CLASS) && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+            TypeMirror t = types.erasure(type.asType());
+            if (types.isSubtype(t, componentDefinition) && instantiable(type)) {
+                Component c = component(type);
+                if (c.noArg || !c.inits.isEmpty()) {
+                    components.add(c);
+                }
+            } else if (types.isSubtype(t, handler) || types.isSubtype(t, matchedHandler)) {
+                HandlerClass h = handler(type);
+                if (h != null) {
+                    handlers.add(h);
+                }
+            }
+        }
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            collect(nested, components, handlers);
+        }
+    }
+
+    private Component component(TypeElement type) {
+        Component c = new Component(type.getQualifiedName().toString());
+        for (ExecutableElement ctor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!ctor.getModifiers().contains(Modifier.PUBLIC) || !ctor.getThrownTypes().isEmpty()) {
+                continue;
+            }
+            List<? extends VariableElement> params = ctor.getParameters();
+            if (params.isEmpty()) {
+                c.noArg = true;
+            } else if (params.size() == 1) {
+                String name = className(params.get(0).asType());
+                if ((name != null) && types.isSubtype(types.erasure(params.get(0).asType()), init)) {
+                    c.inits.add(name);
+                }
+            }
+        }
+        return c;
+    }
+
+    private HandlerClass handler(TypeElement type) {
+        List<TypeMirror> params = new ArrayList<>();
+        for (ExecutableElement m : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!m.getSimpleName().contentEquals("handle") || m.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            List<? extends VariableElement> ps = m.getParameters();
+            for (int i = 0; (i < ps.size()) && (i < 2); i++) {
+                TypeMirror p = types.erasure(ps.get(i).asType());
+                if (i == params.size()) {
+                    params.add(p);
+                } else if (types.isSubtype(p, params.get(i))) {
+                    params.set(i, p); // keep the most specific, like the reflective lookup
+                }
+            }
+        }
+        if (params.isEmpty()) {
+            return null; // inherits handle, let the runtime reflect it
+        }
+        HandlerClass h = new HandlerClass(type.getQualifiedName().toString());
+        for (TypeMirror p : params) {
+            String name = className(p);
+            if (name == null) {
+                return null;
+            }
+            h.parameters.add(name);
+        }
+        return h;
+    }
+
+    /**
+     * @return the name to refer to the erased type by, or {@code null} if
+     * generated code can't refer to it
+     */
+    private String className(TypeMirror t) {
+        TypeMirror erased = types.erasure(t);
+        if (erased.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement e = (TypeElement) ((DeclaredType) erased).asElement();
+        return accessible(e) ? e.getQualifiedName().toString() : null;
+    }
+
+    /**
+     * @return whether code in {@link #pkg} can refer to the type, i.e.
+     * neither it nor an enclosing class is private, or not public when in
+     * another package
+     */
+    private boolean accessible(TypeElement type) {
+        boolean samePackage = elements.getPackageOf(type).equals(pkg);
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (!(e instanceof TypeElement) || e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!samePackage && !e.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean instantiable(TypeElement type) {
+        return (type.getEnclosingElement().getKind() == ElementKind.PACKAGE)
+                || type.getModifiers().contains(Modifier.STATIC);
+    }
+
+    private void write(TypeElement type, List<Component> components, List<HandlerClass> handlers) {
+        String simpleName = type.getSimpleName() + SUFFIX;
+        String name = pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+        StringBuilder sb = new StringBuilder();
+        if (!pkg.isUnnamed()) {
+            sb.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        sb.append("/**\n");
+        sb.append(" * Generated by ").append(MetadataProcessor.class.getName()).append(" for {@link ")
+                .append(type.getQualifiedName()).append("}. Do not edit.\n");
+        sb.append(" */\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        sb.append("public final class ").append(simpleName).append(" implements ").append(METADATA).append(" {\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public Class<?>[] handlerParameters(Class<?> handlerClass) {\n");
+        for (HandlerClass h : handlers) {
+            sb.append("        if (handlerClass == ").append(h.name).append(".class) {\n");
+            sb.append("            return new Class<?>[]{");
+            for (int i = 0; i < h.parameters.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(h.parameters.get(i)).append(".class");
+            }
+            sb.append("};\n");
+            sb.append("        }\n");
+        }
+        sb.append("        return null;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public ").append(COMPONENT_DEFINITION).append(" create(Class<?> definition, ")
+                .append(INIT).append("<?> init) {\n");
+        for (Component c : components) {
+            sb.append("        if (definition == ").append(c.name).append(".class) {\n");
+            if (c.noArg) {
+                sb.append("            if (init == null) {\n");
+                sb.append("                return new ").append(c.name).append("();\n");
+                sb.append("            }\n");
+            }
+            for (String i : c.inits) {
+                sb.append("            if ((init != null) && (init.getClass() == ").append(i).append(".class)) {\n");
+                sb.append("                return new ").append(c.name).append("((").append(i).append(") init);\n");
+                sb.append("            }\n");
+            }
+            sb.append("            return null;\n");
+            sb.append("        }\n");
+        }
+        sb.append("        return null;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        try (Writer w = processingEnv.getFiler().createSourceFile(name, type).openWriter()) {
+            w.write(sb.toString());
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Could not generate Kompics metadata: " + ex.getMessage(), type);
+        }
+    }
+
+    private static class Component {
+
+        final String name;
+        boolean noArg = false;
+        final List<String> inits = new ArrayList<>();
+
+        Component(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class HandlerClass {
+
+        final String name;
+        final List<String> parameters = new ArrayList<>();
+
+        HandlerClass(String name) {
+            this.name = name;
+        }
+    }
+}
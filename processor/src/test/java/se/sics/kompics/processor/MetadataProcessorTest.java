@@ -0,0 +1,132 @@
+/**
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * Kompics is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package se.sics.kompics.processor;
+
+import com.google.common.base.Optional;
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.Logger;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Init;
+import se.sics.kompics.KompicsMetadata;
+
+@RunWith(JUnit4.class)
+public class MetadataProcessorTest {
+
+    private static final String SAMPLE = "package sample;\n"
+            + "import se.sics.kompics.*;\n"
+            + "public class Sample {\n"
+            + "    public static class Ping implements KompicsEvent {}\n"
+            + "    public static class PingHandler extends Handler<Ping> {\n"
+            + "        @Override public void handle(Ping event) {}\n"
+            + "    }\n"
+            + "    static class Node extends ComponentDefinition {\n"
+            + "        public final int value;\n"
+            + "        public Node() { this.value = 0; }\n"
+            + "        public Node(NodeInit init) { this.value = init.value; }\n"
+            + "        Node(int value) { this.value = value; }\n"
+            + "        Handler<Ping> anonymous = new Handler<Ping>() {\n"
+            + "            @Override public void handle(Ping event) {}\n"
+            + "        };\n"
+            + "    }\n"
+            + "    public static class NodeInit extends Init<Node> {\n"
+            + "        final int value;\n"
+            + "        public NodeInit(int value) { this.value = value; }\n"
+            + "    }\n"
+            + "    private static class Hidden extends ComponentDefinition {}\n"
+            + "    public static abstract class Base extends ComponentDefinition {}\n"
+            + "}\n";
+
+    private static ClassLoader loader;
+
+    @BeforeClass
+    public static void compileSample() throws IOException {
+        Path dir = Files.createTempDirectory("kompics-processor");
+        Path src = dir.resolve("sample").resolve("Sample.java");
+        Files.createDirectories(src.getParent());
+        Files.write(src, SAMPLE.getBytes(StandardCharsets.UTF_8));
+        Path out = Files.createDirectories(dir.resolve("classes"));
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        Assert.assertNotNull("Tests need a JDK", javac);
+        StringBuilder cp = new StringBuilder();
+        for (Class<?> c : new Class<?>[]{ComponentDefinition.class, Optional.class, Logger.class, Config.class}) {
+            cp.append(new File(c.getProtectionDomain().getCodeSource().getLocation().getPath())).append(File.pathSeparator);
+        }
+        try (StandardJavaFileManager files = javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = javac.getTask(null, files, null,
+                    Arrays.asList("-classpath", cp.toString(), "-d", out.toString()), null,
+                    files.getJavaFileObjects(src.toFile()));
+            task.setProcessors(Collections.singletonList(new MetadataProcessor()));
+            Assert.assertTrue("Sample did not compile", task.call());
+        }
+        Assert.assertTrue(Files.exists(out.resolve("sample").resolve("Sample" + KompicsMetadata.SUFFIX + ".class")));
+        loader = new URLClassLoader(new URL[]{out.toUri().toURL()}, MetadataProcessorTest.class.getClassLoader());
+    }
+
+    @Test
+    public void handlerParameters() throws Exception {
+        KompicsMetadata meta = metadata();
+        Class<?> ping = loader.loadClass("sample.Sample$Ping");
+        Assert.assertArrayEquals(new Class<?>[]{ping}, meta.handlerParameters(loader.loadClass("sample.Sample$PingHandler")));
+        // anonymous classes are left to the runtime
+        Assert.assertNull(meta.handlerParameters(loader.loadClass("sample.Sample$Node$1")));
+    }
+
+    @Test
+    public void components() throws Exception {
+        KompicsMetadata meta = metadata();
+        Class<?> node = loader.loadClass("sample.Sample$Node");
+        Class<?> nodeInit = loader.loadClass("sample.Sample$NodeInit");
+        ComponentDefinition plain = meta.create(node, null);
+        Assert.assertSame(node, plain.getClass());
+        Init<?> init = (Init<?>) nodeInit.getConstructor(int.class).newInstance(42);
+        ComponentDefinition withInit = meta.create(node, init);
+        Field value = node.getField("value");
+        value.setAccessible(true); // Node is package-private
+        Assert.assertEquals(42, value.get(withInit));
+        // no such constructor, abstract or inaccessible
+        Assert.assertNull(meta.create(node, Init.NONE));
+        Assert.assertNull(meta.create(loader.loadClass("sample.Sample$Base"), null));
+        Assert.assertNull(meta.create(loader.loadClass("sample.Sample$Hidden"), null));
+    }
+
+    private static KompicsMetadata metadata() throws Exception {
+        return (KompicsMetadata) loader.loadClass("sample.Sample" + KompicsMetadata.SUFFIX).newInstance();
+    }
+}